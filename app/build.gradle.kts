@@ -1,3 +1,6 @@
+import java.awt.image.BufferedImage
+import javax.imageio.ImageIO
+
 plugins {
     alias(libs.plugins.android.application)
     alias(libs.plugins.ksp)
@@ -32,6 +35,371 @@ android {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
     }
+
+    androidResources {
+        // Stored uncompressed so LevelFile can seek straight to a chunk
+        noCompress += "lvl"
+    }
+}
+
+/**
+ * Packs each folder under src/main/assets/Sprites into a few atlas pages plus an
+ * index (assets/Atlases/<category>.atlas) that SpriteManager reads at runtime.
+ * Sprites are shelf-packed tallest first; a page grows up to maxPageSize.
+ */
+abstract class PackSpriteAtlasesTask : DefaultTask() {
+    @get:InputDirectory
+    @get:PathSensitive(PathSensitivity.RELATIVE)
+    abstract val spritesDir: DirectoryProperty
+
+    @get:Input
+    abstract val maxPageSize: Property<Int>
+
+    @get:OutputDirectory
+    abstract val outputDir: DirectoryProperty
+
+    @TaskAction
+    fun pack() {
+        val atlasDir = outputDir.get().dir("Atlases").asFile
+        atlasDir.deleteRecursively()
+        atlasDir.mkdirs()
+
+        val categories = spritesDir.get().asFile.listFiles { file -> file.isDirectory }.orEmpty().sortedBy { it.name }
+        for (categoryDir in categories) {
+            val category = categoryDir.name.lowercase()
+            val sprites = categoryDir.listFiles { file -> file.extension == "png" }.orEmpty()
+                .sortedBy { it.name }
+                .map { it.nameWithoutExtension to ImageIO.read(it) }
+                .sortedByDescending { it.second.height }
+            if (sprites.isEmpty()) continue
+
+            val index = StringBuilder()
+            var remaining = sprites
+            var page = 0
+            while (remaining.isNotEmpty()) {
+                remaining = packPage(category, page, remaining, atlasDir, index)
+                page++
+            }
+            File(atlasDir, "$category.atlas").writeText(index.toString())
+            logger.lifecycle("Packed ${sprites.size} $category sprites into $page atlas page(s)")
+        }
+    }
+
+    /** Packs as many sprites as fit on one page and returns the ones left over. */
+    private fun packPage(
+        category: String,
+        page: Int,
+        sprites: List<Pair<String, BufferedImage>>,
+        atlasDir: File,
+        index: StringBuilder
+    ): List<Pair<String, BufferedImage>> {
+        val limit = maxPageSize.get()
+        val totalArea = sprites.sumOf { it.second.width.toLong() * it.second.height }
+        var pageWidth = Integer.highestOneBit(Math.sqrt(totalArea.toDouble()).toInt().coerceAtLeast(1))
+        if (pageWidth.toLong() * pageWidth < totalArea) pageWidth *= 2
+        pageWidth = pageWidth.coerceAtLeast(sprites.maxOf { it.second.width }).coerceAtMost(limit)
+
+        val placements = mutableListOf<Triple<String, BufferedImage, IntArray>>()
+        var x = 0
+        var y = 0
+        var rowHeight = 0
+        var next = 0
+        while (next < sprites.size) {
+            val (name, image) = sprites[next]
+            if (x + image.width > pageWidth) {
+                x = 0
+                y += rowHeight
+                rowHeight = 0
+            }
+            if (y + image.height > limit) break
+            placements += Triple(name, image, intArrayOf(x, y))
+            x += image.width
+            rowHeight = maxOf(rowHeight, image.height)
+            next++
+        }
+        require(placements.isNotEmpty()) { "Sprite ${sprites[0].first} does not fit in a $limit px atlas page" }
+
+        val pageFile = "${category}_$page.png"
+        val pageImage = BufferedImage(pageWidth, y + rowHeight, BufferedImage.TYPE_INT_ARGB)
+        val graphics = pageImage.createGraphics()
+        index.append("page ").append(pageFile).append('\n')
+        for ((name, image, position) in placements) {
+            graphics.drawImage(image, position[0], position[1], null)
+            index.append("$name $page ${position[0]} ${position[1]} ${image.width} ${image.height}\n")
+        }
+        graphics.dispose()
+        ImageIO.write(pageImage, "png", File(atlasDir, pageFile))
+
+        return sprites.subList(next, sprites.size)
+    }
+}
+
+val packSpriteAtlases = tasks.register<PackSpriteAtlasesTask>("packSpriteAtlases") {
+    spritesDir.set(layout.projectDirectory.dir("src/main/assets/Sprites"))
+    maxPageSize.set(2048)
+}
+
+/**
+ * Lists every sprite under src/main/assets/Sprites in assets/Manifest/sprites.manifest
+ * so SpriteManager never has to guess file names. A sprite counts as referenced
+ * when its name appears as a word in any of referenceSources (the level sources);
+ * SpriteManager skips unreferenced tiles.
+ *
+ * Manifest format (one sprite per line, space separated):
+ *   <category> <name> <assetPath> <width> <height> <referenced 0|1>
+ */
+abstract class GenerateSpriteManifestTask : DefaultTask() {
+    @get:InputDirectory
+    @get:PathSensitive(PathSensitivity.RELATIVE)
+    abstract val spritesDir: DirectoryProperty
+
+    @get:InputFiles
+    @get:PathSensitive(PathSensitivity.RELATIVE)
+    abstract val referenceSources: ConfigurableFileCollection
+
+    @get:OutputDirectory
+    abstract val outputDir: DirectoryProperty
+
+    @TaskAction
+    fun generate() {
+        val wordPattern = Regex("[A-Za-z0-9_]+")
+        val referencedWords = HashSet<String>()
+        referenceSources.asFileTree.forEach { file ->
+            wordPattern.findAll(file.readText()).forEach { referencedWords += it.value }
+        }
+
+        val manifest = StringBuilder()
+        var spriteCount = 0
+        var referencedCount = 0
+        val categories = spritesDir.get().asFile.listFiles { file -> file.isDirectory }.orEmpty().sortedBy { it.name }
+        for (categoryDir in categories) {
+            val sprites = categoryDir.listFiles { file -> file.extension == "png" }.orEmpty().sortedBy { it.name }
+            for (sprite in sprites) {
+                val name = sprite.nameWithoutExtension
+                val (width, height) = readImageSize(sprite)
+                val referenced = name in referencedWords
+                manifest.append("${categoryDir.name.lowercase()} $name Sprites/${categoryDir.name}/${sprite.name} ")
+                    .append("$width $height ${if (referenced) 1 else 0}\n")
+                spriteCount++
+                if (referenced) referencedCount++
+            }
+        }
+
+        val manifestDir = outputDir.get().dir("Manifest").asFile
+        manifestDir.deleteRecursively()
+        manifestDir.mkdirs()
+        File(manifestDir, "sprites.manifest").writeText(manifest.toString())
+        logger.lifecycle("Sprite manifest: $spriteCount sprites, $referencedCount referenced")
+    }
+
+    /** Reads only the image header, not the pixels. */
+    private fun readImageSize(file: File): Pair<Int, Int> {
+        ImageIO.createImageInputStream(file).use { input ->
+            val reader = ImageIO.getImageReaders(input).next()
+            try {
+                reader.input = input
+                return reader.getWidth(0) to reader.getHeight(0)
+            } finally {
+                reader.dispose()
+            }
+        }
+    }
+}
+
+val generateSpriteManifest = tasks.register<GenerateSpriteManifestTask>("generateSpriteManifest") {
+    spritesDir.set(layout.projectDirectory.dir("src/main/assets/Sprites"))
+    referenceSources.from(layout.projectDirectory.dir("src/main/levels"))
+}
+
+/**
+ * Compiles each src/main/levels/<name>.level text source into assets/Levels/<name>.lvl,
+ * the binary format LevelFile reads. Other files in the directory (tile_palette.txt)
+ * are ignored.
+ *
+ * Binary format (DataOutputStream, big-endian):
+ *   int magic "WHOL", short version
+ *   UTF title, short columns, short rows, byte chunkSize
+ *   short paletteSize, UTF sprite name per entry
+ *   byte count + UTF names, three times: backgrounds, objective sprites, colors
+ *   byte spawnCount: UTF role, float x, float y
+ *   byte objectiveCount: float x, float y
+ *   short enemyCount: UTF sprite, float x, float y
+ *   short itemCount: UTF sprite, float x, float y (collectibles: coin_*, gem_*, key_*)
+ *   byte layerCount: UTF name, then per chunk (row-major) int offset, short length
+ *   chunk data: runs of (byte count, short palette index + 1, 0 for empty) over the
+ *   chunk's tiles row by row; edge chunks cover only the tiles the map has.
+ *   A chunk with length 0 is empty.
+ */
+abstract class CompileLevelsTask : DefaultTask() {
+    @get:InputDirectory
+    @get:PathSensitive(PathSensitivity.RELATIVE)
+    abstract val levelsDir: DirectoryProperty
+
+    @get:Input
+    abstract val chunkSize: Property<Int>
+
+    @get:OutputDirectory
+    abstract val outputDir: DirectoryProperty
+
+    private class Layer(val name: String, val rows: List<String>)
+
+    @TaskAction
+    fun compile() {
+        val levelDir = outputDir.get().dir("Levels").asFile
+        levelDir.deleteRecursively()
+        levelDir.mkdirs()
+
+        val sources = levelsDir.get().asFile.listFiles { file -> file.extension == "level" }.orEmpty().sortedBy { it.name }
+        for (source in sources) {
+            val output = File(levelDir, "${source.nameWithoutExtension}.lvl")
+            val bytes = compileLevel(source)
+            output.writeBytes(bytes)
+            logger.lifecycle("Compiled ${source.name} into ${output.name} (${bytes.size} bytes)")
+        }
+    }
+
+    private fun compileLevel(source: File): ByteArray {
+        var title = source.nameWithoutExtension
+        var columns = 0
+        var rows = 0
+        val lists = mutableMapOf<String, List<String>>()
+        val spawns = mutableListOf<Triple<String, Float, Float>>()
+        val objectives = mutableListOf<Pair<Float, Float>>()
+        val enemies = mutableListOf<Triple<String, Float, Float>>()
+        val items = mutableListOf<Triple<String, Float, Float>>()
+        val legend = mutableMapOf<Char, String>()
+        val layers = mutableListOf<Layer>()
+
+        val lines = source.readLines().map { it.substringBefore('#').trimEnd() }
+        var i = 0
+        while (i < lines.size) {
+            val line = lines[i++].trim()
+            if (line.isEmpty()) continue
+            val parts = line.split(Regex("\\s+"))
+            fun fail(message: String): Nothing = throw GradleException("${source.name}:$i: $message")
+            when (parts[0]) {
+                "title" -> title = line.substringAfter(' ').trim()
+                "size" -> { columns = parts[1].toInt(); rows = parts[2].toInt() }
+                "backgrounds", "objective_sprites", "colors" -> lists[parts[0]] = parts.drop(1)
+                "spawn" -> spawns += Triple(parts[1], parts[2].toFloat(), parts[3].toFloat())
+                "objective" -> objectives += parts[1].toFloat() to parts[2].toFloat()
+                "enemy" -> enemies += Triple(parts[1], parts[2].toFloat(), parts[3].toFloat())
+                "item" -> items += Triple(parts[1], parts[2].toFloat(), parts[3].toFloat())
+                "legend" -> legend[parts[1].single()] = parts[2]
+                "layer" -> {
+                    val layerRows = mutableListOf<String>()
+                    while (i < lines.size && lines[i].trim() != "end") layerRows += lines[i++].trim()
+                    i++
+                    if (layerRows.size != rows) fail("layer ${parts[1]} has ${layerRows.size} rows, expected $rows")
+                    layerRows.forEach { if (it.length != columns) fail("layer ${parts[1]} row '$it' is not $columns wide") }
+                    layers += Layer(parts[1], layerRows)
+                }
+                else -> fail("unknown directive ${parts[0]}")
+            }
+        }
+        if (columns <= 0 || rows <= 0) throw GradleException("${source.name}: missing size")
+
+        // Palette: every legend sprite a layer actually uses, in first-use order
+        val palette = mutableListOf<String>()
+        for (layer in layers) for (row in layer.rows) for (c in row) {
+            if (c == '.') continue
+            val name = legend[c] ?: throw GradleException("${source.name}: no legend for '$c' in layer ${layer.name}")
+            if (name !in palette) palette += name
+        }
+
+        val size = chunkSize.get()
+        val chunkColumns = (columns + size - 1) / size
+        val chunkRows = (rows + size - 1) / size
+        val chunkData = layers.map { layer ->
+            List(chunkColumns * chunkRows) { index ->
+                encodeChunk(layer, index % chunkColumns, index / chunkColumns, size, columns, rows, legend, palette)
+            }
+        }
+
+        // Header size is needed for chunk offsets, so write the header twice
+        fun writeHeader(out: java.io.DataOutputStream, dataStart: Int) {
+            out.writeInt(0x57484F4C) // "WHOL"
+            out.writeShort(2)
+            out.writeUTF(title)
+            out.writeShort(columns)
+            out.writeShort(rows)
+            out.writeByte(size)
+            out.writeShort(palette.size)
+            palette.forEach { out.writeUTF(it) }
+            for (key in listOf("backgrounds", "objective_sprites", "colors")) {
+                val values = lists[key].orEmpty()
+                out.writeByte(values.size)
+                values.forEach { out.writeUTF(it) }
+            }
+            out.writeByte(spawns.size)
+            spawns.forEach { (role, x, y) -> out.writeUTF(role); out.writeFloat(x); out.writeFloat(y) }
+            out.writeByte(objectives.size)
+            objectives.forEach { (x, y) -> out.writeFloat(x); out.writeFloat(y) }
+            out.writeShort(enemies.size)
+            enemies.forEach { (sprite, x, y) -> out.writeUTF(sprite); out.writeFloat(x); out.writeFloat(y) }
+            out.writeShort(items.size)
+            items.forEach { (sprite, x, y) -> out.writeUTF(sprite); out.writeFloat(x); out.writeFloat(y) }
+            out.writeByte(layers.size)
+            var offset = dataStart
+            layers.forEachIndexed { layerIndex, layer ->
+                out.writeUTF(layer.name)
+                for (chunk in chunkData[layerIndex]) {
+                    out.writeInt(if (chunk.isEmpty()) 0 else offset)
+                    out.writeShort(chunk.size)
+                    offset += chunk.size
+                }
+            }
+        }
+
+        val headerSize = java.io.ByteArrayOutputStream().also { writeHeader(java.io.DataOutputStream(it), 0) }.size()
+        val bytes = java.io.ByteArrayOutputStream()
+        val out = java.io.DataOutputStream(bytes)
+        writeHeader(out, headerSize)
+        chunkData.forEach { layer -> layer.forEach { out.write(it) } }
+        out.flush()
+        return bytes.toByteArray()
+    }
+
+    /** Run-length encodes one chunk; an all-empty chunk encodes to nothing. */
+    private fun encodeChunk(
+        layer: Layer, chunkColumn: Int, chunkRow: Int, size: Int, columns: Int, rows: Int,
+        legend: Map<Char, String>, palette: List<String>
+    ): ByteArray {
+        val values = mutableListOf<Int>()
+        for (row in chunkRow * size until minOf(rows, (chunkRow + 1) * size)) {
+            for (column in chunkColumn * size until minOf(columns, (chunkColumn + 1) * size)) {
+                val c = layer.rows[row][column]
+                values += if (c == '.') 0 else palette.indexOf(legend.getValue(c)) + 1
+            }
+        }
+        if (values.all { it == 0 }) return ByteArray(0)
+
+        val bytes = java.io.ByteArrayOutputStream()
+        val out = java.io.DataOutputStream(bytes)
+        var start = 0
+        while (start < values.size) {
+            var end = start + 1
+            while (end < values.size && values[end] == values[start] && end - start < 255) end++
+            out.writeByte(end - start)
+            out.writeShort(values[start])
+            start = end
+        }
+        out.flush()
+        return bytes.toByteArray()
+    }
+}
+
+val compileLevels = tasks.register<CompileLevelsTask>("compileLevels") {
+    levelsDir.set(layout.projectDirectory.dir("src/main/levels"))
+    chunkSize.set(8) // TileMap.CHUNK_SIZE
+}
+
+androidComponents {
+    onVariants { variant ->
+        variant.sources.assets?.addGeneratedSourceDirectory(packSpriteAtlases, PackSpriteAtlasesTask::outputDir)
+        variant.sources.assets?.addGeneratedSourceDirectory(generateSpriteManifest, GenerateSpriteManifestTask::outputDir)
+        variant.sources.assets?.addGeneratedSourceDirectory(compileLevels, CompileLevelsTask::outputDir)
+    }
 }
 
 dependencies {
@@ -0,0 +1,145 @@
+package com.humangodcvaki.whoi;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Debug;
+import android.os.SystemClock;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Counts allocations on the test thread while GameRenderer draws frames, the
+ * same path GameView.onDraw takes. Once caches are warm (static layer, sprite
+ * variants, debug lines) a frame must not allocate, moving or not.
+ */
+@RunWith(AndroidJUnit4.class)
+public class GameRenderAllocationTest {
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 480;
+    private static final int FRAME_COUNT = 300;
+    private static final int WARM_UP_FRAMES = 50;
+    private static final long WARM_UP_TIMEOUT_MS = 5000;
+    private static final long VARIANT_POLL_MS = 5;
+
+    private SpriteManager spriteManager;
+    private GameRenderer renderer;
+    private GameRenderState state;
+    private Bitmap target;
+    private Canvas canvas;
+
+    @Before
+    public void setUp() {
+        Context appContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        spriteManager = new SpriteManager(appContext);
+        assertTrue(spriteManager.areAssetsLoaded());
+
+        renderer = new GameRenderer();
+        state = new GameRenderState();
+        target = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        canvas = new Canvas(target);
+    }
+
+    @After
+    public void tearDown() {
+        renderer.release();
+        spriteManager.cleanup();
+        target.recycle();
+    }
+
+    @Test
+    public void fallbackFramesDoNotAllocate() throws InterruptedException {
+        renderer.setChapterData("", "", "");
+        state.gameActive = true;
+        assertEquals(0, countFrameAllocations(true));
+    }
+
+    @Test
+    public void spriteFramesDoNotAllocate() throws InterruptedException {
+        renderer.setSpriteManager(spriteManager);
+        renderer.setChapterData("background_color_trees", "flag_green_a", "character_green_idle");
+        state.gameActive = true;
+        spawnEntities();
+        assertEquals(0, countFrameAllocations(true));
+    }
+
+    @Test
+    public void waitingScreenDoesNotAllocate() throws InterruptedException {
+        renderer.setSpriteManager(spriteManager);
+        renderer.setChapterData("background_color_trees", "flag_green_a", "character_green_idle");
+        state.gameActive = false; // Draws the debug overlay
+        assertEquals(0, countFrameAllocations(false));
+    }
+
+    @SuppressWarnings("deprecation")
+    private int countFrameAllocations(boolean moving) throws InterruptedException {
+        warmUp(moving);
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        try {
+            for (int i = 0; i < FRAME_COUNT; i++) {
+                drawFrame(i, moving);
+            }
+        } finally {
+            Debug.stopAllocCounting();
+        }
+        return Debug.getThreadAllocCount();
+    }
+
+    /**
+     * Draws warm-up passes until one ends with no sprite variant builds
+     * pending, waiting for the queued ones to finish between passes, so the
+     * counted frames only ever hit built variants.
+     */
+    private void warmUp(boolean moving) throws InterruptedException {
+        long deadline = SystemClock.uptimeMillis() + WARM_UP_TIMEOUT_MS;
+        while (true) {
+            for (int i = 0; i < WARM_UP_FRAMES; i++) {
+                drawFrame(i, moving);
+            }
+            if (spriteManager.getPendingVariantBuilds() == 0) {
+                return;
+            }
+            while (spriteManager.getPendingVariantBuilds() > 0) {
+                assertTrue("Sprite variants still building after warm-up",
+                        SystemClock.uptimeMillis() < deadline);
+                Thread.sleep(VARIANT_POLL_MS);
+            }
+        }
+    }
+
+    private void drawFrame(int frame, boolean moving) {
+        if (moving) {
+            // Keep both characters walking so every walk frame gets drawn
+            float x = 2 + (frame % 100) * 0.1f;
+            state.setPlayerPositions(x, 8, 18 - (frame % 100) * 0.1f, 8);
+            if (frame % 30 == 0) {
+                state.addEffect(GameRenderView.EFFECT_PICKUP, x, 8);
+            }
+        }
+        state.entities.update(1f / 60f);
+        renderer.draw(canvas, WIDTH, HEIGHT, state);
+    }
+
+    // Walking slimes and bobbing coins across the visible columns
+    private void spawnEntities() {
+        EntityStore entities = state.entities;
+        int slime = entities.registerAppearance("slime_normal_rest");
+        int coin = entities.registerAppearance("coin_gold");
+        for (int i = 0; i < 10; i++) {
+            float x = 1 + i * 2;
+            entities.spawn(EntityStore.TYPE_ENEMY, slime, x, 8, 1f, x - 1, x + 1, CollisionWorld.KIND_ENEMY, 0.9f, 0.6f);
+            entities.spawn(EntityStore.TYPE_COLLECTIBLE, coin, x + 1, 7, 0f, x + 1, x + 1,
+                    CollisionWorld.KIND_COLLECTIBLE, 0.6f, 0.6f);
+        }
+    }
+}
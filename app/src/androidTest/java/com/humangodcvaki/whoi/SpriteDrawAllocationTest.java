@@ -0,0 +1,94 @@
+package com.humangodcvaki.whoi;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.os.Debug;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Counts allocations on the test thread while drawing sprites through the
+ * SpriteManager draw API. Every variant must draw without allocating once its
+ * cached Paint exists.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SpriteDrawAllocationTest {
+    private static final String SPRITE_NAME = "character_green_idle";
+    private static final int DRAW_ITERATIONS = 500;
+
+    private SpriteManager spriteManager;
+    private Bitmap target;
+    private Canvas canvas;
+    private int handle;
+
+    @Before
+    public void setUp() {
+        Context appContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        spriteManager = new SpriteManager(appContext);
+        assertTrue(spriteManager.areAssetsLoaded());
+
+        handle = spriteManager.resolveHandle(SPRITE_NAME);
+        assertNotEquals(SpriteManager.NO_SPRITE, handle);
+        assertNotNull(spriteManager.getSprite(handle));
+
+        target = Bitmap.createBitmap(512, 512, Bitmap.Config.ARGB_8888);
+        canvas = new Canvas(target);
+    }
+
+    @After
+    public void tearDown() {
+        spriteManager.cleanup();
+        target.recycle();
+    }
+
+    @Test
+    public void drawByHandleDoesNotAllocate() {
+        assertEquals(0, countAllocations(() -> spriteManager.drawSprite(canvas, handle, 10f, 20f, 1.5f)));
+    }
+
+    @Test
+    public void drawByNameDoesNotAllocate() {
+        assertEquals(0, countAllocations(() -> spriteManager.drawSprite(canvas, SPRITE_NAME, 10f, 20f, 1.5f)));
+    }
+
+    @Test
+    public void drawWithAlphaDoesNotAllocate() {
+        assertEquals(0, countAllocations(() -> spriteManager.drawSpriteWithAlpha(canvas, handle, 10f, 20f, 1f, 128)));
+    }
+
+    @Test
+    public void drawWithTintDoesNotAllocate() {
+        assertEquals(0, countAllocations(() -> spriteManager.drawSpriteWithTint(canvas, handle, 10f, 20f, 1f, Color.RED)));
+    }
+
+    @Test
+    public void drawFlippedDoesNotAllocate() {
+        assertEquals(0, countAllocations(() -> spriteManager.drawSpriteFlipped(canvas, handle, 10f, 20f, true, false)));
+    }
+
+    @SuppressWarnings("deprecation")
+    private static int countAllocations(Runnable draw) {
+        draw.run(); // Warm up: first use creates the cached Paint
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        try {
+            for (int i = 0; i < DRAW_ITERATIONS; i++) {
+                draw.run();
+            }
+        } finally {
+            Debug.stopAllocCounting();
+        }
+        return Debug.getThreadAllocCount();
+    }
+}
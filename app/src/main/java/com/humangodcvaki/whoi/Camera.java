@@ -0,0 +1,116 @@
+package com.humangodcvaki.whoi;
+
+/**
+ * Maps world coordinates (tiles) to screen pixels. The world's height fills the
+ * view, which fixes the tile size; the camera then scrolls horizontally (and
+ * vertically, if the world is taller than the view) to follow a target,
+ * keeping it inside a dead zone and never showing past the world's edges.
+ */
+class Camera {
+    // World size used when there is no level file
+    static final int DEFAULT_WORLD_COLUMNS = 20;
+    static final int DEFAULT_WORLD_ROWS = 10;
+
+    // The target may move within the middle part of the view before the camera follows
+    private static final float DEAD_ZONE_LEFT = 0.35f;
+    private static final float DEAD_ZONE_RIGHT = 0.65f;
+    private static final float DEAD_ZONE_TOP = 0.3f;
+    private static final float DEAD_ZONE_BOTTOM = 0.7f;
+
+    private float worldColumns = 1;
+    private float worldRows = 1;
+    private float tilePixelSize = 1;
+    private float viewColumns = 1;
+    private float viewRows = 1;
+    private float left = 0;
+    private float top = 0;
+    private boolean positioned = false;
+
+    void setWorldSize(float columns, float rows) {
+        worldColumns = Math.max(1, columns);
+        worldRows = Math.max(1, rows);
+        positioned = false;
+    }
+
+    void setViewport(int widthPixels, int heightPixels) {
+        tilePixelSize = heightPixels / worldRows;
+        viewColumns = widthPixels / tilePixelSize;
+        viewRows = heightPixels / tilePixelSize;
+        clamp();
+    }
+
+    /** Scrolls so the target stays in the dead zone; the first call centers on it. */
+    void follow(float targetX, float targetY) {
+        if (!positioned) {
+            left = targetX - viewColumns / 2;
+            top = targetY - viewRows / 2;
+            positioned = true;
+        } else {
+            float minX = left + viewColumns * DEAD_ZONE_LEFT;
+            float maxX = left + viewColumns * DEAD_ZONE_RIGHT;
+            if (targetX < minX) {
+                left -= minX - targetX;
+            } else if (targetX > maxX) {
+                left += targetX - maxX;
+            }
+
+            float minY = top + viewRows * DEAD_ZONE_TOP;
+            float maxY = top + viewRows * DEAD_ZONE_BOTTOM;
+            if (targetY < minY) {
+                top -= minY - targetY;
+            } else if (targetY > maxY) {
+                top += targetY - maxY;
+            }
+        }
+        clamp();
+    }
+
+    private void clamp() {
+        left = Math.max(0, Math.min(left, worldColumns - viewColumns));
+        top = Math.max(0, Math.min(top, worldRows - viewRows));
+    }
+
+    float toScreenX(float worldX) {
+        return (worldX - left) * tilePixelSize;
+    }
+
+    float toScreenY(float worldY) {
+        return (worldY - top) * tilePixelSize;
+    }
+
+    float getTilePixelSize() {
+        return tilePixelSize;
+    }
+
+    /** World position of the view's top-left corner, in pixels. */
+    float getScrollX() {
+        return left * tilePixelSize;
+    }
+
+    float getScrollY() {
+        return top * tilePixelSize;
+    }
+
+    /** Edges of the visible part of the world, in tiles. */
+    float getViewLeft() {
+        return left;
+    }
+
+    float getViewTop() {
+        return top;
+    }
+
+    float getViewRight() {
+        return left + viewColumns;
+    }
+
+    float getViewBottom() {
+        return top + viewRows;
+    }
+
+    /** True if a screen point (in pixels) is within margin pixels of the view. */
+    static boolean isVisible(float screenX, float screenY, float margin, int viewWidth, int viewHeight) {
+        return screenX >= -margin && screenX <= viewWidth + margin
+                && screenY >= -margin && screenY <= viewHeight + margin;
+    }
+}
@@ -5,9 +5,11 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.ImageButton;
 import android.widget.TextView;
@@ -28,7 +30,10 @@ import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 
@@ -37,16 +42,8 @@ public class Chapter1GameActivity extends AppCompatActivity {
     private static final String TAG = "Chapter1GameActivity";
     private static final String GAME_ROOMS_NODE = "gameRooms";
 
-    // Enhanced Game constants for Chapter 1 - Forest Adventure with sprite variety
-    private static final String[] BACKGROUND_OPTIONS = {
-            "background_color_trees", "background_fade_trees", "background_solid_grass"
-    };
-    private static final String[] PLAYER_COLORS = {
-            "green", "pink", "purple", "yellow", "beige"
-    };
-    private static final String[] OBJECTIVE_OPTIONS = {
-            "flag_green_a", "flag_blue_a", "flag_yellow_a"
-    };
+    // Chapter content (sprite choices, spawns, objective, tiles) from assets/Levels
+    private LevelFile level;
 
     // Selected sprites for this game session
     private String selectedBackground;
@@ -55,7 +52,7 @@ public class Chapter1GameActivity extends AppCompatActivity {
     private String partnerCharacterColor;
 
     // UI Elements
-    private GameView gameView;
+    private GameRenderView gameView;
     private TextView statusText, timerText, scoreText;
     private TextView player1StatusText, player2StatusText;
     private ImageButton btnLeft, btnRight, btnJump;
@@ -83,34 +80,55 @@ public class Chapter1GameActivity extends AppCompatActivity {
     private int playerScore = 0;
     private int partnerScore = 0;
 
-    // Player positions (normalized 0-1)
-    private float myPlayerX = 0.1f;
-    private float myPlayerY = 0.8f;
-    private float partnerPlayerX = 0.1f;
-    private float partnerPlayerY = 0.8f;
+    // Level size; every position below is in tiles, y being where feet rest
+    private int worldColumns = Camera.DEFAULT_WORLD_COLUMNS;
+    private int worldRows = Camera.DEFAULT_WORLD_ROWS;
+
+    // Our player's movement and collisions; the buttons write its input
+    private GameSimulation simulation;
+    private final GameSimulation.Input simulationInput = new GameSimulation.Input();
+    private static final int COLLECTIBLE_POINTS = 10;
+    private static final int ENEMY_PENALTY = 5;
+
+    // Enemies and collectibles; collision body tags are their entity ids
+    private EntityStore entities = new EntityStore(16);
+    private static final float ENEMY_PATROL_SPEED = 1f; // Tiles per second
+    private static final float ENEMY_PATROL_RANGE = 2f; // Tiles either side of the spawn
+
+    // Updates entities by distance from the view, which this camera tracks like the renderer's
+    private UpdateScheduler updateScheduler;
+    private final Camera updateCamera = new Camera();
+    private int updateCameraWidth = 0;
+    private int updateCameraHeight = 0;
+
+    // Partner position, from Firebase
+    private float partnerPlayerX = 2f;
+    private float partnerPlayerY = 8f;
 
     // Game objects
-    private float objectiveDoorX = 0.9f;
-    private float objectiveDoorY = 0.8f;
-
-    // Enhanced movement and control
-    private boolean movingLeft = false;
-    private boolean movingRight = false;
-    private boolean jumping = false;
-    private float playerSpeed = 0.005f; // Optimized speed for better gameplay
-    private float jumpVelocity = 0f;
-    private float gravity = 0.0050f; // Improved gravity feel
-    private float maxJumpHeight = 0.3f; // Prevent jumping too high
+    private float objectiveDoorX = 18f;
+    private float objectiveDoorY = 8f;
+
+    // Position at the previous simulation step, for render interpolation
+    private float previousPlayerX;
+    private float previousPlayerY;
+    private float renderedPlayerX = -1f;
+    private float renderedPlayerY = -1f;
 
     private ValueEventListener gameRoomListener;
     private Handler gameUpdateHandler;
     private Handler uiHandler;
+    private GameLoop gameLoop;
+    private FrameProfiler frameProfiler;
+    private boolean frameStatsLogged = false;
     private SpriteManager spriteManager;
     private boolean listenersActive = false;
 
     // Performance optimization
     private long lastPositionUpdate = 0;
     private static final long POSITION_UPDATE_INTERVAL = 100; // ms
+    private long lastUiUpdate = 0;
+    private static final long UI_UPDATE_INTERVAL = 33; // ms, HUD text does not need every frame
     private Random random = new Random();
 
     @Override
@@ -130,6 +148,17 @@ public class Chapter1GameActivity extends AppCompatActivity {
         // Initialize handlers first
         gameUpdateHandler = new Handler(Looper.getMainLooper());
         uiHandler = new Handler(Looper.getMainLooper());
+        gameLoop = new GameLoop(new GameLoop.Callback() {
+            @Override
+            public void onStep(float stepSeconds) {
+                stepGame(stepSeconds);
+            }
+
+            @Override
+            public void onRender(float alpha) {
+                renderGame(alpha);
+            }
+        });
 
         if (!initializeFirebase()) {
             return;
@@ -139,7 +168,8 @@ public class Chapter1GameActivity extends AppCompatActivity {
             return;
         }
 
-        // Select random sprites for variety
+        // Read the chapter's level header, then pick sprites from it
+        loadLevel();
         selectGameSprites();
 
         if (!initializeUI()) {
@@ -184,6 +214,9 @@ public class Chapter1GameActivity extends AppCompatActivity {
             gameEnded = true;
             listenersActive = false;
 
+            if (gameLoop != null) {
+                gameLoop.stop();
+            }
             if (gameUpdateHandler != null) {
                 gameUpdateHandler.removeCallbacksAndMessages(null);
             }
@@ -195,9 +228,7 @@ public class Chapter1GameActivity extends AppCompatActivity {
                 realtimeDb.child(GAME_ROOMS_NODE).child(gameRoomId).removeEventListener(gameRoomListener);
             }
 
-            if (spriteManager != null) {
-                spriteManager.cleanup();
-            }
+            releaseSpriteManager();
         } catch (Exception e) {
             Log.e(TAG, "Error in onDestroy", e);
         }
@@ -216,6 +247,9 @@ public class Chapter1GameActivity extends AppCompatActivity {
         Log.d(TAG, "Chapter1GameActivity onPause");
 
         // Temporarily pause game updates to save battery
+        if (gameLoop != null) {
+            gameLoop.stop();
+        }
         if (gameUpdateHandler != null) {
             gameUpdateHandler.removeCallbacksAndMessages(null);
         }
@@ -306,17 +340,125 @@ public class Chapter1GameActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * Loads the chapter's level header and places the players and objective.
+     * Positions stay in level tiles; the game view's camera maps them to the screen.
+     */
+    private void loadLevel() {
+        level = LevelFile.load(getAssets(), selectedChapter);
+        if (level == null && selectedChapter != 1) {
+            Log.w(TAG, "No level for chapter " + selectedChapter + ", using chapter 1");
+            level = LevelFile.load(getAssets(), 1);
+        }
+
+        float spawnX = 2f;
+        float spawnY = 8f;
+        if (level != null) {
+            worldColumns = level.getColumns();
+            worldRows = level.getRows();
+            LevelFile.Placement playerSpawn = level.getSpawn("player");
+            if (playerSpawn != null) {
+                spawnX = playerSpawn.x;
+                spawnY = playerSpawn.y;
+            }
+            LevelFile.Placement partnerSpawn = level.getSpawn("partner");
+            if (partnerSpawn != null) {
+                partnerPlayerX = partnerSpawn.x;
+                partnerPlayerY = partnerSpawn.y;
+            }
+            if (!level.getObjectives().isEmpty()) {
+                LevelFile.Placement objective = level.getObjectives().get(0);
+                objectiveDoorX = objective.x;
+                objectiveDoorY = objective.y;
+            }
+            Log.d(TAG, String.format("Level %s: %d enemy spawns", level.getTitle(), level.getEnemies().size()));
+        } else {
+            Log.w(TAG, "No level data, using built-in positions");
+        }
+
+        // Without a level, the ground is flat where players spawn
+        simulation = level != null ? new GameSimulation(createCollisionWorld(level))
+                : new GameSimulation(worldColumns, spawnY, objectiveDoorX, objectiveDoorY);
+        simulation.reset(spawnX, spawnY);
+        simulation.setListener(new GameSimulation.Listener() {
+            @Override
+            public void onCollect(int bodyId, int tag) {
+                String name = entities.getAppearanceName(entities.getAppearance(tag));
+                if (gameView != null) {
+                    gameView.playEffect(GameRenderView.EFFECT_PICKUP, entities.getX(tag), entities.getY(tag));
+                }
+                entities.detachBody(tag); // Already removed by the simulation
+                entities.despawn(tag);
+                playerScore += COLLECTIBLE_POINTS;
+                Log.d(TAG, "Collected " + name + ", score " + playerScore);
+                updateScoreInFirebase();
+            }
+
+            @Override
+            public void onEnemyContact(int bodyId, int tag) {
+                playerScore = Math.max(0, playerScore - ENEMY_PENALTY);
+                Log.d(TAG, "Hit " + entities.getAppearanceName(entities.getAppearance(tag)) + ", score " + playerScore);
+                updateScoreInFirebase();
+            }
+        });
+        previousPlayerX = spawnX;
+        previousPlayerY = spawnY;
+        updateScheduler = new UpdateScheduler(entities);
+        updateCamera.setWorldSize(worldColumns, worldRows);
+    }
+
+    /**
+     * Solid tiles from the level's collision layer plus a body for the
+     * objective; items and enemies are spawned into the entity store, which
+     * adds their bodies. The whole layer is read on the decode pipeline now,
+     * well before the game starts, so a simulation step never reads assets.
+     */
+    private CollisionWorld createCollisionWorld(LevelFile level) {
+        TileMap collisionMap = level.createCollisionMap();
+        collisionMap.requestChunks(0, collisionMap.getChunkColumns() - 1, 0, collisionMap.getChunkRows() - 1);
+        int entityCount = level.getItems().size() + level.getEnemies().size();
+        CollisionWorld world = new CollisionWorld(level.getColumns(), level.getRows(),
+                (column, row) -> collisionMap.getLoadedTile(column, row) != SpriteManager.NO_SPRITE,
+                1 + entityCount);
+
+        world.addBody(CollisionWorld.KIND_OBJECTIVE, 0, objectiveDoorX, objectiveDoorY,
+                GameSimulation.OBJECTIVE_WIDTH, GameSimulation.OBJECTIVE_HEIGHT);
+
+        entities = new EntityStore(entityCount, world);
+        for (LevelFile.Placement item : level.getItems()) {
+            entities.spawn(EntityStore.TYPE_COLLECTIBLE, entities.registerAppearance(item.name),
+                    item.x, item.y, 0f, item.x, item.x,
+                    CollisionWorld.KIND_COLLECTIBLE, GameSimulation.COLLECTIBLE_SIZE, GameSimulation.COLLECTIBLE_SIZE);
+        }
+        // Enemies patrol either side of their spawn, within the level
+        float minX = GameSimulation.EDGE_MARGIN;
+        float maxX = level.getColumns() - 1 - GameSimulation.EDGE_MARGIN;
+        for (LevelFile.Placement enemy : level.getEnemies()) {
+            entities.spawn(EntityStore.TYPE_ENEMY, entities.registerAppearance(enemy.name),
+                    enemy.x, enemy.y, -ENEMY_PATROL_SPEED,
+                    Math.max(minX, enemy.x - ENEMY_PATROL_RANGE), Math.min(maxX, enemy.x + ENEMY_PATROL_RANGE),
+                    CollisionWorld.KIND_ENEMY, GameSimulation.ENEMY_WIDTH, GameSimulation.ENEMY_HEIGHT);
+        }
+        return world;
+    }
+
     private void selectGameSprites() {
         try {
+            if (level == null || level.getBackgrounds().isEmpty() || level.getObjectiveSprites().isEmpty()
+                    || level.getCharacterColors().size() < 2) {
+                throw new IllegalStateException("Level has no sprite choices");
+            }
+
             // Select random sprites for variety in each game
-            selectedBackground = BACKGROUND_OPTIONS[random.nextInt(BACKGROUND_OPTIONS.length)];
-            selectedObjective = OBJECTIVE_OPTIONS[random.nextInt(OBJECTIVE_OPTIONS.length)];
+            List<String> backgrounds = level.getBackgrounds();
+            List<String> objectives = level.getObjectiveSprites();
+            selectedBackground = backgrounds.get(random.nextInt(backgrounds.size()));
+            selectedObjective = objectives.get(random.nextInt(objectives.size()));
 
             // Assign different colors to players
-            playerCharacterColor = PLAYER_COLORS[random.nextInt(PLAYER_COLORS.length)];
-            do {
-                partnerCharacterColor = PLAYER_COLORS[random.nextInt(PLAYER_COLORS.length)];
-            } while (partnerCharacterColor.equals(playerCharacterColor)); // Ensure different colors
+            List<String> colors = new ArrayList<>(level.getCharacterColors());
+            playerCharacterColor = colors.remove(random.nextInt(colors.size()));
+            partnerCharacterColor = colors.get(random.nextInt(colors.size())); // Ensure different colors
 
             Log.d(TAG, String.format("Selected sprites - Background: %s, Objective: %s, Player: %s, Partner: %s",
                     selectedBackground, selectedObjective, playerCharacterColor, partnerCharacterColor));
@@ -333,7 +475,7 @@ public class Chapter1GameActivity extends AppCompatActivity {
     private boolean initializeUI() {
         try {
             // Find all UI elements with null checks
-            gameView = findViewById(R.id.gameView);
+            gameView = createGameView(findViewById(R.id.gameView));
             statusText = findViewById(R.id.statusText);
             timerText = findViewById(R.id.timerText);
             scoreText = findViewById(R.id.scoreText);
@@ -352,6 +494,8 @@ public class Chapter1GameActivity extends AppCompatActivity {
                 return false;
             }
 
+            initializeFrameProfiler();
+
             // Set enhanced initial texts
             runOnUiThread(() -> {
                 try {
@@ -392,12 +536,12 @@ public class Chapter1GameActivity extends AppCompatActivity {
                 try {
                     switch (event.getAction()) {
                         case MotionEvent.ACTION_DOWN:
-                            movingLeft = true;
+                            simulationInput.left = true;
                             v.setAlpha(0.7f); // Visual feedback
                             return true;
                         case MotionEvent.ACTION_UP:
                         case MotionEvent.ACTION_CANCEL:
-                            movingLeft = false;
+                            simulationInput.left = false;
                             v.setAlpha(1.0f); // Reset visual feedback
                             return true;
                     }
@@ -412,12 +556,12 @@ public class Chapter1GameActivity extends AppCompatActivity {
                 try {
                     switch (event.getAction()) {
                         case MotionEvent.ACTION_DOWN:
-                            movingRight = true;
+                            simulationInput.right = true;
                             v.setAlpha(0.7f); // Visual feedback
                             return true;
                         case MotionEvent.ACTION_UP:
                         case MotionEvent.ACTION_CANCEL:
-                            movingRight = false;
+                            simulationInput.right = false;
                             v.setAlpha(1.0f); // Reset visual feedback
                             return true;
                     }
@@ -432,11 +576,8 @@ public class Chapter1GameActivity extends AppCompatActivity {
                 try {
                     switch (event.getAction()) {
                         case MotionEvent.ACTION_DOWN:
-                            if (!jumping && myPlayerY >= 0.75f) { // Better ground detection
-                                jumping = true;
-                                jumpVelocity = -0.025f; // Improved jump velocity
-                                v.setAlpha(0.7f); // Visual feedback
-                            }
+                            simulationInput.jump = true; // Ignored by the simulation unless on the ground
+                            v.setAlpha(0.7f); // Visual feedback
                             return true;
                         case MotionEvent.ACTION_UP:
                         case MotionEvent.ACTION_CANCEL:
@@ -453,6 +594,69 @@ public class Chapter1GameActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * Frame timings are always recorded (it is cheap) and logged when the game
+     * ends; the "frameProfiler" extra also shows them as an overlay.
+     */
+    private void initializeFrameProfiler() {
+        float refreshRate = 60f;
+        try {
+            refreshRate = getWindowManager().getDefaultDisplay().getRefreshRate();
+        } catch (Exception e) {
+            Log.w(TAG, "Could not read display refresh rate", e);
+        }
+
+        frameProfiler = new FrameProfiler(refreshRate);
+        gameLoop.setProfiler(frameProfiler);
+        gameView.setFrameProfiler(frameProfiler, getIntent().getBooleanExtra("frameProfiler", false));
+    }
+
+    private void logFrameStats() {
+        if (frameProfiler != null && !frameStatsLogged) {
+            frameStatsLogged = true;
+            frameProfiler.log("Chapter 1 frame timings");
+            if (updateScheduler != null) {
+                Log.i(TAG, "Entity updates: " + updateScheduler.describeCounts());
+            }
+        }
+    }
+
+    /**
+     * Returns the layout's GameView, or swaps it for a GameSurfaceView when the
+     * "surfaceRenderer" extra asks for the render-thread backend.
+     */
+    private GameRenderView createGameView(GameView layoutView) {
+        if (layoutView == null || !getIntent().getBooleanExtra("surfaceRenderer", false)) {
+            return layoutView;
+        }
+
+        ViewGroup parent = (ViewGroup) layoutView.getParent();
+        if (parent == null) {
+            return layoutView;
+        }
+
+        GameSurfaceView surfaceView = new GameSurfaceView(this);
+        surfaceView.setId(layoutView.getId());
+        int index = parent.indexOfChild(layoutView);
+        parent.removeView(layoutView);
+        parent.addView(surfaceView, index, layoutView.getLayoutParams());
+        Log.d(TAG, "Using SurfaceView game renderer");
+        return surfaceView;
+    }
+
+    // "HARDWARE" or "SOFTWARE" in the spriteBitmapMode extra, so heap use can be compared per run
+    private SpriteManager.BitmapMode getSpriteBitmapMode() {
+        String mode = getIntent().getStringExtra("spriteBitmapMode");
+        if (mode != null) {
+            try {
+                return SpriteManager.BitmapMode.valueOf(mode);
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Unknown sprite bitmap mode: " + mode);
+            }
+        }
+        return SpriteManager.BitmapMode.SOFTWARE;
+    }
+
     private void initializeSpriteManagerAsync() {
         // Show loading indicator
         runOnUiThread(() -> {
@@ -461,31 +665,35 @@ public class Chapter1GameActivity extends AppCompatActivity {
             }
         });
 
-        // Initialize sprite manager in background thread
-        new Thread(() -> {
+        // Acquire the shared sprite manager on the decode pipeline, then decode the
+        // characters and background ahead of the optional sprites
+        SpriteDecodePipeline.submit(SpriteDecodePipeline.PRIORITY_CRITICAL, () -> {
             try {
-                Log.d(TAG, "Initializing sprite manager...");
-                spriteManager = new SpriteManager(this);
-
-                runOnUiThread(() -> {
-                    if (gameView != null && !isFinishing()) {
-                        gameView.setSpriteManager(spriteManager);
-
-                        // Set chapter data with selected sprites
-                        String playerSpriteBase = "character_" + playerCharacterColor + "_idle";
-                        gameView.setChapterData(selectedBackground, selectedObjective, playerSpriteBase);
+                Log.d(TAG, "Acquiring shared sprite manager...");
+                SpriteRegistry registry = SpriteRegistry.getInstance(this);
+                registry.setBitmapMode(getSpriteBitmapMode());
+                SpriteManager manager = registry.acquire();
+                synchronized (this) {
+                    spriteManager = manager;
+                }
+                if (isFinishing()) {
+                    releaseSpriteManager();
+                    return;
+                }
 
-                        spriteSystemReady = true;
+                manager.preloadAsync(getCriticalSprites(), getOptionalSprites(), new SpriteDecodePipeline.Listener() {
+                    @Override
+                    public void onCriticalSpritesReady(int decodedCount) {
+                        onSpriteSystemReady(manager);
+                    }
 
-                        if (spriteManager.areAssetsLoaded()) {
-                            statusText.setText("Sprites loaded! Waiting for partner...");
-                            Log.d(TAG, "Sprite system ready with custom sprites");
+                    @Override
+                    public void onAllSpritesReady(int decodedCount) {
+                        if (gameView != null && !isFinishing()) {
+                            gameView.refreshSpriteSystem();
 
                             // Print loading report for debugging
-                            spriteManager.printLoadingReport();
-                        } else {
-                            statusText.setText("Using fallback graphics. Waiting for partner...");
-                            Log.w(TAG, "Sprite system ready with fallback rendering");
+                            manager.printLoadingReport();
                         }
                     }
                 });
@@ -501,7 +709,68 @@ public class Chapter1GameActivity extends AppCompatActivity {
                     }
                 });
             }
-        }).start();
+        });
+    }
+
+    private void onSpriteSystemReady(SpriteManager manager) {
+        if (gameView == null || isFinishing()) {
+            return;
+        }
+
+        gameView.setSpriteManager(manager);
+
+        // Set chapter data with selected sprites
+        String playerSpriteBase = "character_" + playerCharacterColor + "_idle";
+        gameView.setChapterData(selectedBackground, selectedObjective, playerSpriteBase);
+        gameView.setWorldSize(worldColumns, worldRows);
+        gameView.updateObjectivePosition(objectiveDoorX, objectiveDoorY);
+        if (manager.areAssetsLoaded() && level != null) {
+            gameView.setTileMaps(level.createTileMaps(manager));
+        }
+
+        spriteSystemReady = true;
+
+        if (manager.areAssetsLoaded()) {
+            statusText.setText("Sprites loaded! Waiting for partner...");
+            Log.d(TAG, "Sprite system ready with custom sprites");
+        } else {
+            statusText.setText("Using fallback graphics. Waiting for partner...");
+            Log.w(TAG, "Sprite system ready with fallback rendering");
+        }
+    }
+
+    // Needed before the first frame: both characters and the chapter background
+    private String[] getCriticalSprites() {
+        List<String> critical = new ArrayList<>(Arrays.asList(GameRenderer.CHARACTER_SPRITES));
+        critical.add("character_" + playerCharacterColor + "_idle");
+        critical.add(selectedBackground);
+        return critical.toArray(new String[0]);
+    }
+
+    // Drawn with a fallback until decoded
+    private String[] getOptionalSprites() {
+        List<String> optional = new ArrayList<>();
+        optional.add(selectedObjective);
+        optional.addAll(Arrays.asList(ParallaxBackground.getLayerSprites(selectedBackground)));
+        if (level != null) {
+            optional.addAll(Arrays.asList(level.getTileSprites()));
+        }
+        for (int i = 0; i < entities.getAppearanceCount(); i++) {
+            optional.add(entities.getAppearanceName(i));
+        }
+        return optional.toArray(new String[0]);
+    }
+
+    private synchronized void releaseSpriteManager() {
+        if (spriteManager != null) {
+            try {
+                SpriteRegistry.getInstance(this).release(spriteManager);
+                spriteManager = null;
+                Log.d(TAG, "Sprite manager released");
+            } catch (Exception e) {
+                Log.e(TAG, "Error releasing sprite manager", e);
+            }
+        }
     }
 
     private void setupGameRoomListener() {
@@ -648,8 +917,8 @@ public class Chapter1GameActivity extends AppCompatActivity {
             readyData.put("chapterPlayers/" + uid + "/name", currentUserName);
             readyData.put("chapterPlayers/" + uid + "/characterColor", playerCharacterColor);
             readyData.put("chapterPlayers/" + uid + "/readyTime", ServerValue.TIMESTAMP);
-            readyData.put("playerPositions/" + uid + "/x", myPlayerX);
-            readyData.put("playerPositions/" + uid + "/y", myPlayerY);
+            readyData.put("playerPositions/" + uid + "/x", simulation.getState().playerX);
+            readyData.put("playerPositions/" + uid + "/y", simulation.getState().playerY);
             readyData.put("playerPositions/" + uid + "/lastUpdate", ServerValue.TIMESTAMP);
             readyData.put("scores/" + uid, 0);
             readyData.put("gamePhase", "chapter1_active");
@@ -716,7 +985,8 @@ public class Chapter1GameActivity extends AppCompatActivity {
 
             if (gameView != null) {
                 gameView.setGameActive(true);
-                gameView.updatePlayerPositions(myPlayerX, myPlayerY, partnerPlayerX, partnerPlayerY);
+                GameSimulation.State state = simulation.getState();
+                gameView.updatePlayerPositions(state.playerX, state.playerY, partnerPlayerX, partnerPlayerY);
             }
 
             String toastMessage = spriteManager != null && spriteManager.areAssetsLoaded() ?
@@ -737,80 +1007,86 @@ public class Chapter1GameActivity extends AppCompatActivity {
     }
 
     private void startGameLoop() {
-        if (!gameActive || gameEnded || isFinishing()) {
+        if (!gameActive || gameEnded || isFinishing() || gameLoop == null) {
             return;
         }
 
-        gameUpdateHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    if (gameActive && !gameEnded && !isFinishing()) {
-                        updatePlayerMovement();
-                        checkObjectiveReached();
-                        updateUI();
-                        // Optimized update interval for better performance
-                        gameUpdateHandler.postDelayed(this, 33); // ~30 FPS for smooth animation
-                    }
-                } catch (Exception e) {
-                    Log.e(TAG, "Error in game loop", e);
-                    // Continue game loop despite errors
-                    if (gameActive && !gameEnded && !isFinishing()) {
-                        gameUpdateHandler.postDelayed(this, 50);
-                    }
-                }
-            }
-        });
+        previousPlayerX = simulation.getState().playerX;
+        previousPlayerY = simulation.getState().playerY;
+        gameLoop.start();
     }
 
-    private void updatePlayerMovement() {
+    /** One fixed simulation step, driven by GameLoop. */
+    private void stepGame(float stepSeconds) {
         try {
-            boolean positionChanged = false;
-
-            // Enhanced horizontal movement with boundaries
-            if (movingLeft && myPlayerX > 0.02f) {
-                myPlayerX = Math.max(0.02f, myPlayerX - playerSpeed);
-                positionChanged = true;
-            }
-            if (movingRight && myPlayerX < 0.93f) {
-                myPlayerX = Math.min(0.93f, myPlayerX + playerSpeed);
-                positionChanged = true;
-            }
-
-            // Enhanced jumping and gravity with improved physics
-            if (jumping) {
-                myPlayerY += jumpVelocity;
-                jumpVelocity += gravity;
-
-                // Improved ground collision detection
-                if (myPlayerY >= 0.8f) {
-                    myPlayerY = 0.8f;
-                    jumping = false;
-                    jumpVelocity = 0f;
-                }
-
-                // Prevent jumping too high
-                if (myPlayerY <= maxJumpHeight) {
-                    jumpVelocity = Math.max(jumpVelocity, 0);
-                }
-
-                positionChanged = true;
+            if (!gameActive || gameEnded || isFinishing()) {
+                gameLoop.stop();
+                return;
             }
 
-            // Optimized position updates to Firebase (reduced frequency for better performance)
-            if (positionChanged) {
+            GameSimulation.State state = simulation.getState();
+            previousPlayerX = state.playerX;
+            previousPlayerY = state.playerY;
+            // Before the player, so contacts see this step's positions
+            updateSchedulerView(state);
+            updateScheduler.update(stepSeconds);
+            if (simulation.step(stepSeconds, simulationInput)) {
+                // Optimized position updates to Firebase (reduced frequency for better performance)
                 long currentTime = System.currentTimeMillis();
                 if (currentTime - lastPositionUpdate > POSITION_UPDATE_INTERVAL) {
                     updatePositionInFirebase();
                     lastPositionUpdate = currentTime;
                 }
+            }
+            if (state.objectiveReached) {
+                reachObjective();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error in game loop", e);
+        }
+    }
 
-                if (gameView != null) {
-                    gameView.updatePlayerPositions(myPlayerX, myPlayerY, partnerPlayerX, partnerPlayerY);
-                }
+    // Follows the player as the renderer's camera does, so the scheduler knows what is on screen
+    private void updateSchedulerView(GameSimulation.State state) {
+        if (gameView == null) {
+            return;
+        }
+        View view = gameView.asView();
+        if (view.getWidth() == 0 || view.getHeight() == 0) {
+            return; // Not laid out yet; everything updates every step
+        }
+        if (view.getWidth() != updateCameraWidth || view.getHeight() != updateCameraHeight) {
+            updateCameraWidth = view.getWidth();
+            updateCameraHeight = view.getHeight();
+            updateCamera.setViewport(updateCameraWidth, updateCameraHeight);
+        }
+        updateCamera.follow(state.playerX, state.playerY);
+        updateScheduler.setView(updateCamera.getViewLeft(), updateCamera.getViewTop(),
+                updateCamera.getViewRight(), updateCamera.getViewBottom());
+    }
+
+    /** Pushes the interpolated position to the game view once per frame. */
+    private void renderGame(float alpha) {
+        try {
+            GameSimulation.State state = simulation.getState();
+            float renderX = previousPlayerX + (state.playerX - previousPlayerX) * alpha;
+            float renderY = previousPlayerY + (state.playerY - previousPlayerY) * alpha;
+            if (gameView != null && (renderX != renderedPlayerX || renderY != renderedPlayerY)) {
+                gameView.updatePlayerPositions(renderX, renderY, partnerPlayerX, partnerPlayerY);
+                renderedPlayerX = renderX;
+                renderedPlayerY = renderY;
+            }
+            if (gameView != null) {
+                gameView.updateEntities(entities); // Enemies move every step
+            }
+
+            long currentTime = SystemClock.uptimeMillis();
+            if (currentTime - lastUiUpdate >= UI_UPDATE_INTERVAL) {
+                updateUI();
+                lastUiUpdate = currentTime;
             }
         } catch (Exception e) {
-            Log.e(TAG, "Error updating player movement", e);
+            Log.e(TAG, "Error rendering game frame", e);
         }
     }
 
@@ -821,8 +1097,8 @@ public class Chapter1GameActivity extends AppCompatActivity {
 
         try {
             Map<String, Object> positionData = new HashMap<>();
-            positionData.put("playerPositions/" + uid + "/x", myPlayerX);
-            positionData.put("playerPositions/" + uid + "/y", myPlayerY);
+            positionData.put("playerPositions/" + uid + "/x", simulation.getState().playerX);
+            positionData.put("playerPositions/" + uid + "/y", simulation.getState().playerY);
             positionData.put("playerPositions/" + uid + "/lastUpdate", ServerValue.TIMESTAMP);
 
             realtimeDb.child(GAME_ROOMS_NODE).child(gameRoomId)
@@ -833,15 +1109,20 @@ public class Chapter1GameActivity extends AppCompatActivity {
         }
     }
 
-    private void checkObjectiveReached() {
+    private void updateScoreInFirebase() {
+        if (isFinishing()) {
+            return;
+        }
+
         try {
-            // Enhanced objective collision detection with better hitbox
-            float doorDistance = Math.abs(myPlayerX - objectiveDoorX) + Math.abs(myPlayerY - objectiveDoorY);
-            if (doorDistance < 0.1f) { // Generous hitbox for user-friendly gameplay
-                reachObjective();
-            }
+            Map<String, Object> scoreData = new HashMap<>();
+            scoreData.put("scores/" + uid, playerScore);
+
+            realtimeDb.child(GAME_ROOMS_NODE).child(gameRoomId)
+                    .updateChildren(scoreData)
+                    .addOnFailureListener(e -> Log.e(TAG, "Error updating score", e));
         } catch (Exception e) {
-            Log.e(TAG, "Error checking objective", e);
+            Log.e(TAG, "Error in updateScoreInFirebase", e);
         }
     }
 
@@ -854,6 +1135,7 @@ public class Chapter1GameActivity extends AppCompatActivity {
             Log.d(TAG, "Player reached objective!");
             gameActive = false;
             gameEnded = true;
+            logFrameStats();
 
             // Calculate completion bonus based on time
             long completionTime = System.currentTimeMillis() - gameStartTime;
@@ -888,6 +1170,7 @@ public class Chapter1GameActivity extends AppCompatActivity {
             Log.d(TAG, "Handling game end");
             gameActive = false;
             gameEnded = true;
+            logFrameStats();
 
             String winnerId = dataSnapshot.child("winner").getValue(String.class);
             String winnerName = dataSnapshot.child("winnerName").getValue(String.class);
@@ -926,6 +1209,9 @@ public class Chapter1GameActivity extends AppCompatActivity {
                     }
 
                     updateUserStats(playerWon);
+                    if (playerWon && gameView != null) {
+                        gameView.playEffect(GameRenderView.EFFECT_CELEBRATION, objectiveDoorX, objectiveDoorY);
+                    }
                     showGameEndDialog("Chapter 1 Complete", message);
                 }
             });
@@ -984,8 +1270,8 @@ public class Chapter1GameActivity extends AppCompatActivity {
             }
 
             // Enhanced player status with progress and character info
-            float myProgress = myPlayerX * 100;
-            float partnerProgress = partnerPlayerX * 100;
+            float myProgress = simulation.getState().playerX / worldColumns * 100;
+            float partnerProgress = partnerPlayerX / worldColumns * 100;
 
             if (player1StatusText != null) {
                 player1StatusText.setText(String.format("%s (%s): %.0f%% to goal",
@@ -1158,15 +1444,8 @@ public class Chapter1GameActivity extends AppCompatActivity {
                 }
             }
 
-            // Clean up sprite manager
-            if (spriteManager != null) {
-                try {
-                    spriteManager.cleanup();
-                    Log.d(TAG, "Sprite manager cleaned up");
-                } catch (Exception e) {
-                    Log.e(TAG, "Error cleaning up sprite manager", e);
-                }
-            }
+            // Hand the sprites back; they stay resident for the next match
+            releaseSpriteManager();
 
             Log.d(TAG, "Game finish cleanup completed");
         } catch (Exception e) {
@@ -0,0 +1,375 @@
+package com.humangodcvaki.whoi;
+
+import java.util.Arrays;
+
+/**
+ * Axis-aligned collision for a level, in tile units with y growing downwards.
+ *
+ * Solid tiles come from a SolidTiles lookup; move() sweeps a box through them
+ * one tile row or column at a time, so a fast fall or jump stops at the first
+ * solid tile in its path instead of passing through it between steps.
+ *
+ * Bodies (objectives, collectibles, enemies) are boxes kept in a uniform grid
+ * of CELL_SIZE tiles. Each body is linked into the cell holding its center, and
+ * a query only visits the cells around its box, so its cost depends on how many
+ * bodies are nearby rather than on the level's size or total body count.
+ * Bodies may be at most CELL_SIZE tiles wide or high.
+ *
+ * Body storage is parallel arrays with a free list, so adding, moving and
+ * removing bodies during play does not allocate once capacity is reached.
+ * Not thread-safe; the game loop owns it.
+ */
+public class CollisionWorld {
+    public static final int CELL_SIZE = 4; // Tiles per grid cell side
+
+    public static final int KIND_NONE = 0;
+    public static final int KIND_OBJECTIVE = 1;
+    public static final int KIND_COLLECTIBLE = 2;
+    public static final int KIND_ENEMY = 3;
+
+    // Keeps boxes resting exactly on a tile edge from counting as inside it
+    private static final float EPSILON = 1e-4f;
+    private static final int NONE = -1;
+
+    /** Which tiles block movement. Only asked about tiles inside the level. */
+    public interface SolidTiles {
+        boolean isSolid(int column, int row);
+    }
+
+    /** Where move() stopped and what it ran into. */
+    public static final class MoveResult {
+        public float x;
+        public float y;
+        public boolean hitWall;
+        public boolean hitCeiling;
+        public boolean landed;
+    }
+
+    private final int columns;
+    private final int rows;
+    private final SolidTiles solidTiles;
+    private final int gridColumns;
+    private final int gridRows;
+    private final int[] cellHeads;
+
+    // Body fields by body id; a free id has KIND_NONE and is chained through next
+    private int[] kinds;
+    private int[] tags;
+    private float[] minX;
+    private float[] minY;
+    private float[] maxX;
+    private float[] maxY;
+    private int[] cells;
+    private int[] next;
+    private int[] previous;
+    private int bodyCapacity;
+    private int bodyCount;
+    private int freeHead = NONE;
+
+    private int lastQueryTests;
+
+    public CollisionWorld(int columns, int rows, SolidTiles solidTiles) {
+        this(columns, rows, solidTiles, 16);
+    }
+
+    public CollisionWorld(int columns, int rows, SolidTiles solidTiles, int initialBodyCapacity) {
+        if (columns <= 0 || rows <= 0) {
+            throw new IllegalArgumentException("World must have at least one tile: " + columns + "x" + rows);
+        }
+        this.columns = columns;
+        this.rows = rows;
+        this.solidTiles = solidTiles;
+        this.gridColumns = (columns + CELL_SIZE - 1) / CELL_SIZE;
+        this.gridRows = (rows + CELL_SIZE - 1) / CELL_SIZE;
+        this.cellHeads = new int[gridColumns * gridRows];
+        Arrays.fill(cellHeads, NONE);
+        growBodies(Math.max(1, initialBodyCapacity));
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * True for solid tiles. Outside the level the sides and bottom are solid so
+     * nothing leaves it; above it is open.
+     */
+    public boolean isSolid(int column, int row) {
+        if (column < 0 || column >= columns || row >= rows) {
+            return true;
+        }
+        return row >= 0 && solidTiles != null && solidTiles.isSolid(column, row);
+    }
+
+    // Bodies
+
+    /**
+     * Adds a box whose bottom edge is centered on (x, y), like a character's
+     * feet. The tag is the caller's own reference, e.g. an entity index.
+     * Returns the body id, which stays valid until removeBody().
+     */
+    public int addBody(int kind, int tag, float x, float y, float width, float height) {
+        if (kind == KIND_NONE) {
+            throw new IllegalArgumentException("Bodies need a kind");
+        }
+        if (width > CELL_SIZE || height > CELL_SIZE) {
+            throw new IllegalArgumentException("Bodies may be at most " + CELL_SIZE + " tiles across");
+        }
+        if (freeHead == NONE) {
+            growBodies(bodyCapacity * 2);
+        }
+        int id = freeHead;
+        freeHead = next[id];
+
+        kinds[id] = kind;
+        tags[id] = tag;
+        setBox(id, x, y, width, height);
+        cells[id] = NONE;
+        link(id, cellOf(id));
+        bodyCount++;
+        return id;
+    }
+
+    /** Moves a body so its bottom edge is centered on (x, y), keeping its size. */
+    public void moveBody(int id, float x, float y) {
+        checkBody(id);
+        setBox(id, x, y, maxX[id] - minX[id], maxY[id] - minY[id]);
+        int cell = cellOf(id);
+        if (cell != cells[id]) {
+            unlink(id);
+            link(id, cell);
+        }
+    }
+
+    public void removeBody(int id) {
+        checkBody(id);
+        unlink(id);
+        kinds[id] = KIND_NONE;
+        next[id] = freeHead;
+        freeHead = id;
+        bodyCount--;
+    }
+
+    public int getKind(int id) {
+        return kinds[id];
+    }
+
+    public int getTag(int id) {
+        return tags[id];
+    }
+
+    public int getBodyCount() {
+        return bodyCount;
+    }
+
+    /**
+     * Writes the ids of bodies overlapping the box into out, up to its length,
+     * and returns how many overlap (which may be more than were written).
+     */
+    public int query(float left, float top, float right, float bottom, int[] out) {
+        int firstColumn = clampGridColumn((int) Math.floor(left / CELL_SIZE) - 1);
+        int lastColumn = clampGridColumn((int) Math.floor(right / CELL_SIZE) + 1);
+        int firstRow = clampGridRow((int) Math.floor(top / CELL_SIZE) - 1);
+        int lastRow = clampGridRow((int) Math.floor(bottom / CELL_SIZE) + 1);
+
+        // Bodies are linked by center and no bigger than a cell, so one cell of
+        // margin around the box finds every body that can overlap it
+        int found = 0;
+        int tests = 0;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                for (int id = cellHeads[row * gridColumns + column]; id != NONE; id = next[id]) {
+                    tests++;
+                    if (minX[id] < right && maxX[id] > left && minY[id] < bottom && maxY[id] > top) {
+                        if (found < out.length) {
+                            out[found] = id;
+                        }
+                        found++;
+                    }
+                }
+            }
+        }
+        lastQueryTests = tests;
+        return found;
+    }
+
+    /** Bodies the last query() compared against, for profiling and tests. */
+    int getLastQueryTests() {
+        return lastQueryTests;
+    }
+
+    // Swept movement against tiles
+
+    /**
+     * Moves a box (bottom edge centered on x, y) by dx then dy, stopping at the
+     * first solid tile on each axis, and writes where it ended up to result.
+     */
+    public void move(float x, float y, float width, float height, float dx, float dy, MoveResult result) {
+        float halfWidth = width / 2;
+        result.hitWall = false;
+        result.hitCeiling = false;
+        result.landed = false;
+
+        // Horizontal: test each column the leading edge enters, nearest first
+        if (dx != 0) {
+            int topRow = (int) Math.floor(y - height + EPSILON);
+            int bottomRow = (int) Math.floor(y - EPSILON);
+            if (dx > 0) {
+                float edge = x + halfWidth;
+                int last = (int) Math.floor(edge + dx - EPSILON);
+                for (int column = (int) Math.floor(edge - EPSILON) + 1; column <= last; column++) {
+                    if (isColumnSolid(column, topRow, bottomRow)) {
+                        dx = column - edge;
+                        result.hitWall = true;
+                        break;
+                    }
+                }
+            } else {
+                float edge = x - halfWidth;
+                int last = (int) Math.floor(edge + dx + EPSILON);
+                for (int column = (int) Math.floor(edge + EPSILON) - 1; column >= last; column--) {
+                    if (isColumnSolid(column, topRow, bottomRow)) {
+                        dx = column + 1 - edge;
+                        result.hitWall = true;
+                        break;
+                    }
+                }
+            }
+            x += dx;
+        }
+
+        // Vertical, from the new column span
+        if (dy != 0) {
+            int leftColumn = (int) Math.floor(x - halfWidth + EPSILON);
+            int rightColumn = (int) Math.floor(x + halfWidth - EPSILON);
+            if (dy > 0) {
+                int last = (int) Math.floor(y + dy - EPSILON);
+                for (int row = (int) Math.floor(y - EPSILON) + 1; row <= last; row++) {
+                    if (isRowSolid(row, leftColumn, rightColumn)) {
+                        dy = row - y;
+                        result.landed = true;
+                        break;
+                    }
+                }
+            } else {
+                float edge = y - height;
+                int last = (int) Math.floor(edge + dy + EPSILON);
+                for (int row = (int) Math.floor(edge + EPSILON) - 1; row >= last; row--) {
+                    if (isRowSolid(row, leftColumn, rightColumn)) {
+                        dy = row + 1 - edge;
+                        result.hitCeiling = true;
+                        break;
+                    }
+                }
+            }
+            y += dy;
+        }
+
+        result.x = x;
+        result.y = y;
+    }
+
+    /** True if the tile row just below the box's bottom edge is solid under it. */
+    public boolean isOnGround(float x, float y, float width) {
+        float halfWidth = width / 2;
+        int row = (int) Math.floor(y + EPSILON);
+        if (Math.abs(y - row) > EPSILON) {
+            return false; // Feet are not on a tile edge
+        }
+        return isRowSolid(row, (int) Math.floor(x - halfWidth + EPSILON), (int) Math.floor(x + halfWidth - EPSILON));
+    }
+
+    private boolean isColumnSolid(int column, int topRow, int bottomRow) {
+        for (int row = topRow; row <= bottomRow; row++) {
+            if (isSolid(column, row)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isRowSolid(int row, int leftColumn, int rightColumn) {
+        for (int column = leftColumn; column <= rightColumn; column++) {
+            if (isSolid(column, row)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Grid bookkeeping
+
+    private void setBox(int id, float x, float y, float width, float height) {
+        minX[id] = x - width / 2;
+        maxX[id] = x + width / 2;
+        minY[id] = y - height;
+        maxY[id] = y;
+    }
+
+    private int cellOf(int id) {
+        int column = clampGridColumn((int) Math.floor((minX[id] + maxX[id]) / 2 / CELL_SIZE));
+        int row = clampGridRow((int) Math.floor((minY[id] + maxY[id]) / 2 / CELL_SIZE));
+        return row * gridColumns + column;
+    }
+
+    private int clampGridColumn(int column) {
+        return Math.max(0, Math.min(gridColumns - 1, column));
+    }
+
+    private int clampGridRow(int row) {
+        return Math.max(0, Math.min(gridRows - 1, row));
+    }
+
+    private void link(int id, int cell) {
+        cells[id] = cell;
+        previous[id] = NONE;
+        next[id] = cellHeads[cell];
+        if (cellHeads[cell] != NONE) {
+            previous[cellHeads[cell]] = id;
+        }
+        cellHeads[cell] = id;
+    }
+
+    private void unlink(int id) {
+        int cell = cells[id];
+        if (previous[id] != NONE) {
+            next[previous[id]] = next[id];
+        } else {
+            cellHeads[cell] = next[id];
+        }
+        if (next[id] != NONE) {
+            previous[next[id]] = previous[id];
+        }
+        cells[id] = NONE;
+    }
+
+    private void checkBody(int id) {
+        if (id < 0 || id >= bodyCapacity || kinds[id] == KIND_NONE) {
+            throw new IllegalArgumentException("No body " + id);
+        }
+    }
+
+    private void growBodies(int capacity) {
+        int oldCapacity = bodyCapacity;
+        kinds = kinds == null ? new int[capacity] : Arrays.copyOf(kinds, capacity);
+        tags = tags == null ? new int[capacity] : Arrays.copyOf(tags, capacity);
+        minX = minX == null ? new float[capacity] : Arrays.copyOf(minX, capacity);
+        minY = minY == null ? new float[capacity] : Arrays.copyOf(minY, capacity);
+        maxX = maxX == null ? new float[capacity] : Arrays.copyOf(maxX, capacity);
+        maxY = maxY == null ? new float[capacity] : Arrays.copyOf(maxY, capacity);
+        cells = cells == null ? new int[capacity] : Arrays.copyOf(cells, capacity);
+        next = next == null ? new int[capacity] : Arrays.copyOf(next, capacity);
+        previous = previous == null ? new int[capacity] : Arrays.copyOf(previous, capacity);
+
+        // New ids go on the free list, lowest first
+        for (int id = capacity - 1; id >= oldCapacity; id--) {
+            next[id] = freeHead;
+            freeHead = id;
+        }
+        bodyCapacity = capacity;
+    }
+}
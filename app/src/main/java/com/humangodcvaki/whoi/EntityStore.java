@@ -0,0 +1,256 @@
+package com.humangodcvaki.whoi;
+
+import java.util.Arrays;
+
+/**
+ * Enemies and collectibles as parallel primitive arrays indexed by entity id:
+ * type, appearance, position, velocity, patrol range, animation time and
+ * collision body. There are no per-entity objects, so spawning, updating and
+ * despawning hundreds of entities per tick allocates nothing once the arrays
+ * have grown to fit. Despawned ids go on a free list and are reused first.
+ *
+ * Entities spawned with a CollisionWorld get a body tagged with their id,
+ * which update() keeps at the entity's position.
+ *
+ * Appearances are sprite names registered once; entities store the index.
+ * GameRenderer draws from a copy made by copyFrom(), since it may run on a
+ * render thread. Not thread-safe otherwise.
+ */
+public class EntityStore {
+    public static final int TYPE_NONE = 0;
+    public static final int TYPE_ENEMY = 1;
+    public static final int TYPE_COLLECTIBLE = 2;
+
+    public static final int NO_BODY = -1;
+    private static final int NONE = -1;
+
+    private final CollisionWorld world;
+
+    private String[] appearanceNames = new String[0];
+
+    private int[] types;
+    private int[] appearances;
+    private float[] x;
+    private float[] y;
+    private float[] velocityX;
+    private float[] velocityY;
+    private float[] patrolMin;
+    private float[] patrolMax;
+    private float[] animationTime; // Seconds since spawn
+    private int[] bodies;
+    private int[] nextFree;
+    private int capacity;
+    private int highWater;  // Ids at or above this have never been used
+    private int count;
+    private int freeHead = NONE;
+
+    /** A store without collision, e.g. a render-side copy. */
+    public EntityStore(int initialCapacity) {
+        this(initialCapacity, null);
+    }
+
+    public EntityStore(int initialCapacity, CollisionWorld world) {
+        this.world = world;
+        allocate(Math.max(1, initialCapacity));
+    }
+
+    /** Returns the index for a sprite name, adding it if new. Call while setting up, not per tick. */
+    public int registerAppearance(String spriteName) {
+        for (int i = 0; i < appearanceNames.length; i++) {
+            if (appearanceNames[i].equals(spriteName)) {
+                return i;
+            }
+        }
+        appearanceNames = Arrays.copyOf(appearanceNames, appearanceNames.length + 1);
+        appearanceNames[appearanceNames.length - 1] = spriteName;
+        return appearanceNames.length - 1;
+    }
+
+    public int getAppearanceCount() {
+        return appearanceNames.length;
+    }
+
+    public String getAppearanceName(int appearance) {
+        return appearanceNames[appearance];
+    }
+
+    /**
+     * Spawns an entity standing at (x, y) and returns its id. An entity with a
+     * velocity walks back and forth between patrolMin and patrolMax.
+     * bodyKind is a CollisionWorld kind, ignored without a world.
+     */
+    public int spawn(int type, int appearance, float x, float y, float velocityX,
+                     float patrolMin, float patrolMax, int bodyKind, float bodyWidth, float bodyHeight) {
+        if (type == TYPE_NONE) {
+            throw new IllegalArgumentException("Entities need a type");
+        }
+        if (freeHead == NONE && highWater == capacity) {
+            allocate(capacity * 2);
+        }
+        int id;
+        if (freeHead != NONE) {
+            id = freeHead;
+            freeHead = nextFree[id];
+        } else {
+            id = highWater++;
+        }
+
+        types[id] = type;
+        appearances[id] = appearance;
+        this.x[id] = x;
+        this.y[id] = y;
+        this.velocityX[id] = velocityX;
+        velocityY[id] = 0f;
+        this.patrolMin[id] = patrolMin;
+        this.patrolMax[id] = patrolMax;
+        animationTime[id] = 0f;
+        bodies[id] = world != null ? world.addBody(bodyKind, id, x, y, bodyWidth, bodyHeight) : NO_BODY;
+        count++;
+        return id;
+    }
+
+    /** Removes an entity and its body, if it still has one. */
+    public void despawn(int id) {
+        if (!isAlive(id)) {
+            return;
+        }
+        if (bodies[id] != NO_BODY && world != null) {
+            world.removeBody(bodies[id]);
+        }
+        types[id] = TYPE_NONE;
+        bodies[id] = NO_BODY;
+        nextFree[id] = freeHead;
+        freeHead = id;
+        count--;
+    }
+
+    /** Forgets an entity's body without removing it, for bodies the world already removed. */
+    public void detachBody(int id) {
+        bodies[id] = NO_BODY;
+    }
+
+    /** Moves and animates every entity by dt seconds. */
+    public void update(float dt) {
+        for (int id = 0; id < highWater; id++) {
+            if (types[id] != TYPE_NONE) {
+                update(id, dt);
+            }
+        }
+    }
+
+    /** Moves and animates one entity; lets a scheduler tick entities at different rates. */
+    public void update(int id, float dt) {
+        animationTime[id] += dt;
+        if (velocityX[id] == 0f && velocityY[id] == 0f) {
+            return;
+        }
+
+        float newX = x[id] + velocityX[id] * dt;
+        if (newX < patrolMin[id]) {
+            newX = patrolMin[id];
+            velocityX[id] = Math.abs(velocityX[id]);
+        } else if (newX > patrolMax[id]) {
+            newX = patrolMax[id];
+            velocityX[id] = -Math.abs(velocityX[id]);
+        }
+        x[id] = newX;
+        y[id] += velocityY[id] * dt;
+
+        if (bodies[id] != NO_BODY && world != null) {
+            world.moveBody(bodies[id], x[id], y[id]);
+        }
+    }
+
+    /**
+     * Makes this store an exact copy of another's entities and appearances,
+     * without collision. Allocates only when the other store has grown.
+     */
+    public void copyFrom(EntityStore other) {
+        if (appearanceNames.length != other.appearanceNames.length) {
+            appearanceNames = other.appearanceNames.clone();
+        }
+        if (capacity < other.highWater) {
+            allocate(other.capacity);
+        }
+        int n = other.highWater;
+        System.arraycopy(other.types, 0, types, 0, n);
+        System.arraycopy(other.appearances, 0, appearances, 0, n);
+        System.arraycopy(other.x, 0, x, 0, n);
+        System.arraycopy(other.y, 0, y, 0, n);
+        System.arraycopy(other.velocityX, 0, velocityX, 0, n);
+        System.arraycopy(other.velocityY, 0, velocityY, 0, n);
+        System.arraycopy(other.patrolMin, 0, patrolMin, 0, n);
+        System.arraycopy(other.patrolMax, 0, patrolMax, 0, n);
+        System.arraycopy(other.animationTime, 0, animationTime, 0, n);
+        Arrays.fill(types, n, Math.max(n, highWater), TYPE_NONE);
+        Arrays.fill(bodies, 0, Math.max(n, highWater), NO_BODY);
+        highWater = n;
+        count = other.count;
+        freeHead = NONE; // A copy is only read
+    }
+
+    public boolean isAlive(int id) {
+        return id >= 0 && id < highWater && types[id] != TYPE_NONE;
+    }
+
+    /** Entity ids are below this; skip ids whose type is TYPE_NONE. */
+    public int getIdLimit() {
+        return highWater;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getType(int id) {
+        return types[id];
+    }
+
+    public int getAppearance(int id) {
+        return appearances[id];
+    }
+
+    public float getX(int id) {
+        return x[id];
+    }
+
+    public float getY(int id) {
+        return y[id];
+    }
+
+    public float getVelocityX(int id) {
+        return velocityX[id];
+    }
+
+    public float getAnimationTime(int id) {
+        return animationTime[id];
+    }
+
+    public int getBody(int id) {
+        return bodies[id];
+    }
+
+    private void allocate(int newCapacity) {
+        types = grow(types, newCapacity);
+        appearances = grow(appearances, newCapacity);
+        x = grow(x, newCapacity);
+        y = grow(y, newCapacity);
+        velocityX = grow(velocityX, newCapacity);
+        velocityY = grow(velocityY, newCapacity);
+        patrolMin = grow(patrolMin, newCapacity);
+        patrolMax = grow(patrolMax, newCapacity);
+        animationTime = grow(animationTime, newCapacity);
+        bodies = grow(bodies, newCapacity);
+        nextFree = grow(nextFree, newCapacity);
+        Arrays.fill(bodies, capacity, newCapacity, NO_BODY);
+        capacity = newCapacity;
+    }
+
+    private static int[] grow(int[] array, int length) {
+        return array == null ? new int[length] : Arrays.copyOf(array, length);
+    }
+
+    private static float[] grow(float[] array, int length) {
+        return array == null ? new float[length] : Arrays.copyOf(array, length);
+    }
+}
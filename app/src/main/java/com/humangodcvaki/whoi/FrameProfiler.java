@@ -0,0 +1,230 @@
+package com.humangodcvaki.whoi;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.Log;
+
+import java.util.Arrays;
+
+/**
+ * Lightweight frame timing for the game: update time (GameLoop steps plus the
+ * render hand-off), draw time (GameRenderer.draw) and the vsync-to-vsync frame
+ * interval, each kept in a fixed-size ring buffer of the most recent frames.
+ *
+ * Recording never allocates. Percentiles are computed on demand by sorting a
+ * preallocated scratch copy. A frame interval longer than 1.5 refresh periods
+ * counts as janky, and every refresh period it overran counts as a dropped frame.
+ * Written from the main and render threads, so methods are synchronized.
+ */
+public class FrameProfiler {
+    private static final String TAG = "FrameProfiler";
+
+    static final int CAPACITY = 256;
+    private static final float JANK_THRESHOLD = 1.5f; // In refresh periods
+    private static final int OVERLAY_REFRESH_FRAMES = 30; // Recompute overlay numbers twice a second at 60 Hz
+
+    private static final int UPDATE = 0;
+    private static final int DRAW = 1;
+    private static final int INTERVAL = 2;
+    private static final String[] SERIES_NAMES = {"update", "draw", "interval"};
+
+    private final long refreshPeriodNanos;
+    private final long[][] samples = new long[3][CAPACITY];
+    private final int[] sampleCounts = new int[3];
+    private final int[] nextIndex = new int[3];
+    private final long[] scratch = new long[CAPACITY];
+
+    private long totalFrames = 0;
+    private long jankyFrames = 0;
+    private long droppedFrames = 0;
+
+    // Overlay numbers (microseconds) and the characters drawn for them
+    private final long[][] overlayPercentiles = new long[3][3];
+    private final char[][] overlayLines = new char[5][64];
+    private final int[] overlayLineLengths = new int[5];
+    private int framesSinceOverlayRefresh = OVERLAY_REFRESH_FRAMES;
+
+    public FrameProfiler(float refreshRateHz) {
+        float rate = refreshRateHz > 1f ? refreshRateHz : 60f;
+        refreshPeriodNanos = (long) (1_000_000_000L / rate);
+    }
+
+    public synchronized void recordUpdate(long nanos) {
+        record(UPDATE, nanos);
+    }
+
+    public synchronized void recordDraw(long nanos) {
+        record(DRAW, nanos);
+    }
+
+    /** Time between two consecutive vsync frames of the game loop. */
+    public synchronized void recordFrameInterval(long nanos) {
+        record(INTERVAL, nanos);
+        totalFrames++;
+        if (nanos > refreshPeriodNanos * JANK_THRESHOLD) {
+            jankyFrames++;
+            droppedFrames += Math.max(1, Math.round(nanos / (double) refreshPeriodNanos) - 1);
+        }
+    }
+
+    private void record(int series, long nanos) {
+        samples[series][nextIndex[series]] = nanos;
+        nextIndex[series] = (nextIndex[series] + 1) % CAPACITY;
+        if (sampleCounts[series] < CAPACITY) {
+            sampleCounts[series]++;
+        }
+    }
+
+    /** Nearest-rank percentile over the buffered samples, in nanoseconds (0 if empty). */
+    private long percentile(int series, int percent) {
+        int count = sampleCounts[series];
+        if (count == 0) {
+            return 0;
+        }
+        System.arraycopy(samples[series], 0, scratch, 0, count);
+        Arrays.sort(scratch, 0, count);
+        int rank = (int) Math.ceil(percent / 100.0 * count);
+        return scratch[Math.max(0, Math.min(count - 1, rank - 1))];
+    }
+
+    public synchronized long getUpdatePercentileNanos(int percent) {
+        return percentile(UPDATE, percent);
+    }
+
+    public synchronized long getDrawPercentileNanos(int percent) {
+        return percentile(DRAW, percent);
+    }
+
+    public synchronized long getFrameIntervalPercentileNanos(int percent) {
+        return percentile(INTERVAL, percent);
+    }
+
+    /** The most recent frame interval, or 0 before the first. */
+    public synchronized long getLastFrameIntervalNanos() {
+        if (sampleCounts[INTERVAL] == 0) {
+            return 0;
+        }
+        return samples[INTERVAL][(nextIndex[INTERVAL] + CAPACITY - 1) % CAPACITY];
+    }
+
+    public long getRefreshPeriodNanos() {
+        return refreshPeriodNanos;
+    }
+
+    public synchronized long getTotalFrames() {
+        return totalFrames;
+    }
+
+    public synchronized long getJankyFrames() {
+        return jankyFrames;
+    }
+
+    public synchronized long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(sampleCounts, 0);
+        Arrays.fill(nextIndex, 0);
+        totalFrames = 0;
+        jankyFrames = 0;
+        droppedFrames = 0;
+        framesSinceOverlayRefresh = OVERLAY_REFRESH_FRAMES;
+    }
+
+    /** Logs percentiles for the buffered frames and the jank counters. */
+    public synchronized void log(String label) {
+        Log.i(TAG, String.format("%s: %d frames, %d janky, %d dropped (refresh %.1fms)",
+                label, totalFrames, jankyFrames, droppedFrames, refreshPeriodNanos / 1_000_000f));
+        for (int series = 0; series < SERIES_NAMES.length; series++) {
+            Log.i(TAG, String.format("  %s: p50 %.2fms, p95 %.2fms, p99 %.2fms (%d samples)",
+                    SERIES_NAMES[series],
+                    percentile(series, 50) / 1_000_000f,
+                    percentile(series, 95) / 1_000_000f,
+                    percentile(series, 99) / 1_000_000f,
+                    sampleCounts[series]));
+        }
+    }
+
+    /**
+     * Draws the numbers as a small text panel. Allocation-free: lines are
+     * formatted into char buffers, and only every OVERLAY_REFRESH_FRAMES calls.
+     */
+    public synchronized void drawOverlay(Canvas canvas, float left, float top,
+                                         Paint backgroundPaint, Paint textPaint) {
+        if (++framesSinceOverlayRefresh >= OVERLAY_REFRESH_FRAMES) {
+            framesSinceOverlayRefresh = 0;
+            refreshOverlayLines();
+        }
+
+        float lineHeight = textPaint.getTextSize() * 1.25f;
+        canvas.drawRect(left, top, left + textPaint.getTextSize() * 18,
+                top + lineHeight * overlayLines.length + lineHeight / 2, backgroundPaint);
+        for (int i = 0; i < overlayLines.length; i++) {
+            canvas.drawText(overlayLines[i], 0, overlayLineLengths[i],
+                    left + lineHeight / 2, top + lineHeight * (i + 1), textPaint);
+        }
+    }
+
+    private void refreshOverlayLines() {
+        for (int series = 0; series < 3; series++) {
+            overlayPercentiles[series][0] = percentile(series, 50) / 1000;
+            overlayPercentiles[series][1] = percentile(series, 95) / 1000;
+            overlayPercentiles[series][2] = percentile(series, 99) / 1000;
+        }
+
+        overlayLineLengths[0] = append(overlayLines[0], 0, "p50/p95/p99 ms");
+        for (int series = 0; series < 3; series++) {
+            char[] line = overlayLines[series + 1];
+            int length = append(line, 0, SERIES_NAMES[series]);
+            for (int p = 0; p < 3; p++) {
+                length = append(line, length, p == 0 ? " " : "/");
+                length = appendMillis(line, length, overlayPercentiles[series][p]);
+            }
+            overlayLineLengths[series + 1] = length;
+        }
+
+        char[] line = overlayLines[4];
+        int length = append(line, 0, "janky ");
+        length = appendLong(line, length, jankyFrames);
+        length = append(line, length, " dropped ");
+        length = appendLong(line, length, droppedFrames);
+        length = append(line, length, " of ");
+        overlayLineLengths[4] = appendLong(line, length, totalFrames);
+    }
+
+    private static int append(char[] line, int length, String text) {
+        int count = Math.min(text.length(), line.length - length);
+        text.getChars(0, count, line, length);
+        return length + count;
+    }
+
+    // Microseconds as milliseconds with one decimal, e.g. 16.6
+    private static int appendMillis(char[] line, int length, long micros) {
+        long tenths = (micros + 50) / 100;
+        length = appendLong(line, length, tenths / 10);
+        if (length < line.length - 1) {
+            line[length++] = '.';
+            line[length++] = (char) ('0' + tenths % 10);
+        }
+        return length;
+    }
+
+    private static int appendLong(char[] line, int length, long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        int digits = 1;
+        for (long v = value / 10; v > 0; v /= 10) {
+            digits++;
+        }
+        if (length + digits > line.length) {
+            return length;
+        }
+        for (int i = length + digits - 1; i >= length; i--) {
+            line[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return length + digits;
+    }
+}
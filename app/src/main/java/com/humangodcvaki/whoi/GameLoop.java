@@ -0,0 +1,101 @@
+package com.humangodcvaki.whoi;
+
+import android.view.Choreographer;
+
+/**
+ * Vsync-aligned game loop with a fixed simulation timestep.
+ *
+ * Each Choreographer frame adds the real elapsed time to an accumulator and
+ * runs as many fixed steps as fit, so movement is the same at 60, 90 or 120 Hz
+ * and after dropped frames. The leftover fraction of a step is passed to
+ * onRender so positions can be interpolated between the last two steps.
+ *
+ * Must be started and stopped on the main thread.
+ */
+public class GameLoop implements Choreographer.FrameCallback {
+
+    public interface Callback {
+        /** Advances the simulation by exactly stepSeconds. */
+        void onStep(float stepSeconds);
+
+        /** Called once per frame after stepping; alpha is in [0, 1). */
+        void onRender(float alpha);
+    }
+
+    public static final float STEP_SECONDS = 1f / 60f;
+
+    private static final long STEP_NANOS = 1_000_000_000L / 60;
+    // After a long stall (GC, backgrounding) drop the backlog instead of fast-forwarding
+    private static final long MAX_FRAME_NANOS = 250_000_000L;
+
+    private final Callback callback;
+    private FrameProfiler profiler;
+    private boolean running = false;
+    private long lastFrameNanos = 0;
+    private long accumulatorNanos = 0;
+
+    public GameLoop(Callback callback) {
+        this.callback = callback;
+    }
+
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        lastFrameNanos = 0;
+        accumulatorNanos = 0;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    /** Records update time and vsync intervals into the profiler; null to stop. */
+    public void setProfiler(FrameProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!running) {
+            return;
+        }
+        // Re-post first so an exception in the callback does not end the loop
+        Choreographer.getInstance().postFrameCallback(this);
+
+        if (lastFrameNanos == 0) {
+            lastFrameNanos = frameTimeNanos; // First frame only sets the clock
+            callback.onRender(0f);
+            return;
+        }
+
+        long intervalNanos = Math.max(0, frameTimeNanos - lastFrameNanos);
+        lastFrameNanos = frameTimeNanos;
+        accumulatorNanos += Math.min(MAX_FRAME_NANOS, intervalNanos);
+
+        long updateStart = System.nanoTime();
+        while (running && accumulatorNanos >= STEP_NANOS) {
+            callback.onStep(STEP_SECONDS);
+            accumulatorNanos -= STEP_NANOS;
+        }
+
+        if (running) {
+            callback.onRender(accumulatorNanos / (float) STEP_NANOS);
+        }
+
+        if (profiler != null) {
+            profiler.recordUpdate(System.nanoTime() - updateStart);
+            profiler.recordFrameInterval(intervalNanos);
+        }
+    }
+}
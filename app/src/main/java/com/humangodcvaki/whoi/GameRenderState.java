@@ -0,0 +1,73 @@
+package com.humangodcvaki.whoi;
+
+/**
+ * What a frame needs to know about the game: positions in world tiles and
+ * whether each character is walking. Backends keep one copy that the game
+ * writes and hand the renderer a snapshot of it.
+ */
+final class GameRenderState {
+    private static final float MOVEMENT_THRESHOLD = 0.01f;
+
+    float playerX = 2;
+    float playerY = 8;
+    float partnerX = 2;
+    float partnerY = 8;
+
+    float objectiveX = 18;
+    float objectiveY = 8;
+
+    // Enemies and collectibles; copied, so the game's store is never read while drawing
+    final EntityStore entities = new EntityStore(16);
+
+    boolean gameActive = false;
+    boolean playerMoving = false;
+    boolean partnerMoving = false;
+
+    // One-off effects (GameRenderView.EFFECT_*) to start; the renderer clears them once started
+    static final int MAX_EFFECTS = 8;
+    final int[] effectTypes = new int[MAX_EFFECTS];
+    final float[] effectX = new float[MAX_EFFECTS];
+    final float[] effectY = new float[MAX_EFFECTS];
+    int effectCount = 0;
+
+    void setPlayerPositions(float playerX, float playerY, float partnerX, float partnerY) {
+        // Detect movement for animation
+        playerMoving = Math.abs(playerX - this.playerX) > MOVEMENT_THRESHOLD;
+        this.playerX = playerX;
+        this.playerY = playerY;
+        setPartnerPosition(partnerX, partnerY);
+    }
+
+    void setPartnerPosition(float partnerX, float partnerY) {
+        partnerMoving = Math.abs(partnerX - this.partnerX) > MOVEMENT_THRESHOLD;
+        this.partnerX = partnerX;
+        this.partnerY = partnerY;
+    }
+
+    /** Queues an effect at a world position; dropped if MAX_EFFECTS are already waiting. */
+    void addEffect(int effect, float x, float y) {
+        if (effectCount < MAX_EFFECTS) {
+            effectTypes[effectCount] = effect;
+            effectX[effectCount] = x;
+            effectY[effectCount] = y;
+            effectCount++;
+        }
+    }
+
+    void copyFrom(GameRenderState other) {
+        playerX = other.playerX;
+        playerY = other.playerY;
+        partnerX = other.partnerX;
+        partnerY = other.partnerY;
+        objectiveX = other.objectiveX;
+        objectiveY = other.objectiveY;
+        gameActive = other.gameActive;
+        playerMoving = other.playerMoving;
+        partnerMoving = other.partnerMoving;
+        entities.copyFrom(other.entities);
+        System.arraycopy(other.effectTypes, 0, effectTypes, 0, other.effectCount);
+        System.arraycopy(other.effectX, 0, effectX, 0, other.effectCount);
+        System.arraycopy(other.effectY, 0, effectY, 0, other.effectCount);
+        effectCount = other.effectCount;
+    }
+}
@@ -0,0 +1,48 @@
+package com.humangodcvaki.whoi;
+
+import android.view.View;
+
+/**
+ * A game rendering backend. GameView draws on the UI thread through
+ * invalidate(); GameSurfaceView draws on its own render thread. Both take the
+ * same calls, so Chapter1GameActivity can use either.
+ */
+public interface GameRenderView {
+    // Particle effects for playEffect
+    int EFFECT_PICKUP = 0;
+    int EFFECT_CELEBRATION = 1;
+
+    void setSpriteManager(SpriteManager spriteManager);
+
+    void setChapterData(String backgroundSprite, String objectiveSprite, String playerSprite);
+
+    void setGameActive(boolean active);
+
+    void updatePlayerPositions(float playerX, float playerY, float partnerX, float partnerY);
+
+    void updatePartnerPosition(float partnerX, float partnerY);
+
+    void updateObjectivePosition(float objectiveX, float objectiveY);
+
+    /** Takes a copy of the entities to draw; call after the game updates them. */
+    void updateEntities(EntityStore entities);
+
+    /** Starts a one-off particle effect at a world position. */
+    void playEffect(int effect, float x, float y);
+
+    boolean isUsingSpriteSystem();
+
+    void refreshSpriteSystem();
+
+    /** Level tile layers, bottom first, drawn instead of the flat ground; null for the flat ground. */
+    void setTileMaps(TileMap[] layers);
+
+    /** Size of the level in tiles, the unit of every position passed in. */
+    void setWorldSize(float columns, float rows);
+
+    /** Records draw times into the profiler, optionally showing its overlay; null to stop. */
+    void setFrameProfiler(FrameProfiler profiler, boolean showOverlay);
+
+    /** The backend's view, for placing it in a layout. */
+    View asView();
+}
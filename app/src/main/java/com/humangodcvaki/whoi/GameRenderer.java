@@ -0,0 +1,923 @@
+package com.humangodcvaki.whoi;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Draws one frame of the chapter from a GameRenderState snapshot. Shared by the
+ * View backend (GameView, UI thread) and the SurfaceView backend
+ * (GameSurfaceView, its render thread); methods are synchronized so the UI
+ * thread can change chapter data while a render thread is drawing.
+ */
+class GameRenderer {
+    private static final String TAG = "GameRenderer";
+
+    private Paint paint;
+    private Paint backgroundPaint;
+    private Paint playerPaint;
+    private Paint partnerPaint;
+    private Paint objectivePaint;
+    private Paint debugPaint;
+
+    private SpriteManager spriteManager;
+    private String backgroundSprite;
+    private String objectiveSprite;
+    private String playerSprite;
+    private String partnerSprite;
+    private boolean forestBackground = false;
+
+    // Sprite handles resolved once per chapter so frames never hash names
+    private int backgroundHandle = SpriteManager.NO_SPRITE;
+    private int objectiveHandle = SpriteManager.NO_SPRITE;
+    private int playerIdleHandle = SpriteManager.NO_SPRITE;
+    private int partnerIdleHandle = SpriteManager.NO_SPRITE;
+    private SpriteAnimation playerWalkClip;
+    private SpriteAnimation partnerWalkClip;
+
+    // Positions in world tiles
+    private float playerX = 2;
+    private float playerY = 8;
+    private float partnerX = 2;
+    private float partnerY = 8;
+
+    private float objectiveX = 18;
+    private float objectiveY = 8;
+
+    // Copy of the game's enemies and collectibles, taken over from each frame's state
+    private final EntityStore entities = new EntityStore(16);
+
+    // Per entity appearance: rest sprite and moving clip, resolved when appearances are added
+    private int[] appearanceHandles = new int[0];
+    private SpriteAnimation[] appearanceClips = new SpriteAnimation[0];
+    private static final String REST_SUFFIX = "_rest";
+    private static final String[] MOVE_CLIP_SUFFIXES = {"_walk", "_move", "_swim", ""};
+    private static final float COLLECTIBLE_BOB = 0.1f;  // Tiles
+    private static final float COLLECTIBLE_BOB_SPEED = 3f; // Radians per second
+
+    // Objective glow, pickup sparks and the win celebration
+    private final ParticleSystem particles = new ParticleSystem();
+    private long lastParticleClock = 0;
+    private float glowSparksDue = 0;
+    private static final float GLOW_SPARKS_PER_SECOND = 24;
+    private static final int COLOR_GLOW = 0xC0FFEB3B;   // Translucent yellow
+    private static final int COLOR_PICKUP = 0xFFFFD700; // Gold
+    private static final int[] CELEBRATION_COLORS = {0xFFFF5252, 0xFFFFD740, 0xFF69F0AE, 0xFF40C4FF, 0xFFE040FB};
+
+    // Follows the player; everything but the overlays is drawn through it
+    private final Camera camera = new Camera();
+
+    // Scrolling background bands, used once the background sprites are decoded
+    private final ParallaxBackground parallaxBackground = new ParallaxBackground();
+
+    // Fallback scenery (or the stretched background sprite if the parallax bands
+    // can't be built) and ground rendered once per size/background into an
+    // offscreen layer, then blitted each frame. Opaque, so RGB_565 halves its memory.
+    private Bitmap staticLayer;
+    private boolean staticLayerValid = false;
+    private boolean staticLayerHasSprite = false;
+    private final RectF backgroundRect = new RectF();
+
+    // Level tile layers (bottom first), drawn over the background in place of the
+    // flat ground when sprites are on
+    private TileMap[] tileLayers = new TileMap[0];
+    private TileMapRenderer[] tileLayerRenderers = new TileMapRenderer[0];
+
+    private boolean gameActive = false;
+    private boolean useSprites = false;
+
+    // Optional frame timing; the overlay replaces the waiting-screen debug info
+    private FrameProfiler frameProfiler;
+    private boolean showProfilerOverlay = false;
+    private long particleBudgetFrames = 0; // Profiler frame count the particle budget last saw
+    private Paint profilerBackgroundPaint;
+
+    // Animation state tracking: one clock for every animated thing, advanced once per frame;
+    // each entity only remembers the clock time its current clip started
+    private long animationClock = 0;
+    private long lastClockUptime = 0;
+    private long playerWalkStart = 0;
+    private long partnerWalkStart = 0;
+    private boolean playerMoving = false;
+    private boolean partnerMoving = false;
+
+    // Sprite scale factors for better visual presentation
+    private static final float BACKGROUND_SCALE = 1.0f;
+
+    // Generous bounds for sprites, glow and labels when skipping things out of view
+    private static final float OFFSCREEN_MARGIN = 200;
+
+    // Character frames chosen by getCurrentPlayerHandle, preloaded by the activity:
+    // idle, walk_a, walk_b for the player, then the same for the partner
+    static final String[] CHARACTER_SPRITES = {
+            "character_green_idle", "character_green_walk_a", "character_green_walk_b",
+            "character_beige_idle", "character_beige_walk_a", "character_beige_walk_b"
+    };
+    private static final String PLAYER_WALK_CLIP = "character_green_walk";
+    private static final String PARTNER_WALK_CLIP = "character_beige_walk";
+
+    // Stick figure fallback swings its limbs at the sprite walk rate
+    private static final long FALLBACK_STEP_DURATION = 400;
+    private static final long MAX_CLOCK_STEP = 100; // Don't jump animations after a stall
+
+    // Fallback colors when sprites aren't available
+    private int playerColor = Color.GREEN;
+    private int partnerColor = Color.BLUE;
+    private int objectiveColor = Color.YELLOW;
+    private int backgroundColor = 0xFF87CEEB; // Sky blue
+
+    // Scenery colours as constants so no frame parses a colour string
+    private static final int COLOR_FOREST_OVERLAY = 0x90228B22; // Semi-transparent green
+    private static final int COLOR_LIGHT_RAY = 0x40FFFFFF;      // Semi-transparent white
+    private static final int COLOR_LIME_GREEN = 0xFF32CD32;
+    private static final int COLOR_FOREST_GREEN = 0xFF228B22;
+    private static final int COLOR_DARK_GREEN = 0xFF006400;
+    private static final int COLOR_BROWN = 0xFF8B4513;
+    private static final int COLOR_LABEL_BACKGROUND = 0x80000000; // Semi-transparent black
+
+    // Player labels never change, so their widths are measured once
+    private static final String PLAYER_LABEL = "You";
+    private static final String PARTNER_LABEL = "Partner";
+    private static final float LABEL_TEXT_SIZE = 16;
+    private Paint labelPaint;
+    private float playerLabelWidth;
+    private float partnerLabelWidth;
+
+    // Debug lines are rebuilt only when what they show changes
+    private String debugSpritesLine;
+    private String debugAssetsLine;
+    private String debugPlayerLine;
+    private String debugPartnerLine;
+    private boolean debugUseSprites;
+    private boolean debugAssetsLoaded;
+    private float debugPlayerX = Float.NaN;
+    private float debugPlayerY = Float.NaN;
+    private float debugPartnerX = Float.NaN;
+    private float debugPartnerY = Float.NaN;
+
+    GameRenderer() {
+        init();
+    }
+
+    private void init() {
+        paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setFilterBitmap(true); // Smooth sprite scaling
+
+        backgroundPaint = new Paint();
+        backgroundPaint.setColor(backgroundColor);
+
+        playerPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        playerPaint.setColor(playerColor);
+
+        partnerPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        partnerPaint.setColor(partnerColor);
+
+        objectivePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        objectivePaint.setColor(objectiveColor);
+
+        debugPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        debugPaint.setColor(Color.WHITE);
+        debugPaint.setTextSize(24);
+        debugPaint.setShadowLayer(2, 1, 1, Color.BLACK);
+
+        profilerBackgroundPaint = new Paint();
+        profilerBackgroundPaint.setColor(COLOR_LABEL_BACKGROUND);
+
+        camera.setWorldSize(Camera.DEFAULT_WORLD_COLUMNS, Camera.DEFAULT_WORLD_ROWS);
+
+        labelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        labelPaint.setTextSize(LABEL_TEXT_SIZE);
+        labelPaint.setTextAlign(Paint.Align.CENTER);
+        playerLabelWidth = labelPaint.measureText(PLAYER_LABEL);
+        partnerLabelWidth = labelPaint.measureText(PARTNER_LABEL);
+
+        // Set different sprites for player and partner
+        playerSprite = "character_green_idle";
+        partnerSprite = "character_beige_idle";
+
+    }
+
+    private void resolveSpriteHandles() {
+        if (spriteManager == null) {
+            return;
+        }
+
+        backgroundHandle = spriteManager.resolveHandle(backgroundSprite);
+        objectiveHandle = spriteManager.resolveHandle(objectiveSprite);
+        playerIdleHandle = spriteManager.resolveHandle(CHARACTER_SPRITES[0]);
+        partnerIdleHandle = spriteManager.resolveHandle(CHARACTER_SPRITES[3]);
+        playerWalkClip = spriteManager.getClip(PLAYER_WALK_CLIP);
+        partnerWalkClip = spriteManager.getClip(PARTNER_WALK_CLIP);
+        parallaxBackground.setBackground(spriteManager, backgroundSprite, forestBackground);
+        appearanceHandles = new int[0]; // Re-resolved by the next frame
+    }
+
+    private void resolveAppearances() {
+        int count = entities.getAppearanceCount();
+        if (appearanceHandles.length == count || spriteManager == null) {
+            return;
+        }
+        appearanceHandles = new int[count];
+        appearanceClips = new SpriteAnimation[count];
+        for (int i = 0; i < count; i++) {
+            String name = entities.getAppearanceName(i);
+            appearanceHandles[i] = spriteManager.resolveHandle(name);
+            appearanceClips[i] = findMoveClip(name);
+        }
+    }
+
+    // Enemy sprites are named <enemy>_rest, with clips such as <enemy>_walk or just <enemy>
+    private SpriteAnimation findMoveClip(String restSprite) {
+        if (!restSprite.endsWith(REST_SUFFIX)) {
+            return null;
+        }
+        String base = restSprite.substring(0, restSprite.length() - REST_SUFFIX.length());
+        for (String suffix : MOVE_CLIP_SUFFIXES) {
+            SpriteAnimation clip = spriteManager.getClip(base + suffix);
+            if (clip != null) {
+                return clip;
+            }
+        }
+        return null;
+    }
+
+    synchronized void setSpriteManager(SpriteManager spriteManager) {
+        this.spriteManager = spriteManager;
+        if (spriteManager != null && spriteManager.areAssetsLoaded()) {
+            useSprites = true;
+            Log.d(TAG, "SpriteManager set successfully, enabling sprite rendering");
+        } else {
+            useSprites = false;
+            Log.w(TAG, "SpriteManager assets not loaded, using fallback rendering");
+        }
+        resolveSpriteHandles();
+        for (int i = 0; i < tileLayers.length; i++) {
+            tileLayerRenderers[i].setTileMap(tileLayers[i], spriteManager);
+        }
+        invalidateStaticLayer();
+    }
+
+    synchronized void setTileMaps(TileMap[] layers) {
+        for (TileMapRenderer renderer : tileLayerRenderers) {
+            renderer.release();
+        }
+        tileLayers = layers != null ? layers.clone() : new TileMap[0];
+        tileLayerRenderers = new TileMapRenderer[tileLayers.length];
+        for (int i = 0; i < tileLayers.length; i++) {
+            tileLayerRenderers[i] = new TileMapRenderer();
+            tileLayerRenderers[i].setTileMap(tileLayers[i], spriteManager);
+        }
+        invalidateStaticLayer(); // The flat ground is only baked in when there is no tile map
+    }
+
+    /** Size of the level in tiles; the camera never shows past it. */
+    synchronized void setWorldSize(float columns, float rows) {
+        camera.setWorldSize(columns, rows);
+    }
+
+    private boolean drawsTileMap() {
+        return useSprites && spriteManager != null && tileLayers.length > 0;
+    }
+
+    synchronized void setChapterData(String backgroundSprite, String objectiveSprite, String playerSprite) {
+        if (backgroundSprite == null ? this.backgroundSprite != null : !backgroundSprite.equals(this.backgroundSprite)) {
+            invalidateStaticLayer();
+        }
+        this.backgroundSprite = backgroundSprite;
+        this.objectiveSprite = objectiveSprite;
+        this.forestBackground = backgroundSprite != null && backgroundSprite.contains("trees");
+
+        // Set different player sprites for variety
+        this.playerSprite = playerSprite != null && !playerSprite.isEmpty() ?
+                playerSprite : "character_green_idle";
+        this.partnerSprite = "character_beige_idle"; // Different sprite for partner
+
+        Log.d(TAG, "Chapter data set - Background: " + backgroundSprite +
+                ", Objective: " + objectiveSprite +
+                ", Player: " + this.playerSprite +
+                ", Partner: " + this.partnerSprite);
+        resolveSpriteHandles();
+    }
+
+    /** Takes over positions and movement from the snapshot for this frame. */
+    private void applyState(GameRenderState state) {
+        if (state.gameActive && !gameActive) {
+            lastClockUptime = SystemClock.uptimeMillis();
+        }
+        gameActive = state.gameActive;
+
+        // Walk cycles restart from their first frame whenever a character starts moving
+        if (state.playerMoving && !playerMoving) {
+            playerWalkStart = animationClock;
+        }
+        if (state.partnerMoving && !partnerMoving) {
+            partnerWalkStart = animationClock;
+        }
+        playerMoving = state.playerMoving;
+        partnerMoving = state.partnerMoving;
+
+        playerX = state.playerX;
+        playerY = state.playerY;
+        partnerX = state.partnerX;
+        partnerY = state.partnerY;
+        objectiveX = state.objectiveX;
+        objectiveY = state.objectiveY;
+        entities.copyFrom(state.entities);
+
+        for (int i = 0; i < state.effectCount; i++) {
+            startEffect(state.effectTypes[i], state.effectX[i], state.effectY[i]);
+        }
+        state.effectCount = 0;
+    }
+
+    private void startEffect(int effect, float x, float y) {
+        switch (effect) {
+            case GameRenderView.EFFECT_PICKUP:
+                particles.burst(x, y - 0.3f, 14, 3f, 0.5f, 0.1f, 12f, COLOR_PICKUP);
+                break;
+            case GameRenderView.EFFECT_CELEBRATION:
+                // Confetti thrown up over the objective
+                for (int color : CELEBRATION_COLORS) {
+                    particles.burst(x, y - 2f, 40, 7f, 1.8f, 0.12f, 6f, color);
+                }
+                break;
+            default:
+                Log.w(TAG, "Unknown effect " + effect);
+                break;
+        }
+    }
+
+    // Advances particles by the frame's share of the animation clock; the glow only runs while playing
+    private void updateParticles() {
+        float dt = (animationClock - lastParticleClock) / 1000f;
+        lastParticleClock = animationClock;
+
+        if (gameActive) {
+            glowSparksDue += dt * GLOW_SPARKS_PER_SECOND;
+            while (glowSparksDue >= 1) {
+                glowSparksDue -= 1;
+                float sparkX = objectiveX + (particles.nextRandom() - 0.5f) * 1.5f;
+                float sparkY = objectiveY - particles.nextRandom() * 1.5f;
+                particles.emit(sparkX, sparkY, (particles.nextRandom() - 0.5f) * 0.4f, -0.6f,
+                        1.2f, 0.08f, -0.3f, COLOR_GLOW);
+            }
+        }
+        particles.update(dt);
+    }
+
+    // The budget follows the vsync interval the game loop saw, which is what the player
+    // sees; draw time misses GPU and compositor cost. Once per new interval only.
+    private void adaptParticleBudget() {
+        long frames = frameProfiler.getTotalFrames();
+        if (frames != particleBudgetFrames) {
+            particleBudgetFrames = frames;
+            particles.adaptBudget(frameProfiler.getLastFrameIntervalNanos(), frameProfiler.getRefreshPeriodNanos());
+        }
+    }
+
+    /** True while particles are alive, so backends keep drawing frames for them. */
+    synchronized boolean hasParticles() {
+        return particles.getCount() > 0;
+    }
+
+    synchronized void draw(Canvas canvas, int width, int height, GameRenderState state) {
+        if (canvas == null) return;
+
+        long drawStart = System.nanoTime();
+        try {
+            if (width <= 0 || height <= 0) return;
+
+            applyState(state);
+
+            // Advance the shared animation clock
+            advanceAnimationClock();
+
+            // The world's rows fill the frame height; scroll to keep the player in view
+            camera.setViewport(width, height);
+            camera.follow(playerX, playerY);
+
+            // Draw the scrolling background, or the cached static layer until it is ready
+            drawScenery(canvas, width, height);
+
+            // Level tiles scroll with the camera
+            if (drawsTileMap()) {
+                for (TileMapRenderer renderer : tileLayerRenderers) {
+                    renderer.draw(canvas, camera.getScrollX(), camera.getScrollY(), width, height,
+                            camera.getTilePixelSize());
+                }
+            }
+
+            // Draw objective (door/flag)
+            drawObjective(canvas, width, height);
+
+            // Draw enemies and collectibles
+            drawEntities(canvas, width, height);
+
+            // Draw players with proper sprite selection
+            drawPlayer(canvas, width, height, playerX, playerY, true);
+            drawPlayer(canvas, width, height, partnerX, partnerY, false);
+
+            // Effects over everything in the world
+            updateParticles();
+            particles.draw(canvas, paint, camera, width, height);
+
+            // Draw frame timings, or debug info while waiting for the game
+            if (showProfilerOverlay && frameProfiler != null) {
+                frameProfiler.drawOverlay(canvas, 10, 10, profilerBackgroundPaint, debugPaint);
+            } else if (!gameActive) {
+                drawDebugInfo(canvas, width, height);
+            }
+
+            long drawNanos = System.nanoTime() - drawStart;
+            if (frameProfiler != null) {
+                frameProfiler.recordDraw(drawNanos);
+                adaptParticleBudget();
+            }
+
+        } catch (Exception e) {
+            Log.e(TAG, "Error drawing frame", e);
+            // Draw error state
+            canvas.drawColor(backgroundColor);
+            paint.setColor(Color.RED);
+            paint.setTextSize(32);
+            canvas.drawText("Rendering Error", width/2f - 100, height/2f, paint);
+        } finally {
+            // Counts frames for the sprite reuse pool's quarantine
+            if (spriteManager != null) {
+                spriteManager.onFrameDrawn();
+            }
+        }
+    }
+
+    private void advanceAnimationClock() {
+        long now = SystemClock.uptimeMillis();
+        if (lastClockUptime != 0) {
+            animationClock += Math.min(now - lastClockUptime, MAX_CLOCK_STEP);
+        }
+        lastClockUptime = now;
+    }
+
+    /** Frees the cached layers; the next frame rebuilds them. */
+    synchronized void release() {
+        for (TileMapRenderer renderer : tileLayerRenderers) {
+            renderer.release();
+        }
+        parallaxBackground.release();
+        releaseStaticLayer();
+    }
+
+    private void releaseStaticLayer() {
+        if (staticLayer != null) {
+            staticLayer.recycle();
+            staticLayer = null;
+        }
+        staticLayerValid = false;
+    }
+
+    private void drawScenery(Canvas canvas, int width, int height) {
+        if (useSprites && parallaxBackground.draw(canvas, width, height, camera.getScrollX())) {
+            releaseStaticLayer(); // Only needed again if the bands go away
+            if (!drawsTileMap()) {
+                drawGround(canvas, width, height);
+            }
+            return;
+        }
+        drawStaticLayer(canvas, width, height);
+    }
+
+    private void invalidateStaticLayer() {
+        staticLayerValid = false;
+    }
+
+    private void drawStaticLayer(Canvas canvas, int width, int height) {
+        // A layer built before the background sprite finished decoding is rebuilt once it is ready
+        if (staticLayerValid && !staticLayerHasSprite && isBackgroundSpriteReady()) {
+            staticLayerValid = false;
+        }
+        if (staticLayer == null || staticLayer.getWidth() != width || staticLayer.getHeight() != height) {
+            staticLayerValid = false; // First frame or the view/surface was resized
+        }
+
+        if (!staticLayerValid && !rebuildStaticLayer(width, height)) {
+            // No memory for the layer; draw the static content directly
+            drawBackground(canvas, width, height);
+            if (!drawsTileMap()) {
+                drawGround(canvas, width, height);
+            }
+            return;
+        }
+        canvas.drawBitmap(staticLayer, 0, 0, null);
+    }
+
+    private boolean isBackgroundSpriteReady() {
+        return useSprites && spriteManager != null && backgroundHandle != SpriteManager.NO_SPRITE
+                && spriteManager.getSprite(backgroundHandle) != null;
+    }
+
+    private boolean rebuildStaticLayer(int width, int height) {
+        try {
+            if (staticLayer == null || staticLayer.getWidth() != width || staticLayer.getHeight() != height) {
+                if (staticLayer != null) {
+                    staticLayer.recycle();
+                }
+                staticLayer = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+            }
+        } catch (OutOfMemoryError e) {
+            Log.w(TAG, "No memory for the static layer, drawing background directly");
+            staticLayer = null;
+            return false;
+        }
+
+        Canvas layerCanvas = new Canvas(staticLayer);
+        staticLayerHasSprite = drawBackground(layerCanvas, width, height);
+        if (!drawsTileMap()) {
+            drawGround(layerCanvas, width, height);
+        }
+        staticLayerValid = true;
+        Log.d(TAG, String.format("Static layer rebuilt at %dx%d (%s)",
+                width, height, staticLayerHasSprite ? backgroundSprite : "fallback"));
+        return true;
+    }
+
+    /** Returns true if the background sprite was drawn, false for the fallback scenery. */
+    private boolean drawBackground(Canvas canvas, int width, int height) {
+        if (useSprites && spriteManager != null && backgroundHandle != SpriteManager.NO_SPRITE) {
+            try {
+                // The static layer is a software canvas, which cannot draw hardware bitmaps
+                Bitmap bg = spriteManager.getSoftwareSprite(backgroundHandle);
+                if (bg != null && !bg.isRecycled()) {
+                    // Scale background to fill screen while maintaining aspect ratio
+                    backgroundRect.set(0, 0, width, height);
+                    canvas.drawBitmap(bg, null, backgroundRect, paint);
+                    spriteManager.releaseSoftwareSprite(bg);
+
+                    // Add some atmospheric effects if using tree background
+                    if (forestBackground) {
+                        addForestAtmosphere(canvas, width, height);
+                    }
+                    return true;
+                }
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to draw background sprite, using fallback", e);
+            }
+        }
+
+        // Enhanced fallback background for forest theme
+        drawFallbackBackground(canvas, width, height);
+        return false;
+    }
+
+    private void addForestAtmosphere(Canvas canvas, int width, int height) {
+        // Add subtle overlay effects for forest atmosphere
+        paint.setColor(COLOR_FOREST_OVERLAY);
+        canvas.drawRect(0, 0, width, height, paint);
+
+        // Add some light rays effect
+        paint.setColor(COLOR_LIGHT_RAY);
+        for (int i = 0; i < 3; i++) {
+            float x = width * (0.2f + i * 0.3f);
+            canvas.drawRect(x, 0, x + 20, height, paint);
+        }
+    }
+
+    private void drawFallbackBackground(Canvas canvas, int width, int height) {
+        // Enhanced gradient sky background
+        canvas.drawColor(backgroundColor);
+
+        // Draw sun
+        paint.setColor(Color.YELLOW);
+        paint.setAlpha(180);
+        canvas.drawCircle(width * 0.85f, height * 0.15f, 50, paint);
+        paint.setAlpha(255);
+
+        // Draw enhanced clouds
+        paint.setColor(Color.WHITE);
+        paint.setAlpha(120);
+        drawCloud(canvas, width * 0.2f, height * 0.15f, 1.0f);
+        drawCloud(canvas, width * 0.7f, height * 0.1f, 1.2f);
+        drawCloud(canvas, width * 0.5f, height * 0.2f, 0.8f);
+        paint.setAlpha(255);
+
+        // Draw layered hills/trees for depth
+        paint.setColor(COLOR_LIME_GREEN);
+        paint.setAlpha(100);
+        drawHill(canvas, width * 0.1f, height * 0.9f, 150);
+        paint.setColor(COLOR_FOREST_GREEN);
+        paint.setAlpha(150);
+        drawHill(canvas, width * 0.3f, height * 0.9f, 120);
+        drawHill(canvas, width * 0.6f, height * 0.9f, 160);
+        paint.setColor(COLOR_DARK_GREEN);
+        paint.setAlpha(200);
+        drawHill(canvas, width * 0.85f, height * 0.9f, 130);
+        paint.setAlpha(255);
+    }
+
+    private void drawCloud(Canvas canvas, float centerX, float centerY, float scale) {
+        float baseRadius = 40 * scale;
+        canvas.drawCircle(centerX, centerY, baseRadius, paint);
+        canvas.drawCircle(centerX - baseRadius * 0.6f, centerY, baseRadius * 0.7f, paint);
+        canvas.drawCircle(centerX + baseRadius * 0.6f, centerY, baseRadius * 0.7f, paint);
+        canvas.drawCircle(centerX, centerY - baseRadius * 0.4f, baseRadius * 0.6f, paint);
+    }
+
+    private void drawHill(Canvas canvas, float centerX, float centerY, float radius) {
+        canvas.drawCircle(centerX, centerY, radius, paint);
+    }
+
+    private void drawGround(Canvas canvas, int width, int height) {
+        // Draw layered ground for more visual appeal
+        paint.setColor(COLOR_BROWN); // Dirt
+        float groundY = height * 0.85f;
+        canvas.drawRect(0, groundY, width, height, paint);
+
+        // Draw grass layer on top
+        paint.setColor(COLOR_FOREST_GREEN);
+        canvas.drawRect(0, groundY, width, groundY + 15, paint);
+
+        // Add some grass texture
+        paint.setColor(COLOR_LIME_GREEN);
+        for (int i = 0; i < width; i += 20) {
+            canvas.drawRect(i, groundY, i + 10, groundY + 8, paint);
+        }
+    }
+
+    private void drawObjective(Canvas canvas, int width, int height) {
+        float objX = camera.toScreenX(objectiveX);
+        float objY = camera.toScreenY(objectiveY);
+        if (!Camera.isVisible(objX, objY, OFFSCREEN_MARGIN, width, height)) {
+            return;
+        }
+
+        if (useSprites && spriteManager != null && objectiveHandle != SpriteManager.NO_SPRITE) {
+            try {
+                Bitmap obj = spriteManager.getSprite(objectiveHandle);
+                if (obj != null && !obj.isRecycled()) {
+                    // As tall as the objective's collision box, standing on its base
+                    float scale = SpriteManager.snapVariantScale(
+                            GameSimulation.OBJECTIVE_HEIGHT * camera.getTilePixelSize() / obj.getHeight());
+                    spriteManager.drawSpriteVariant(canvas, objectiveHandle,
+                            objX - obj.getWidth() * scale / 2, objY - obj.getHeight() * scale, scale,
+                            false, false, SpriteManager.NO_TINT);
+                    return;
+                }
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to draw objective sprite, using fallback", e);
+            }
+        }
+
+        // Enhanced fallback objective
+        drawFallbackObjective(canvas, objX, objY);
+    }
+
+    private void drawFallbackObjective(Canvas canvas, float objX, float objY) {
+        // Flag pole with gradient effect
+        paint.setColor(COLOR_BROWN); // Pole
+        canvas.drawRect(objX - 3, objY - 90, objX + 3, objY, paint);
+
+        // Flag with animation
+        long time = animationClock;
+        float wave = (float) Math.sin(time * 0.01f) * 5;
+
+        paint.setColor(objectiveColor);
+        canvas.drawRect(objX + 3, objY - 85, objX + 45 + wave, objY - 65, paint);
+
+        // Add "GOAL" text with outline
+        paint.setColor(Color.BLACK);
+        paint.setTextSize(18);
+        paint.setStrokeWidth(3);
+        paint.setStyle(Paint.Style.STROKE);
+        canvas.drawText("GOAL", objX - 15, objY + 20, paint);
+
+        paint.setColor(Color.WHITE);
+        paint.setStyle(Paint.Style.FILL);
+        canvas.drawText("GOAL", objX - 15, objY + 20, paint);
+        paint.setStrokeWidth(1);
+    }
+
+    private void drawEntities(Canvas canvas, int width, int height) {
+        if (!useSprites || spriteManager == null || entities.getCount() == 0) {
+            return;
+        }
+        resolveAppearances();
+
+        float tilePixelSize = camera.getTilePixelSize();
+        for (int id = 0; id < entities.getIdLimit(); id++) {
+            int type = entities.getType(id);
+            if (type == EntityStore.TYPE_NONE) {
+                continue;
+            }
+            float y = entities.getY(id);
+            if (type == EntityStore.TYPE_COLLECTIBLE) {
+                y -= COLLECTIBLE_BOB * (1 + (float) Math.sin(entities.getAnimationTime(id) * COLLECTIBLE_BOB_SPEED));
+            }
+            float entityPixelX = camera.toScreenX(entities.getX(id));
+            float entityPixelY = camera.toScreenY(y);
+            if (!Camera.isVisible(entityPixelX, entityPixelY, tilePixelSize, width, height)) {
+                continue;
+            }
+
+            int appearance = entities.getAppearance(id);
+            int handle = appearanceHandles[appearance];
+            float velocityX = entities.getVelocityX(id);
+            SpriteAnimation clip = appearanceClips[appearance];
+            if (clip != null && velocityX != 0) {
+                handle = clip.getFrameHandle((long) (entities.getAnimationTime(id) * 1000));
+            }
+            if (handle == SpriteManager.NO_SPRITE) {
+                continue;
+            }
+
+            Bitmap sprite = spriteManager.getSprite(handle);
+            if (sprite == null || sprite.isRecycled()) {
+                continue;
+            }
+            // One tile across; enemy sprites face left, so flip those walking right
+            float scale = SpriteManager.snapVariantScale(tilePixelSize / sprite.getWidth());
+            spriteManager.drawSpriteVariant(canvas, handle,
+                    entityPixelX - sprite.getWidth() * scale / 2, entityPixelY - sprite.getHeight() * scale,
+                    scale, velocityX > 0, false, SpriteManager.NO_TINT);
+        }
+    }
+
+    private void drawPlayer(Canvas canvas, int width, int height, float x, float y, boolean isMainPlayer) {
+        float playerPixelX = camera.toScreenX(x);
+        float playerPixelY = camera.toScreenY(y);
+        if (!Camera.isVisible(playerPixelX, playerPixelY, OFFSCREEN_MARGIN, width, height)) {
+            return; // The partner may be far away on a long level
+        }
+
+        if (useSprites && spriteManager != null) {
+            int currentSprite = getCurrentPlayerHandle(isMainPlayer);
+
+            if (currentSprite != SpriteManager.NO_SPRITE) {
+                try {
+                    Bitmap playerBitmap = spriteManager.getSprite(currentSprite);
+                    if (playerBitmap != null && !playerBitmap.isRecycled()) {
+                        // As tall as the player's collision box, feet on its bottom edge
+                        float scale = SpriteManager.snapVariantScale(
+                                GameSimulation.PLAYER_HEIGHT * camera.getTilePixelSize() / playerBitmap.getHeight());
+                        spriteManager.drawSpriteVariant(canvas, currentSprite,
+                                playerPixelX - playerBitmap.getWidth() * scale / 2,
+                                playerPixelY - playerBitmap.getHeight() * scale, scale,
+                                false, false, SpriteManager.NO_TINT);
+
+                        // Draw enhanced name label
+                        drawPlayerLabel(canvas, playerPixelX, playerPixelY, isMainPlayer);
+                        return;
+                    }
+                } catch (Exception e) {
+                    Log.w(TAG, "Failed to draw player sprite, using fallback", e);
+                }
+            }
+        }
+
+        // Enhanced fallback character
+        drawFallbackPlayer(canvas, playerPixelX, playerPixelY, isMainPlayer ? playerColor : partnerColor);
+    }
+
+    private int getCurrentPlayerHandle(boolean isMainPlayer) {
+        if (isMainPlayer) {
+            // Player sprites based on movement state
+            if (playerMoving && playerWalkClip != null) {
+                return playerWalkClip.getFrameHandle(animationClock - playerWalkStart);
+            }
+            return playerIdleHandle;
+        } else {
+            // Partner sprites based on movement state
+            if (partnerMoving && partnerWalkClip != null) {
+                return partnerWalkClip.getFrameHandle(animationClock - partnerWalkStart);
+            }
+            return partnerIdleHandle;
+        }
+    }
+
+    // Walk frame index for the stick figure, following the sprite clip when there is one
+    private int getWalkFrameIndex(boolean isMainPlayer) {
+        SpriteAnimation clip = isMainPlayer ? playerWalkClip : partnerWalkClip;
+        long elapsed = animationClock - (isMainPlayer ? playerWalkStart : partnerWalkStart);
+        return clip != null ? clip.getFrameIndex(elapsed) : (int) ((elapsed / FALLBACK_STEP_DURATION) % 2);
+    }
+
+    private void drawPlayerLabel(Canvas canvas, float playerPixelX, float playerPixelY, boolean isMainPlayer) {
+        // Enhanced label with background
+        float textWidth = isMainPlayer ? playerLabelWidth : partnerLabelWidth;
+        paint.setColor(COLOR_LABEL_BACKGROUND);
+        canvas.drawRoundRect(playerPixelX - textWidth/2 - 10, playerPixelY - 100,
+                playerPixelX + textWidth/2 + 10, playerPixelY - 75, 5, 5, paint);
+
+        labelPaint.setColor(isMainPlayer ? Color.CYAN : Color.WHITE);
+        canvas.drawText(isMainPlayer ? PLAYER_LABEL : PARTNER_LABEL, playerPixelX, playerPixelY - 82, labelPaint);
+    }
+
+    private void drawFallbackPlayer(Canvas canvas, float playerPixelX, float playerPixelY, int color) {
+        paint.setColor(color);
+
+        // Enhanced stick figure with animation
+        boolean isMoving = (color == playerColor) ? playerMoving : partnerMoving;
+        int frame = getWalkFrameIndex(color == playerColor);
+
+        float bodyOffset = isMoving ? (float) Math.sin(animationClock * 0.01f) * 2 : 0;
+
+        // Body (rectangle with slight movement)
+        canvas.drawRect(playerPixelX - 15, playerPixelY - 40 + bodyOffset,
+                playerPixelX + 15, playerPixelY + bodyOffset, paint);
+
+        // Head (circle)
+        canvas.drawCircle(playerPixelX, playerPixelY - 50 + bodyOffset, 12, paint);
+
+        // Animated arms and legs
+        paint.setStrokeWidth(6);
+
+        if (isMoving) {
+            float armSwing = frame == 0 ? -10 : 10;
+            float legSwing = frame == 0 ? -8 : 8;
+
+            // Arms with swing
+            canvas.drawLine(playerPixelX - 15, playerPixelY - 30 + bodyOffset,
+                    playerPixelX - 25 + armSwing, playerPixelY - 15 + bodyOffset, paint);
+            canvas.drawLine(playerPixelX + 15, playerPixelY - 30 + bodyOffset,
+                    playerPixelX + 25 - armSwing, playerPixelY - 15 + bodyOffset, paint);
+
+            // Legs with walking motion
+            canvas.drawLine(playerPixelX - 8, playerPixelY + bodyOffset,
+                    playerPixelX - 15 + legSwing, playerPixelY + 20, paint);
+            canvas.drawLine(playerPixelX + 8, playerPixelY + bodyOffset,
+                    playerPixelX + 15 - legSwing, playerPixelY + 20, paint);
+        } else {
+            // Static arms and legs
+            canvas.drawLine(playerPixelX - 15, playerPixelY - 30 + bodyOffset,
+                    playerPixelX - 25, playerPixelY - 15 + bodyOffset, paint);
+            canvas.drawLine(playerPixelX + 15, playerPixelY - 30 + bodyOffset,
+                    playerPixelX + 25, playerPixelY - 15 + bodyOffset, paint);
+            canvas.drawLine(playerPixelX - 8, playerPixelY + bodyOffset,
+                    playerPixelX - 15, playerPixelY + 20, paint);
+            canvas.drawLine(playerPixelX + 8, playerPixelY + bodyOffset,
+                    playerPixelX + 15, playerPixelY + 20, paint);
+        }
+
+        paint.setStrokeWidth(1);
+
+        // Draw enhanced name label
+        drawPlayerLabel(canvas, playerPixelX, playerPixelY, color == playerColor);
+    }
+
+    private void drawDebugInfo(Canvas canvas, int width, int height) {
+        // Enhanced debug info with background
+        paint.setColor(COLOR_LABEL_BACKGROUND);
+        canvas.drawRoundRect(10, 10, 400, 180, 10, 10, paint);
+
+        updateDebugLines();
+        canvas.drawText("Waiting for game to start...", 20, 40, debugPaint);
+        canvas.drawText(debugSpritesLine, 20, 70, debugPaint);
+        canvas.drawText(debugAssetsLine, 20, 100, debugPaint);
+        canvas.drawText(debugPlayerLine, 20, 130, debugPaint);
+        canvas.drawText(debugPartnerLine, 20, 160, debugPaint);
+    }
+
+    private void updateDebugLines() {
+        boolean assetsLoaded = spriteManager != null && spriteManager.areAssetsLoaded();
+        if (debugSpritesLine == null || debugUseSprites != useSprites) {
+            debugUseSprites = useSprites;
+            debugSpritesLine = "Sprites: " + (useSprites ? "Enabled ✓" : "Fallback Mode");
+        }
+        if (debugAssetsLine == null || debugAssetsLoaded != assetsLoaded) {
+            debugAssetsLoaded = assetsLoaded;
+            debugAssetsLine = "Assets Loaded: " + assetsLoaded;
+        }
+        if (playerX != debugPlayerX || playerY != debugPlayerY) {
+            debugPlayerX = playerX;
+            debugPlayerY = playerY;
+            debugPlayerLine = "Player: " + String.format("%.2f, %.2f", playerX, playerY);
+        }
+        if (partnerX != debugPartnerX || partnerY != debugPartnerY) {
+            debugPartnerX = partnerX;
+            debugPartnerY = partnerY;
+            debugPartnerLine = "Partner: " + String.format("%.2f, %.2f", partnerX, partnerY);
+        }
+    }
+
+    synchronized void setFrameProfiler(FrameProfiler profiler, boolean showOverlay) {
+        this.frameProfiler = profiler;
+        this.showProfilerOverlay = showOverlay;
+    }
+
+    synchronized boolean isUsingSpriteSystem() {
+        return useSprites && spriteManager != null && spriteManager.areAssetsLoaded();
+    }
+
+    synchronized void refreshSpriteSystem() {
+        if (spriteManager != null) {
+            useSprites = spriteManager.areAssetsLoaded();
+            spriteManager.clearFailedDecodes();
+            invalidateStaticLayer();
+            for (TileMapRenderer renderer : tileLayerRenderers) {
+                renderer.invalidate();
+            }
+            Log.d(TAG, "Sprite system refreshed. Using sprites: " + useSprites);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,208 @@
+package com.humangodcvaki.whoi;
+
+/**
+ * The chapter's game rules without Android or Firebase: horizontal movement,
+ * jumping and gravity against the level's solid tiles, and contact with the
+ * objective, collectibles and enemies through a CollisionWorld. All positions
+ * are in level tiles, y being where feet rest.
+ *
+ * step() depends only on the current State, the Input, dt and the world, so
+ * the same sequence of inputs always produces the same positions.
+ * Chapter1GameActivity feeds it the buttons and renders getState(); tests run
+ * it on the JVM.
+ */
+public class GameSimulation {
+    public static final float PLAYER_SPEED = 3f;      // Tiles per second
+    public static final float JUMP_VELOCITY = -7.5f;  // Tiles per second
+    public static final float GRAVITY = 45f;          // Tiles per second squared
+    public static final float MAX_FALL_SPEED = 20f;   // Tiles per second
+    public static final float MAX_JUMP_HEIGHT = 5f;   // Tiles above the take-off point, to prevent jumping too high
+    public static final float EDGE_MARGIN = 0.4f;     // Keeps the player off the level's edges
+    public static final float PLAYER_WIDTH = 0.8f;    // Collision box, in tiles
+    public static final float PLAYER_HEIGHT = 1.6f;
+    public static final float OBJECTIVE_WIDTH = 3f;   // Generous for user-friendly gameplay
+    public static final float OBJECTIVE_HEIGHT = 2f;
+    public static final float COLLECTIBLE_SIZE = 0.6f;
+    public static final float ENEMY_WIDTH = 0.9f;
+    public static final float ENEMY_HEIGHT = 0.6f;
+
+    private static final int MAX_CONTACTS = 16;
+
+    /** Controls for the next step, written by the UI. */
+    public static final class Input {
+        public boolean left;
+        public boolean right;
+        public boolean jump; // A request; cleared by the step that handles it
+    }
+
+    /** Everything step() reads and writes about the player. */
+    public static final class State {
+        public float playerX;
+        public float playerY;
+        public float velocityY;
+        public float jumpStartY;
+        public boolean jumping;       // In the air, whether from a jump or a fall
+        public boolean objectiveReached;
+        public boolean touchingEnemy;
+
+        public void copyFrom(State other) {
+            playerX = other.playerX;
+            playerY = other.playerY;
+            velocityY = other.velocityY;
+            jumpStartY = other.jumpStartY;
+            jumping = other.jumping;
+            objectiveReached = other.objectiveReached;
+            touchingEnemy = other.touchingEnemy;
+        }
+    }
+
+    /** Contacts found during a step, reported before step() returns. */
+    public interface Listener {
+        /** The collectible's body has already been removed from the world. */
+        void onCollect(int bodyId, int tag);
+
+        /** Called once when contact with an enemy starts, not on every step of it. */
+        void onEnemyContact(int bodyId, int tag);
+    }
+
+    private final CollisionWorld world;
+    private final float minX;
+    private final float maxX;
+    private final State state = new State();
+    private final CollisionWorld.MoveResult move = new CollisionWorld.MoveResult();
+    private final int[] contacts = new int[MAX_CONTACTS];
+    private Listener listener;
+
+    /** A simulation on a level's collision world; the objective is a KIND_OBJECTIVE body in it. */
+    public GameSimulation(CollisionWorld world) {
+        this.world = world;
+        this.minX = EDGE_MARGIN;
+        this.maxX = Math.max(minX, world.getColumns() - 1 - EDGE_MARGIN);
+        reset(minX, 0);
+    }
+
+    /** A flat level: solid from groundY down, with the objective standing on it. */
+    public GameSimulation(int columns, float groundY, float objectiveX, float objectiveY) {
+        this(createFlatWorld(columns, groundY, objectiveX, objectiveY));
+        reset(minX, groundY);
+    }
+
+    private static CollisionWorld createFlatWorld(int columns, float groundY, float objectiveX, float objectiveY) {
+        if (columns <= 0) {
+            throw new IllegalArgumentException("Level must have at least one column: " + columns);
+        }
+        final int groundRow = (int) Math.ceil(groundY);
+        CollisionWorld world = new CollisionWorld(columns, groundRow + 2, (column, row) -> row >= groundRow);
+        world.addBody(CollisionWorld.KIND_OBJECTIVE, 0, objectiveX, objectiveY, OBJECTIVE_WIDTH, OBJECTIVE_HEIGHT);
+        return world;
+    }
+
+    /** Puts the player at rest at a position, e.g. a spawn point. */
+    public void reset(float x, float y) {
+        state.playerX = x;
+        state.playerY = y;
+        state.velocityY = 0f;
+        state.jumpStartY = y;
+        state.jumping = !world.isOnGround(x, y, PLAYER_WIDTH);
+        state.objectiveReached = false;
+        state.touchingEnemy = false;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public CollisionWorld getWorld() {
+        return world;
+    }
+
+    /** Advances dt seconds. Returns true if the player moved. */
+    public boolean step(float dt, Input input) {
+        float startX = state.playerX;
+        float startY = state.playerY;
+
+        // Jumps only start from the ground
+        if (input.jump) {
+            input.jump = false;
+            if (!state.jumping) {
+                state.jumping = true;
+                state.velocityY = JUMP_VELOCITY;
+                state.jumpStartY = state.playerY;
+            }
+        }
+
+        // Horizontal movement within the level
+        float dx = 0;
+        if (input.left) {
+            dx -= PLAYER_SPEED * dt;
+        }
+        if (input.right) {
+            dx += PLAYER_SPEED * dt;
+        }
+        dx = Math.max(minX, Math.min(maxX, state.playerX + dx)) - state.playerX;
+
+        // Gravity always applies, so walking off a ledge falls
+        state.velocityY = Math.min(MAX_FALL_SPEED, state.velocityY + GRAVITY * dt);
+        float dy = state.velocityY * dt;
+
+        // Swept against the tiles so a fast fall can't pass through the ground
+        world.move(state.playerX, state.playerY, PLAYER_WIDTH, PLAYER_HEIGHT, dx, dy, move);
+        state.playerX = move.x;
+        state.playerY = move.y;
+        if (move.landed) {
+            state.jumping = false;
+            state.velocityY = 0f;
+        } else if (dy > 0 && state.playerY > startY) {
+            state.jumping = true; // Falling
+        }
+        if (move.hitCeiling) {
+            state.velocityY = 0f;
+        }
+
+        // Prevent jumping too high
+        if (state.playerY <= state.jumpStartY - MAX_JUMP_HEIGHT) {
+            state.velocityY = Math.max(state.velocityY, 0);
+        }
+
+        checkContacts(startX, startY);
+        return state.playerX != startX || state.playerY != startY;
+    }
+
+    // Everything the player's box touched between its start and end positions
+    private void checkContacts(float startX, float startY) {
+        float halfWidth = PLAYER_WIDTH / 2;
+        float left = Math.min(startX, state.playerX) - halfWidth;
+        float right = Math.max(startX, state.playerX) + halfWidth;
+        float top = Math.min(startY, state.playerY) - PLAYER_HEIGHT;
+        float bottom = Math.max(startY, state.playerY);
+
+        int count = Math.min(world.query(left, top, right, bottom, contacts), contacts.length);
+        boolean touchingEnemy = false;
+        for (int i = 0; i < count; i++) {
+            int body = contacts[i];
+            switch (world.getKind(body)) {
+                case CollisionWorld.KIND_OBJECTIVE:
+                    state.objectiveReached = true; // Latches, so walking away doesn't clear it
+                    break;
+                case CollisionWorld.KIND_COLLECTIBLE:
+                    int tag = world.getTag(body);
+                    world.removeBody(body);
+                    if (listener != null) {
+                        listener.onCollect(body, tag);
+                    }
+                    break;
+                case CollisionWorld.KIND_ENEMY:
+                    if (!state.touchingEnemy && !touchingEnemy && listener != null) {
+                        listener.onEnemyContact(body, world.getTag(body));
+                    }
+                    touchingEnemy = true;
+                    break;
+            }
+        }
+        state.touchingEnemy = touchingEnemy;
+    }
+}
@@ -0,0 +1,262 @@
+package com.humangodcvaki.whoi;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.os.Build;
+import android.os.Process;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+import android.view.View;
+
+/**
+ * SurfaceView backend: frames are drawn on a dedicated render thread, so UI
+ * thread work (Firebase callbacks, dialogs, buttons) cannot delay them.
+ *
+ * The game writes into a pending state on the UI thread; the render thread
+ * copies it into its own snapshot under a lock and draws from that, so a frame
+ * never sees a half-applied update. While the game is active the thread draws
+ * continuously, paced by the surface's buffer queue; otherwise it sleeps until
+ * something changes.
+ */
+public class GameSurfaceView extends SurfaceView implements SurfaceHolder.Callback, GameRenderView {
+    private static final String TAG = "GameSurfaceView";
+
+    private final GameRenderer renderer = new GameRenderer();
+
+    private final Object stateLock = new Object();
+    private final GameRenderState pendingState = new GameRenderState(); // Written by the UI thread
+    private final GameRenderState renderState = new GameRenderState();  // Read by the render thread
+    private boolean frameRequested = true;
+    private boolean waitingForSurface = false; // A lock returned no canvas; set until surfaceChanged
+    private int surfaceWidth;  // Guarded by stateLock, like the pending state
+    private int surfaceHeight;
+    private int surfaceChanges; // Lets the render thread tell if surfaceChanged ran since it locked
+
+    private RenderThread renderThread;
+
+    public GameSurfaceView(Context context) {
+        super(context);
+        getHolder().addCallback(this);
+    }
+
+    public GameSurfaceView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        getHolder().addCallback(this);
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        synchronized (stateLock) {
+            waitingForSurface = false; // Left over from the last surface's thread
+        }
+        renderThread = new RenderThread(holder);
+        renderThread.start();
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        synchronized (stateLock) {
+            surfaceWidth = width;
+            surfaceHeight = height;
+            surfaceChanges++;
+            waitingForSurface = false;
+            frameRequested = true;
+            stateLock.notifyAll();
+        }
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        // The surface must not be drawn after this returns, so wait for the thread
+        if (renderThread != null) {
+            renderThread.quit();
+            try {
+                renderThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            renderThread = null;
+        }
+        renderer.release();
+    }
+
+    private void requestFrame() {
+        synchronized (stateLock) {
+            frameRequested = true;
+            stateLock.notifyAll();
+        }
+    }
+
+    @Override
+    public void setSpriteManager(SpriteManager spriteManager) {
+        renderer.setSpriteManager(spriteManager);
+        requestFrame();
+    }
+
+    @Override
+    public void setChapterData(String backgroundSprite, String objectiveSprite, String playerSprite) {
+        renderer.setChapterData(backgroundSprite, objectiveSprite, playerSprite);
+        requestFrame();
+    }
+
+    @Override
+    public void setGameActive(boolean active) {
+        synchronized (stateLock) {
+            pendingState.gameActive = active;
+        }
+        requestFrame();
+    }
+
+    @Override
+    public void updatePlayerPositions(float playerX, float playerY, float partnerX, float partnerY) {
+        synchronized (stateLock) {
+            pendingState.setPlayerPositions(playerX, playerY, partnerX, partnerY);
+        }
+        requestFrame();
+    }
+
+    @Override
+    public void updatePartnerPosition(float partnerX, float partnerY) {
+        synchronized (stateLock) {
+            pendingState.setPartnerPosition(partnerX, partnerY);
+        }
+        requestFrame();
+    }
+
+    @Override
+    public void updateObjectivePosition(float objectiveX, float objectiveY) {
+        synchronized (stateLock) {
+            pendingState.objectiveX = objectiveX;
+            pendingState.objectiveY = objectiveY;
+        }
+        requestFrame();
+    }
+
+    @Override
+    public void updateEntities(EntityStore entities) {
+        synchronized (stateLock) {
+            pendingState.entities.copyFrom(entities);
+        }
+        requestFrame();
+    }
+
+    @Override
+    public void playEffect(int effect, float x, float y) {
+        synchronized (stateLock) {
+            pendingState.addEffect(effect, x, y);
+        }
+        requestFrame();
+    }
+
+    @Override
+    public boolean isUsingSpriteSystem() {
+        return renderer.isUsingSpriteSystem();
+    }
+
+    @Override
+    public void refreshSpriteSystem() {
+        renderer.refreshSpriteSystem();
+        requestFrame();
+    }
+
+    @Override
+    public void setTileMaps(TileMap[] layers) {
+        renderer.setTileMaps(layers);
+        requestFrame();
+    }
+
+    @Override
+    public void setWorldSize(float columns, float rows) {
+        renderer.setWorldSize(columns, rows);
+        requestFrame();
+    }
+
+    @Override
+    public void setFrameProfiler(FrameProfiler profiler, boolean showOverlay) {
+        renderer.setFrameProfiler(profiler, showOverlay);
+        requestFrame();
+    }
+
+    @Override
+    public View asView() {
+        return this;
+    }
+
+    private final class RenderThread extends Thread {
+        private final SurfaceHolder holder;
+        private boolean running = true; // Guarded by stateLock
+
+        RenderThread(SurfaceHolder holder) {
+            super("GameRender");
+            this.holder = holder;
+        }
+
+        void quit() {
+            synchronized (stateLock) {
+                running = false;
+                stateLock.notifyAll();
+            }
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_DISPLAY);
+
+            boolean animating = false; // Effects keep animating after the game stops sending updates
+            int width;
+            int height;
+            int changes;
+            while (true) {
+                synchronized (stateLock) {
+                    while (running && (waitingForSurface
+                            || (!frameRequested && !pendingState.gameActive && !animating))) {
+                        try {
+                            stateLock.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (!running) {
+                        return;
+                    }
+                    renderState.copyFrom(pendingState);
+                    pendingState.effectCount = 0; // Handed over to the renderer
+                    frameRequested = false;
+                    width = surfaceWidth;
+                    height = surfaceHeight;
+                    changes = surfaceChanges;
+                }
+
+                if (drawFrame(width, height)) {
+                    animating = renderer.hasParticles();
+                } else {
+                    // Don't spin on a surface that can't be locked; surfaceChanged wakes us
+                    synchronized (stateLock) {
+                        waitingForSurface = changes == surfaceChanges;
+                    }
+                    animating = false;
+                }
+            }
+        }
+
+        /** Returns false if there was no surface to draw on. */
+        private boolean drawFrame(int width, int height) {
+            // Hardware canvases can draw hardware bitmaps and are what BitmapMode.HARDWARE needs
+            Canvas canvas = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                    ? holder.lockHardwareCanvas() : holder.lockCanvas();
+            if (canvas == null) {
+                return false; // Surface is going away
+            }
+            try {
+                renderer.draw(canvas, width, height, renderState);
+            } catch (Exception e) {
+                Log.e(TAG, "Error drawing frame", e);
+            } finally {
+                holder.unlockCanvasAndPost(canvas);
+            }
+            return true;
+        }
+    }
+}
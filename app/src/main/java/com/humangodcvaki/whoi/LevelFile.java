@@ -0,0 +1,332 @@
+package com.humangodcvaki.whoi;
+
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A compiled chapter from assets/Levels/chapterN.lvl (see the compileLevels
+ * task in app/build.gradle.kts for the format). load() reads only the header:
+ * title, size, palette, spawns, objectives, enemies, items and the chunk
+ * directory.
+ * Tile chunks stay on disk until a TileMap from createTileMaps() or
+ * createCollisionMap() asks for one, so a level's size costs neither load time
+ * nor heap up front. Each chunk is read and decoded once; the collision map
+ * and the render map of the same layer share the decoded palette indices.
+ */
+public class LevelFile {
+    private static final String TAG = "LevelFile";
+
+    public static final String LEVELS_PATH = "Levels";
+    private static final int MAGIC = 0x57484F4C; // "WHOL"
+    private static final int VERSION = 2;
+
+    /** Layer whose tiles are solid for CollisionWorld; the first layer if there is none by this name. */
+    public static final String COLLISION_LAYER = "terrain";
+
+    /** A named point in tile units; y is where feet rest. */
+    public static final class Placement {
+        public final String name; // Spawn role, enemy or item sprite; null for objectives
+        public final float x;
+        public final float y;
+
+        Placement(String name, float x, float y) {
+            this.name = name;
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    private final AssetManager assets;
+    private final String path;
+    private String title;
+    private int columns;
+    private int rows;
+    private String[] palette;
+    private List<String> backgrounds;
+    private List<String> objectiveSprites;
+    private List<String> characterColors;
+    private final List<Placement> spawns = new ArrayList<>();
+    private final List<Placement> objectives = new ArrayList<>();
+    private final List<Placement> enemies = new ArrayList<>();
+    private final List<Placement> items = new ArrayList<>();
+    private String[] layerNames;
+    private int[][] chunkOffsets;  // [layer][chunk]
+    private int[][] chunkLengths;
+    private int[][][] decodedChunks; // [layer][chunk] palette index + 1 per tile, 0 for empty
+
+    private LevelFile(AssetManager assets, String path) {
+        this.assets = assets;
+        this.path = path;
+    }
+
+    public static String getChapterPath(int chapter) {
+        return LEVELS_PATH + "/chapter" + chapter + ".lvl";
+    }
+
+    /** Chapters are numbered from 1 without gaps; counts chapterN.lvl files until one is missing. */
+    public static int getChapterCount(AssetManager assets) {
+        try {
+            String[] files = assets.list(LEVELS_PATH);
+            List<String> names = files != null ? Arrays.asList(files) : Collections.<String>emptyList();
+            int count = 0;
+            while (names.contains("chapter" + (count + 1) + ".lvl")) {
+                count++;
+            }
+            return count;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to list levels", e);
+            return 0;
+        }
+    }
+
+    /** Reads a chapter's header, or returns null if it is missing or corrupt. */
+    public static LevelFile load(AssetManager assets, int chapter) {
+        LevelFile level = new LevelFile(assets, getChapterPath(chapter));
+        long start = System.nanoTime();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                assets.open(level.path, AssetManager.ACCESS_STREAMING)))) {
+            level.readHeader(in);
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Failed to load " + level.path, e);
+            return null;
+        }
+
+        Log.d(TAG, String.format("Loaded %s header (%s, %dx%d, %d layers) in %.1fms",
+                level.path, level.title, level.columns, level.rows, level.layerNames.length,
+                (System.nanoTime() - start) / 1_000_000f));
+        return level;
+    }
+
+    private void readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a level file");
+        }
+        int version = in.readUnsignedShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported level version " + version);
+        }
+
+        title = in.readUTF();
+        columns = in.readUnsignedShort();
+        rows = in.readUnsignedShort();
+        int chunkSize = in.readUnsignedByte();
+        if (chunkSize != TileMap.CHUNK_SIZE) {
+            throw new IOException("Level chunk size " + chunkSize + " does not match TileMap.CHUNK_SIZE");
+        }
+
+        palette = new String[in.readUnsignedShort()];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = in.readUTF();
+        }
+        backgrounds = readNames(in);
+        objectiveSprites = readNames(in);
+        characterColors = readNames(in);
+
+        int spawnCount = in.readUnsignedByte();
+        for (int i = 0; i < spawnCount; i++) {
+            spawns.add(new Placement(in.readUTF(), in.readFloat(), in.readFloat()));
+        }
+        int objectiveCount = in.readUnsignedByte();
+        for (int i = 0; i < objectiveCount; i++) {
+            objectives.add(new Placement(null, in.readFloat(), in.readFloat()));
+        }
+        int enemyCount = in.readUnsignedShort();
+        for (int i = 0; i < enemyCount; i++) {
+            enemies.add(new Placement(in.readUTF(), in.readFloat(), in.readFloat()));
+        }
+        int itemCount = in.readUnsignedShort();
+        for (int i = 0; i < itemCount; i++) {
+            items.add(new Placement(in.readUTF(), in.readFloat(), in.readFloat()));
+        }
+
+        int chunkCount = ((columns + TileMap.CHUNK_SIZE - 1) / TileMap.CHUNK_SIZE)
+                * ((rows + TileMap.CHUNK_SIZE - 1) / TileMap.CHUNK_SIZE);
+        int layerCount = in.readUnsignedByte();
+        layerNames = new String[layerCount];
+        chunkOffsets = new int[layerCount][chunkCount];
+        chunkLengths = new int[layerCount][chunkCount];
+        decodedChunks = new int[layerCount][chunkCount][];
+        for (int layer = 0; layer < layerCount; layer++) {
+            layerNames[layer] = in.readUTF();
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                chunkOffsets[layer][chunk] = in.readInt();
+                chunkLengths[layer][chunk] = in.readUnsignedShort();
+            }
+        }
+    }
+
+    private static List<String> readNames(DataInputStream in) throws IOException {
+        int count = in.readUnsignedByte();
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(in.readUTF());
+        }
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * One TileMap per layer, bottom layer first. Palette names are resolved to
+     * handles now; each chunk is read from the asset on first access, or taken
+     * from the collision map if it already read it.
+     */
+    public TileMap[] createTileMaps(SpriteManager spriteManager) {
+        int[] paletteHandles = new int[palette.length];
+        for (int i = 0; i < palette.length; i++) {
+            paletteHandles[i] = spriteManager.resolveHandle(palette[i]);
+            if (paletteHandles[i] == SpriteManager.NO_SPRITE) {
+                Log.w(TAG, "Level tile " + palette[i] + " is not in the sprite catalog");
+            }
+        }
+
+        TileMap[] maps = new TileMap[layerNames.length];
+        for (int layer = 0; layer < layerNames.length; layer++) {
+            final int layerIndex = layer;
+            maps[layer] = new TileMap(columns, rows,
+                    (chunkColumn, chunkRow, tiles) -> readChunk(layerIndex, chunkColumn, chunkRow, paletteHandles, tiles));
+        }
+        return maps;
+    }
+
+    /**
+     * The collision layer as a TileMap of palette indices, independent of
+     * sprites, so collision can be set up before any sprite is decoded. Any
+     * non-empty tile (not SpriteManager.NO_SPRITE) is solid.
+     */
+    public TileMap createCollisionMap() {
+        int layer = Math.max(0, Arrays.asList(layerNames).indexOf(COLLISION_LAYER));
+        if (layerNames.length == 0) {
+            return new TileMap(columns, rows);
+        }
+        int[] paletteIndices = new int[palette.length];
+        for (int i = 0; i < paletteIndices.length; i++) {
+            paletteIndices[i] = i;
+        }
+        return new TileMap(columns, rows,
+                (chunkColumn, chunkRow, tiles) -> readChunk(layer, chunkColumn, chunkRow, paletteIndices, tiles));
+    }
+
+    private void readChunk(int layer, int chunkColumn, int chunkRow, int[] paletteHandles, int[] tiles) {
+        int[] values = getChunkValues(layer, chunkColumn, chunkRow);
+        if (values == null) {
+            return; // Empty or unreadable chunk
+        }
+        for (int i = 0; i < values.length; i++) {
+            int value = values[i];
+            if (value > 0 && value <= paletteHandles.length) {
+                tiles[i] = paletteHandles[value - 1];
+            }
+        }
+    }
+
+    /** A chunk's tiles in TileMap order, read and decoded on first use. */
+    private synchronized int[] getChunkValues(int layer, int chunkColumn, int chunkRow) {
+        int chunkColumns = (columns + TileMap.CHUNK_SIZE - 1) / TileMap.CHUNK_SIZE;
+        int chunk = chunkRow * chunkColumns + chunkColumn;
+        if (decodedChunks[layer][chunk] != null) {
+            return decodedChunks[layer][chunk];
+        }
+        int length = chunkLengths[layer][chunk];
+        if (length == 0) {
+            return null; // Empty chunk
+        }
+
+        byte[] data = new byte[length];
+        try (InputStream in = assets.open(path, AssetManager.ACCESS_RANDOM)) {
+            skipFully(in, chunkOffsets[layer][chunk]);
+            new DataInputStream(in).readFully(data);
+        } catch (IOException e) {
+            Log.e(TAG, String.format("Failed to read chunk %d,%d of layer %s", chunkColumn, chunkRow, layerNames[layer]), e);
+            return null;
+        }
+
+        // Runs of (count, palette index + 1) over the chunk's tiles, row by row
+        int[] values = new int[TileMap.CHUNK_SIZE * TileMap.CHUNK_SIZE];
+        int tileColumns = Math.min(TileMap.CHUNK_SIZE, columns - chunkColumn * TileMap.CHUNK_SIZE);
+        int tileCount = tileColumns * Math.min(TileMap.CHUNK_SIZE, rows - chunkRow * TileMap.CHUNK_SIZE);
+        int tile = 0;
+        for (int i = 0; i + 2 < data.length && tile < tileCount; i += 3) {
+            int run = data[i] & 0xFF;
+            int value = ((data[i + 1] & 0xFF) << 8) | (data[i + 2] & 0xFF);
+            for (int end = Math.min(tileCount, tile + run); tile < end; tile++) {
+                values[(tile / tileColumns) * TileMap.CHUNK_SIZE + tile % tileColumns] = value;
+            }
+        }
+        decodedChunks[layer][chunk] = values;
+        return values;
+    }
+
+    private static void skipFully(InputStream in, long bytes) throws IOException {
+        while (bytes > 0) {
+            long skipped = in.skip(bytes);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException();
+                }
+                skipped = 1;
+            }
+            bytes -= skipped;
+        }
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /** Sprite names the tile layers use, for preloading. */
+    public String[] getTileSprites() {
+        return palette.clone();
+    }
+
+    public List<String> getBackgrounds() {
+        return backgrounds;
+    }
+
+    public List<String> getObjectiveSprites() {
+        return objectiveSprites;
+    }
+
+    public List<String> getCharacterColors() {
+        return characterColors;
+    }
+
+    /** The spawn point for a role ("player", "partner"), or null if the level has none. */
+    public Placement getSpawn(String role) {
+        for (Placement spawn : spawns) {
+            if (spawn.name.equals(role)) {
+                return spawn;
+            }
+        }
+        return null;
+    }
+
+    public List<Placement> getObjectives() {
+        return Collections.unmodifiableList(objectives);
+    }
+
+    public List<Placement> getEnemies() {
+        return Collections.unmodifiableList(enemies);
+    }
+
+    /** Collectibles (coin_*, gem_*, key_*). */
+    public List<Placement> getItems() {
+        return Collections.unmodifiableList(items);
+    }
+}
@@ -0,0 +1,197 @@
+package com.humangodcvaki.whoi;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.util.Log;
+
+/**
+ * Scrolling background made of horizontal bands that move slower than the
+ * camera. A background_color_X is stacked as background_clouds on top,
+ * background_color_X in the middle and background_fade_X at the bottom; any
+ * other background fills the view as a single band.
+ *
+ * Each band is rendered once per view size into a strip of repeated tiles that
+ * is one tile wider than the view. A frame then draws every strip once, shifted
+ * left by its scroll offset modulo the tile width, so scrolling costs one blit
+ * per band however far the camera moves.
+ *
+ * Not thread-safe; GameRenderer calls it from inside its synchronized methods.
+ */
+class ParallaxBackground {
+    private static final String TAG = "ParallaxBackground";
+
+    private static final String CLOUDS_SPRITE = "background_clouds";
+    private static final String COLOR_PREFIX = "background_color_";
+    private static final String FADE_PREFIX = "background_fade_";
+
+    // Fraction of the camera's scroll each band moves by; nearer bands move more
+    private static final float CLOUDS_SCROLL = 0.1f;
+    private static final float SCENERY_SCROLL = 0.25f;
+    private static final float FADE_SCROLL = 0.5f;
+
+    private static final int COLOR_FOREST_OVERLAY = 0x90228B22; // Semi-transparent green
+    private static final int COLOR_LIGHT_RAY = 0x40FFFFFF;      // Semi-transparent white
+
+    private static final class Band {
+        final int handle;
+        final float scroll;
+        final float top;    // Fractions of the view height
+        final float bottom;
+        Bitmap strip;
+        int tileWidth;
+        int stripTop;
+
+        Band(int handle, float scroll, float top, float bottom) {
+            this.handle = handle;
+            this.scroll = scroll;
+            this.top = top;
+            this.bottom = bottom;
+        }
+    }
+
+    private final Paint tilePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Paint overlayPaint = new Paint();
+    private final RectF tileRect = new RectF();
+    private final Canvas stripCanvas = new Canvas();
+
+    private SpriteManager spriteManager;
+    private Band[] bands = new Band[0];
+    private boolean forestAtmosphere = false;
+    private int stripsWidth;
+    private int stripsHeight;
+
+    /** Picks the bands for a background sprite; with no sprite manager there are none. */
+    void setBackground(SpriteManager spriteManager, String backgroundSprite, boolean forestAtmosphere) {
+        release();
+        this.spriteManager = spriteManager;
+        this.forestAtmosphere = forestAtmosphere;
+        bands = new Band[0];
+        if (spriteManager == null || backgroundSprite == null) {
+            return;
+        }
+
+        int background = spriteManager.resolveHandle(backgroundSprite);
+        if (background == SpriteManager.NO_SPRITE) {
+            return;
+        }
+
+        if (backgroundSprite.startsWith(COLOR_PREFIX)) {
+            String theme = backgroundSprite.substring(COLOR_PREFIX.length());
+            int clouds = spriteManager.resolveHandle(CLOUDS_SPRITE);
+            int fade = spriteManager.resolveHandle(FADE_PREFIX + theme);
+            if (clouds != SpriteManager.NO_SPRITE && fade != SpriteManager.NO_SPRITE) {
+                bands = new Band[] {
+                        new Band(clouds, CLOUDS_SCROLL, 0, 1 / 3f),
+                        new Band(background, SCENERY_SCROLL, 1 / 3f, 2 / 3f),
+                        new Band(fade, FADE_SCROLL, 2 / 3f, 1)
+                };
+                return;
+            }
+        }
+        bands = new Band[] { new Band(background, SCENERY_SCROLL, 0, 1) };
+    }
+
+    /** Sprites the bands need, so the activity can preload them with the background. */
+    static String[] getLayerSprites(String backgroundSprite) {
+        if (backgroundSprite == null || !backgroundSprite.startsWith(COLOR_PREFIX)) {
+            return new String[0];
+        }
+        return new String[] { CLOUDS_SPRITE, FADE_PREFIX + backgroundSprite.substring(COLOR_PREFIX.length()) };
+    }
+
+    /**
+     * Draws the bands scrolled for a camera at scrollX (world pixels). Returns
+     * false, drawing nothing, while a band's sprite is not decoded yet or there
+     * is no memory for its strip, so the caller can draw a fallback instead.
+     */
+    boolean draw(Canvas canvas, int width, int height, float scrollX) {
+        if (bands.length == 0) {
+            return false;
+        }
+        if (width != stripsWidth || height != stripsHeight) {
+            recycleStrips(); // First frame or the view/surface was resized
+            stripsWidth = width;
+            stripsHeight = height;
+        }
+
+        for (Band band : bands) {
+            if (band.strip == null && !buildStrip(band, width, height)) {
+                return false;
+            }
+        }
+
+        for (Band band : bands) {
+            float offset = (scrollX * band.scroll) % band.tileWidth;
+            canvas.drawBitmap(band.strip, -offset, band.stripTop, null);
+        }
+        return true;
+    }
+
+    private boolean buildStrip(Band band, int width, int height) {
+        if (spriteManager.getSprite(band.handle) == null) {
+            return false; // Still decoding
+        }
+        // Strips are software canvases, so tiles must be software bitmaps
+        Bitmap tile = spriteManager.getSoftwareSprite(band.handle);
+        if (tile == null || tile.isRecycled()) {
+            return false;
+        }
+
+        band.stripTop = Math.round(height * band.top);
+        int bandHeight = Math.max(1, Math.round(height * band.bottom) - band.stripTop);
+        band.tileWidth = Math.max(1, Math.round(tile.getWidth() * bandHeight / (float) tile.getHeight()));
+        int tileCount = (width + band.tileWidth - 1) / band.tileWidth + 1; // One spare tile to scroll into
+
+        try {
+            // Background sprites are opaque, so RGB_565 halves the strip's memory
+            band.strip = Bitmap.createBitmap(band.tileWidth * tileCount, bandHeight, Bitmap.Config.RGB_565);
+        } catch (OutOfMemoryError e) {
+            Log.w(TAG, "No memory for a background strip");
+            spriteManager.releaseSoftwareSprite(tile);
+            return false;
+        }
+
+        stripCanvas.setBitmap(band.strip);
+        for (int i = 0; i < tileCount; i++) {
+            tileRect.set(i * band.tileWidth, 0, (i + 1) * band.tileWidth, bandHeight);
+            stripCanvas.drawBitmap(tile, null, tileRect, tilePaint);
+            if (forestAtmosphere) {
+                addForestAtmosphere(i * band.tileWidth, band.tileWidth, bandHeight);
+            }
+        }
+        stripCanvas.setBitmap(null);
+        spriteManager.releaseSoftwareSprite(tile);
+
+        Log.d(TAG, String.format("Background strip built at %dx%d (%d tiles)",
+                band.strip.getWidth(), bandHeight, tileCount));
+        return true;
+    }
+
+    // Baked into each tile so it repeats seamlessly with the strip
+    private void addForestAtmosphere(float left, int tileWidth, int bandHeight) {
+        overlayPaint.setColor(COLOR_FOREST_OVERLAY);
+        stripCanvas.drawRect(left, 0, left + tileWidth, bandHeight, overlayPaint);
+
+        overlayPaint.setColor(COLOR_LIGHT_RAY);
+        float rayX = left + tileWidth * 0.5f;
+        stripCanvas.drawRect(rayX, 0, rayX + 20, bandHeight, overlayPaint);
+    }
+
+    private void recycleStrips() {
+        for (Band band : bands) {
+            if (band.strip != null) {
+                band.strip.recycle();
+                band.strip = null;
+            }
+        }
+    }
+
+    /** Frees the strips; the next draw rebuilds them. */
+    void release() {
+        recycleStrips();
+        stripsWidth = 0;
+        stripsHeight = 0;
+    }
+}
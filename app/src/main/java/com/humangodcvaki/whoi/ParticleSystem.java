@@ -0,0 +1,181 @@
+package com.humangodcvaki.whoi;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+import java.util.Random;
+
+/**
+ * Short-lived glowing dots for effects: the objective's glow, coin pickups
+ * and the win celebration. Particles are kept in preallocated parallel arrays
+ * (world position and velocity in tiles, age, lifetime, size, colour, gravity),
+ * packed at the front, and a particle that expires is replaced by the last one.
+ * Emitting, updating and drawing never allocate.
+ *
+ * The live count never exceeds a budget, at most CAPACITY. adaptBudget() lowers
+ * it after a run of frames that missed vsync, culling particles above the new
+ * budget, and slowly raises it again while frames are on time; emits over
+ * budget are dropped, so effects thin out rather than costing frames.
+ *
+ * Not thread-safe; GameRenderer calls it from inside its synchronized methods.
+ */
+class ParticleSystem {
+    static final int CAPACITY = 512;
+    static final int MIN_BUDGET = 32;
+
+    // Frame intervals, in refresh periods, above which a frame is slow and up to which it is on time
+    static final float SLOW_FRAME_PERIODS = 1.5f;
+    static final float FAST_FRAME_PERIODS = 1.1f;
+    // Slow frames in a row before the budget shrinks, so a single hitch doesn't thin out effects
+    static final int SLOW_FRAMES_TO_SHRINK = 3;
+    private static final int BUDGET_STEP = 8;
+
+    private final float[] x = new float[CAPACITY];
+    private final float[] y = new float[CAPACITY];
+    private final float[] velocityX = new float[CAPACITY];
+    private final float[] velocityY = new float[CAPACITY];
+    private final float[] gravity = new float[CAPACITY];
+    private final float[] age = new float[CAPACITY];
+    private final float[] lifetime = new float[CAPACITY];
+    private final float[] size = new float[CAPACITY];
+    private final int[] color = new int[CAPACITY];
+    private int count = 0;
+    private int budget = CAPACITY;
+    private int dropped = 0;
+    private int slowFrames = 0;
+
+    // Fixed seed: the same effects look the same every time
+    private final Random random = new Random(0x57484F4C);
+
+    /**
+     * Emits count particles around (x, y) in tiles, flying out in random
+     * directions at up to speed tiles per second. Returns how many fit the budget.
+     */
+    int burst(float x, float y, int count, float speed, float lifetime, float size,
+              float gravity, int color) {
+        int emitted = 0;
+        for (int i = 0; i < count; i++) {
+            double angle = random.nextDouble() * Math.PI * 2;
+            float particleSpeed = speed * (0.5f + 0.5f * random.nextFloat());
+            if (!emit(x, y, (float) Math.cos(angle) * particleSpeed, (float) Math.sin(angle) * particleSpeed,
+                    lifetime * (0.75f + 0.5f * random.nextFloat()), size, gravity, color)) {
+                break;
+            }
+            emitted++;
+        }
+        return emitted;
+    }
+
+    /** Emits one particle; false if the budget is used up. */
+    boolean emit(float x, float y, float velocityX, float velocityY, float lifetime, float size,
+                 float gravity, int color) {
+        if (count >= budget) {
+            dropped++;
+            return false;
+        }
+        int i = count++;
+        this.x[i] = x;
+        this.y[i] = y;
+        this.velocityX[i] = velocityX;
+        this.velocityY[i] = velocityY;
+        this.gravity[i] = gravity;
+        this.lifetime[i] = Math.max(lifetime, 0.001f);
+        this.size[i] = size;
+        this.color[i] = color;
+        age[i] = 0f;
+        return true;
+    }
+
+    /** A random number in [0, 1), for emitters that scatter their own particles. */
+    float nextRandom() {
+        return random.nextFloat();
+    }
+
+    /** Ages and moves every particle by dt seconds, removing those that have expired. */
+    void update(float dt) {
+        int i = 0;
+        while (i < count) {
+            age[i] += dt;
+            if (age[i] >= lifetime[i]) {
+                moveLastTo(i); // Check the moved particle on the next pass
+                continue;
+            }
+            velocityY[i] += gravity[i] * dt;
+            x[i] += velocityX[i] * dt;
+            y[i] += velocityY[i] * dt;
+            i++;
+        }
+    }
+
+    private void moveLastTo(int i) {
+        int last = --count;
+        x[i] = x[last];
+        y[i] = y[last];
+        velocityX[i] = velocityX[last];
+        velocityY[i] = velocityY[last];
+        gravity[i] = gravity[last];
+        age[i] = age[last];
+        lifetime[i] = lifetime[last];
+        size[i] = size[last];
+        color[i] = color[last];
+    }
+
+    /**
+     * Takes the interval between the last two vsync frames. Shrinks the budget
+     * by a quarter after SLOW_FRAMES_TO_SHRINK slow frames in a row, dropping
+     * the particles over it, and regrows it after each frame on time.
+     */
+    void adaptBudget(long frameIntervalNanos, long refreshPeriodNanos) {
+        if (frameIntervalNanos > refreshPeriodNanos * SLOW_FRAME_PERIODS) {
+            if (++slowFrames >= SLOW_FRAMES_TO_SHRINK) {
+                slowFrames = 0;
+                budget = Math.max(MIN_BUDGET, budget * 3 / 4);
+                count = Math.min(count, budget);
+            }
+            return;
+        }
+        slowFrames = 0;
+        if (frameIntervalNanos <= refreshPeriodNanos * FAST_FRAME_PERIODS) {
+            budget = Math.min(CAPACITY, budget + BUDGET_STEP);
+        }
+    }
+
+    /** Draws each particle as a dot that fades out and shrinks over its lifetime. */
+    void draw(Canvas canvas, Paint paint, Camera camera, int viewWidth, int viewHeight) {
+        float tilePixelSize = camera.getTilePixelSize();
+        for (int i = 0; i < count; i++) {
+            float screenX = camera.toScreenX(x[i]);
+            float screenY = camera.toScreenY(y[i]);
+            float radius = size[i] * tilePixelSize;
+            if (!Camera.isVisible(screenX, screenY, radius, viewWidth, viewHeight)) {
+                continue;
+            }
+            float remaining = 1f - age[i] / lifetime[i];
+            paint.setColor(color[i]);
+            paint.setAlpha((int) ((color[i] >>> 24) * remaining));
+            canvas.drawCircle(screenX, screenY, radius * (0.5f + 0.5f * remaining), paint);
+        }
+        paint.setAlpha(255);
+    }
+
+    float getX(int index) {
+        return x[index];
+    }
+
+    float getY(int index) {
+        return y[index];
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    int getBudget() {
+        return budget;
+    }
+
+    /** Particles not emitted because the budget was used up. */
+    int getDroppedCount() {
+        return dropped;
+    }
+}
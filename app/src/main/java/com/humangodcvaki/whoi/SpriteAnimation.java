@@ -0,0 +1,109 @@
+package com.humangodcvaki.whoi;
+
+/**
+ * An animation clip: sprite handles with a duration per frame and a loop mode.
+ * Clips are immutable and shared, so any number of entities can play the same
+ * clip; each entity only keeps the clock time it started at and asks for the
+ * frame at the current time. Frame lookup does not allocate.
+ */
+public final class SpriteAnimation {
+    public static final int LOOP = 0;       // a b c a b c ...
+    public static final int ONCE = 1;       // a b c c c ...
+    public static final int PING_PONG = 2;  // a b c b a b c ...
+
+    private final String name;
+    private final int[] frameHandles;
+    private final long[] frameEndTimes; // Cumulative, so lookup is a scan without arithmetic per frame
+    private final int loopMode;
+    private final long cycleDuration;
+
+    public SpriteAnimation(String name, int[] frameHandles, long[] frameDurationsMs, int loopMode) {
+        if (frameHandles.length == 0 || frameHandles.length != frameDurationsMs.length) {
+            throw new IllegalArgumentException("Clip " + name + " needs one duration per frame");
+        }
+
+        this.name = name;
+        this.frameHandles = frameHandles.clone();
+        this.loopMode = loopMode;
+
+        // Ping-pong plays the inner frames twice per cycle: a b c b
+        int stepCount = loopMode == PING_PONG && frameHandles.length > 2
+                ? frameHandles.length * 2 - 2 : frameHandles.length;
+        this.frameEndTimes = new long[stepCount];
+        long time = 0;
+        for (int step = 0; step < stepCount; step++) {
+            time += Math.max(1, frameDurationsMs[frameIndexForStep(step)]);
+            frameEndTimes[step] = time;
+        }
+        this.cycleDuration = time;
+    }
+
+    /** Convenience for clips whose frames all last the same time. */
+    public SpriteAnimation(String name, int[] frameHandles, long frameDurationMs, int loopMode) {
+        this(name, frameHandles, filledDurations(frameHandles.length, frameDurationMs), loopMode);
+    }
+
+    private static long[] filledDurations(int frameCount, long frameDurationMs) {
+        long[] durations = new long[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            durations[i] = frameDurationMs;
+        }
+        return durations;
+    }
+
+    private int frameIndexForStep(int step) {
+        return step < frameHandles.length ? step : frameHandles.length * 2 - 2 - step;
+    }
+
+    /** Index into the clip's frames for a time since the clip started. */
+    public int getFrameIndex(long elapsedMs) {
+        if (elapsedMs <= 0 || frameHandles.length == 1) {
+            return 0;
+        }
+
+        long time;
+        if (loopMode == ONCE) {
+            if (elapsedMs >= cycleDuration) {
+                return frameHandles.length - 1;
+            }
+            time = elapsedMs;
+        } else {
+            time = elapsedMs % cycleDuration;
+        }
+
+        int step = 0;
+        while (time >= frameEndTimes[step]) {
+            step++;
+        }
+        return frameIndexForStep(step);
+    }
+
+    /** Sprite handle to draw for a time since the clip started. */
+    public int getFrameHandle(long elapsedMs) {
+        return frameHandles[getFrameIndex(elapsedMs)];
+    }
+
+    public int getFrameHandleAt(int frameIndex) {
+        return frameHandles[frameIndex];
+    }
+
+    public boolean isFinished(long elapsedMs) {
+        return loopMode == ONCE && elapsedMs >= cycleDuration;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getFrameCount() {
+        return frameHandles.length;
+    }
+
+    public long getCycleDuration() {
+        return cycleDuration;
+    }
+
+    public int getLoopMode() {
+        return loopMode;
+    }
+}
@@ -0,0 +1,99 @@
+package com.humangodcvaki.whoi;
+
+import android.content.res.AssetManager;
+import android.graphics.Rect;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of one packed sprite category, generated at build time by the
+ * packSpriteAtlases Gradle task into assets/Atlases/<category>.atlas.
+ *
+ * Index format (one entry per line, space separated):
+ *   page <fileName>
+ *   <spriteName> <pageIndex> <x> <y> <width> <height>
+ */
+public class SpriteAtlas {
+    private static final String TAG = "SpriteAtlas";
+
+    public static final String ATLAS_BASE_PATH = "Atlases/";
+    private static final String INDEX_EXTENSION = ".atlas";
+
+    public static final class Region {
+        public final int page;
+        public final Rect bounds;
+
+        Region(int page, Rect bounds) {
+            this.page = page;
+            this.bounds = bounds;
+        }
+    }
+
+    private final String category;
+    private final List<String> pageFiles = new ArrayList<>();
+    private final Map<String, Region> regions = new HashMap<>();
+
+    private SpriteAtlas(String category) {
+        this.category = category;
+    }
+
+    /**
+     * Reads the index for a category. Returns null when the app was built
+     * without atlases so callers can fall back to individual sprite files.
+     */
+    public static SpriteAtlas load(AssetManager assets, String category) {
+        SpriteAtlas atlas = new SpriteAtlas(category);
+        try (InputStream stream = assets.open(ATLAS_BASE_PATH + category + INDEX_EXTENSION);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(stream))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) continue;
+
+                String[] parts = line.split(" ");
+                if ("page".equals(parts[0]) && parts.length == 2) {
+                    atlas.pageFiles.add(parts[1]);
+                } else if (parts.length == 6) {
+                    int x = Integer.parseInt(parts[2]);
+                    int y = Integer.parseInt(parts[3]);
+                    Rect bounds = new Rect(x, y, x + Integer.parseInt(parts[4]), y + Integer.parseInt(parts[5]));
+                    atlas.regions.put(parts[0], new Region(Integer.parseInt(parts[1]), bounds));
+                } else {
+                    Log.w(TAG, "Skipping malformed atlas line in " + category + ": " + line);
+                }
+            }
+        } catch (IOException e) {
+            return null;
+        } catch (NumberFormatException e) {
+            Log.e(TAG, "Corrupt atlas index for " + category, e);
+            return null;
+        }
+
+        Log.d(TAG, String.format("Atlas %s: %d sprites on %d pages",
+                category, atlas.regions.size(), atlas.pageFiles.size()));
+        return atlas;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public Region getRegion(String spriteName) {
+        return regions.get(spriteName);
+    }
+
+    public int getPageCount() {
+        return pageFiles.size();
+    }
+
+    public String getPagePath(int page) {
+        return ATLAS_BASE_PATH + pageFiles.get(page);
+    }
+}
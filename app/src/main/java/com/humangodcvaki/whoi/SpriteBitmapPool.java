@@ -0,0 +1,121 @@
+package com.humangodcvaki.whoi;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds mutable sprite bitmaps evicted from SpriteManager's cache so the next
+ * decode of a sprite with the same size and config can reuse their memory via
+ * BitmapFactory.Options.inBitmap instead of allocating a new bitmap.
+ *
+ * An evicted bitmap may still be drawn by the frame being recorded, by the
+ * frame the render thread is drawing, or read by a variant build on the decode
+ * pipeline. It is quarantined until QUARANTINE_FRAMES frames have been drawn
+ * since its eviction and no off-frame user is active; only then can a decode
+ * write over it. Quarantined bitmaps are never recycled here.
+ */
+class SpriteBitmapPool {
+    private static final int MAX_BITMAPS_PER_SIZE = 8;
+    private static final int MAX_QUARANTINED = 32; // Beyond this, evictions are left to the GC
+
+    // The frame being recorded, the one the render thread may still be drawing, and one spare
+    static final int QUARANTINE_FRAMES = 3;
+
+    private static final class Quarantined {
+        final Bitmap bitmap;
+        final long evictedFrame;
+
+        Quarantined(Bitmap bitmap, long evictedFrame) {
+            this.bitmap = bitmap;
+            this.evictedFrame = evictedFrame;
+        }
+    }
+
+    private final Map<Long, ArrayDeque<Bitmap>> bitmapsBySize = new HashMap<>();
+    private final ArrayDeque<Quarantined> quarantine = new ArrayDeque<>();
+    private long frameCount = 0;
+    private int offFrameUsers = 0;
+    private int reuseCount = 0;
+
+    private static long sizeKey(int width, int height, Bitmap.Config config) {
+        return ((long) width << 40) | ((long) height << 8) | config.ordinal();
+    }
+
+    synchronized Bitmap acquire(int width, int height, Bitmap.Config config) {
+        ArrayDeque<Bitmap> bitmaps = bitmapsBySize.get(sizeKey(width, height, config));
+        while (bitmaps != null && !bitmaps.isEmpty()) {
+            Bitmap bitmap = bitmaps.poll();
+            if (!bitmap.isRecycled()) {
+                reuseCount++;
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    /** Quarantines an evicted bitmap; returns false if it can't be pooled (only mutable software bitmaps are). */
+    synchronized boolean offer(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable() || bitmap.getConfig() == null
+                || quarantine.size() >= MAX_QUARANTINED) {
+            return false;
+        }
+        quarantine.add(new Quarantined(bitmap, frameCount));
+        return true;
+    }
+
+    /** Called after each frame is drawn; moves bitmaps no frame or build can still use into the pool. */
+    synchronized void onFrameDrawn() {
+        frameCount++;
+        if (offFrameUsers > 0) {
+            return;
+        }
+        while (!quarantine.isEmpty() && frameCount - quarantine.peek().evictedFrame >= QUARANTINE_FRAMES) {
+            addToPool(quarantine.poll().bitmap);
+        }
+    }
+
+    /**
+     * Brackets work outside the frame (variant builds) that may hold a cached
+     * sprite; nothing leaves quarantine while any is running.
+     */
+    synchronized void beginOffFrameUse() {
+        offFrameUsers++;
+    }
+
+    synchronized void endOffFrameUse() {
+        offFrameUsers--;
+    }
+
+    private void addToPool(Bitmap bitmap) {
+        if (bitmap.isRecycled()) {
+            return;
+        }
+        long key = sizeKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        ArrayDeque<Bitmap> bitmaps = bitmapsBySize.get(key);
+        if (bitmaps == null) {
+            bitmaps = new ArrayDeque<>();
+            bitmapsBySize.put(key, bitmaps);
+        }
+        if (bitmaps.size() < MAX_BITMAPS_PER_SIZE) {
+            bitmaps.add(bitmap);
+        }
+    }
+
+    /** Recycles pooled bitmaps, which nothing draws; quarantined ones are only dropped, for the GC. */
+    synchronized void clear() {
+        for (ArrayDeque<Bitmap> bitmaps : bitmapsBySize.values()) {
+            for (Bitmap bitmap : bitmaps) {
+                bitmap.recycle();
+            }
+        }
+        bitmapsBySize.clear();
+        quarantine.clear();
+    }
+
+    synchronized int getReuseCount() {
+        return reuseCount;
+    }
+}
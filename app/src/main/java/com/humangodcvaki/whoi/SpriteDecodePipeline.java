@@ -0,0 +1,171 @@
+package com.humangodcvaki.whoi;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decodes sprites on a bounded pool sized to the core count. Critical sprites
+ * (characters, the chapter background) are always taken off the queue before
+ * optional ones, and the listener hears about them first so drawing can start
+ * while tiles and enemies are still decoding.
+ */
+public final class SpriteDecodePipeline {
+    private static final String TAG = "SpriteDecodePipeline";
+
+    public static final int PRIORITY_CRITICAL = 0;
+    public static final int PRIORITY_OPTIONAL = 1;
+
+    private static final int POOL_SIZE = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static final AtomicLong taskSequence = new AtomicLong();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static final ThreadPoolExecutor executor = createExecutor();
+
+    /** Callbacks are delivered on the main thread. */
+    public interface Listener {
+        void onCriticalSpritesReady(int decodedCount);
+        void onAllSpritesReady(int decodedCount);
+    }
+
+    private SpriteDecodePipeline() {
+    }
+
+    private static ThreadPoolExecutor createExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, "SpriteDecode-" + threadCount.incrementAndGet());
+
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new PriorityBlockingQueue<>(), threadFactory);
+        pool.allowCoreThreadTimeOut(true); // No idle decode threads between games
+        return pool;
+    }
+
+    /** Runs arbitrary sprite work (e.g. acquiring the registry) at the given priority. */
+    public static void submit(int priority, Runnable work) {
+        executor.execute(new PrioritizedTask(priority, work));
+    }
+
+    /**
+     * Queues one decode task per sprite. The listener's critical callback fires
+     * once every critical sprite has been attempted, the final one once the
+     * optional sprites are done as well.
+     */
+    static void decode(SpriteManager spriteManager, String[] criticalSprites, String[] optionalSprites,
+                       Listener listener) {
+        String[] critical = criticalSprites != null ? criticalSprites : new String[0];
+        String[] optional = optionalSprites != null ? optionalSprites : new String[0];
+
+        long startTime = System.currentTimeMillis();
+        AtomicInteger criticalRemaining = new AtomicInteger(critical.length);
+        AtomicInteger totalRemaining = new AtomicInteger(critical.length + optional.length);
+        AtomicInteger decodedCount = new AtomicInteger();
+
+        Runnable onCriticalDone = () -> {
+            Log.d(TAG, String.format("Critical sprites ready in %dms", System.currentTimeMillis() - startTime));
+            spriteManager.checkCriticalDecodes(critical);
+            if (listener != null) {
+                int decoded = decodedCount.get();
+                mainHandler.post(() -> listener.onCriticalSpritesReady(decoded));
+            }
+        };
+        Runnable onAllDone = () -> {
+            long elapsed = System.currentTimeMillis() - startTime;
+            spriteManager.recordPreloadTime(elapsed);
+            Log.d(TAG, String.format("All %d sprites ready in %dms on %d threads",
+                    critical.length + optional.length, elapsed, POOL_SIZE));
+            if (listener != null) {
+                int decoded = decodedCount.get();
+                mainHandler.post(() -> listener.onAllSpritesReady(decoded));
+            }
+        };
+
+        spriteManager.markPending(critical);
+        spriteManager.markPending(optional);
+
+        if (critical.length == 0) {
+            onCriticalDone.run();
+        }
+        if (critical.length + optional.length == 0) {
+            onAllDone.run();
+            return;
+        }
+
+        for (String spriteName : critical) {
+            submit(PRIORITY_CRITICAL, () -> {
+                try {
+                    decodeOne(spriteManager, spriteName, decodedCount);
+                } finally {
+                    if (criticalRemaining.decrementAndGet() == 0) {
+                        onCriticalDone.run();
+                    }
+                    if (totalRemaining.decrementAndGet() == 0) {
+                        onAllDone.run();
+                    }
+                }
+            });
+        }
+        for (String spriteName : optional) {
+            submit(PRIORITY_OPTIONAL, () -> {
+                try {
+                    decodeOne(spriteManager, spriteName, decodedCount);
+                } finally {
+                    if (totalRemaining.decrementAndGet() == 0) {
+                        onAllDone.run();
+                    }
+                }
+            });
+        }
+    }
+
+    private static void decodeOne(SpriteManager spriteManager, String spriteName, AtomicInteger decodedCount) {
+        try {
+            if (spriteManager.decodePending(spriteName)) {
+                decodedCount.incrementAndGet();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error decoding sprite " + spriteName, e);
+        }
+    }
+
+    private static final class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+        private final int priority;
+        private final long sequence;
+        private final Runnable work;
+
+        PrioritizedTask(int priority, Runnable work) {
+            this.priority = priority;
+            this.sequence = taskSequence.getAndIncrement();
+            this.work = work;
+        }
+
+        @Override
+        public void run() {
+            try {
+                work.run();
+            } catch (Exception e) {
+                Log.e(TAG, "Error in sprite decode task", e);
+            }
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask other) {
+            if (priority != other.priority) {
+                return Integer.compare(priority, other.priority);
+            }
+            return Long.compare(sequence, other.sequence); // FIFO within a priority
+        }
+    }
+}
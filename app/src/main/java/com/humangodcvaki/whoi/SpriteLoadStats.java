@@ -0,0 +1,215 @@
+package com.humangodcvaki.whoi;
+
+import android.util.Log;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decode telemetry for SpriteManager, per sprite and per category: decode
+ * time, asset bytes read, decoded bitmap bytes and failures. Written from the
+ * decode threads, read through copies so callers never see a half update.
+ *
+ * Atlas page bytes are read once when a page is opened and are counted
+ * against the category only, not against the sprites cut from it.
+ */
+public final class SpriteLoadStats {
+    private static final String TAG = "SpriteLoadStats";
+
+    /** One set of counters; the ones handed out are copies. */
+    public static final class Counters {
+        private int decodeCount;
+        private int failureCount;
+        private long decodeTimeNanos;
+        private long assetBytesRead;
+        private long decodedBytes;
+
+        Counters() {
+        }
+
+        Counters(Counters other) {
+            decodeCount = other.decodeCount;
+            failureCount = other.failureCount;
+            decodeTimeNanos = other.decodeTimeNanos;
+            assetBytesRead = other.assetBytesRead;
+            decodedBytes = other.decodedBytes;
+        }
+
+        public int getDecodeCount() {
+            return decodeCount;
+        }
+
+        public int getFailureCount() {
+            return failureCount;
+        }
+
+        public long getDecodeTimeMs() {
+            return decodeTimeNanos / 1_000_000;
+        }
+
+        public long getDecodeTimeNanos() {
+            return decodeTimeNanos;
+        }
+
+        public long getAssetBytesRead() {
+            return assetBytesRead;
+        }
+
+        public long getDecodedBytes() {
+            return decodedBytes;
+        }
+    }
+
+    private final Map<String, Counters> spriteCounters = new HashMap<>();
+    private final Map<String, Counters> categoryCounters = new HashMap<>();
+    private final Counters totalCounters = new Counters();
+
+    // Each record updates the sprite's, its category's and the total counters in place
+    synchronized void recordDecode(String spriteName, String category, long decodeTimeNanos, long decodedBytes) {
+        addDecode(getOrCreate(spriteCounters, spriteName), decodeTimeNanos, decodedBytes);
+        addDecode(getOrCreate(categoryCounters, category), decodeTimeNanos, decodedBytes);
+        addDecode(totalCounters, decodeTimeNanos, decodedBytes);
+    }
+
+    synchronized void recordFailure(String spriteName, String category, long decodeTimeNanos) {
+        addFailure(getOrCreate(spriteCounters, spriteName), decodeTimeNanos);
+        addFailure(getOrCreate(categoryCounters, category), decodeTimeNanos);
+        addFailure(totalCounters, decodeTimeNanos);
+    }
+
+    /** Pass a null sprite name for reads shared by a whole category (atlas pages). */
+    synchronized void recordAssetBytes(String spriteName, String category, long bytes) {
+        if (spriteName != null) {
+            getOrCreate(spriteCounters, spriteName).assetBytesRead += bytes;
+        }
+        getOrCreate(categoryCounters, category).assetBytesRead += bytes;
+        totalCounters.assetBytesRead += bytes;
+    }
+
+    private static void addDecode(Counters counters, long decodeTimeNanos, long decodedBytes) {
+        counters.decodeCount++;
+        counters.decodeTimeNanos += decodeTimeNanos;
+        counters.decodedBytes += decodedBytes;
+    }
+
+    private static void addFailure(Counters counters, long decodeTimeNanos) {
+        counters.failureCount++;
+        counters.decodeTimeNanos += decodeTimeNanos;
+    }
+
+    private static Counters getOrCreate(Map<String, Counters> map, String key) {
+        Counters counters = map.get(key);
+        if (counters == null) {
+            counters = new Counters();
+            map.put(key, counters);
+        }
+        return counters;
+    }
+
+    public synchronized Counters getTotals() {
+        return new Counters(totalCounters);
+    }
+
+    /** Counters for one category, or null if nothing of it was decoded yet. */
+    public synchronized Counters getCategory(String category) {
+        Counters counters = categoryCounters.get(category);
+        return counters != null ? new Counters(counters) : null;
+    }
+
+    /** Counters for one sprite, or null if it was never decoded. */
+    public synchronized Counters getSprite(String spriteName) {
+        Counters counters = spriteCounters.get(spriteName);
+        return counters != null ? new Counters(counters) : null;
+    }
+
+    /** Categories ordered by total decode time, slowest first. */
+    public synchronized List<String> getCategoriesByDecodeTime() {
+        return sortedByDecodeTime(categoryCounters);
+    }
+
+    /** Sprites ordered by total decode time, slowest first. */
+    public synchronized List<String> getSpritesByDecodeTime() {
+        return sortedByDecodeTime(spriteCounters);
+    }
+
+    private static List<String> sortedByDecodeTime(Map<String, Counters> map) {
+        List<String> keys = new ArrayList<>(map.keySet());
+        Collections.sort(keys, (a, b) -> Long.compare(map.get(b).decodeTimeNanos, map.get(a).decodeTimeNanos));
+        return keys;
+    }
+
+    /** Logs the per-category breakdown and the slowest sprites. */
+    public synchronized void log(int slowestSpriteCount) {
+        for (String category : getCategoriesByDecodeTime()) {
+            Log.i(TAG, format(category, categoryCounters.get(category)));
+        }
+        List<String> sprites = getSpritesByDecodeTime();
+        for (int i = 0; i < Math.min(slowestSpriteCount, sprites.size()); i++) {
+            Log.i(TAG, "  " + format(sprites.get(i), spriteCounters.get(sprites.get(i))));
+        }
+        Log.i(TAG, format("total", totalCounters));
+    }
+
+    private static String format(String label, Counters counters) {
+        return String.format("%s: %d decodes in %.1fms, %dKB read, %dKB decoded, %d failed",
+                label, counters.decodeCount, counters.decodeTimeNanos / 1_000_000f,
+                counters.assetBytesRead / 1024, counters.decodedBytes / 1024, counters.failureCount);
+    }
+
+    /** Counts the bytes a decoder pulls from an asset stream. */
+    static final class CountingInputStream extends FilterInputStream {
+        private long count;
+        private long markCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                count++;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public synchronized void mark(int readLimit) {
+            super.mark(readLimit);
+            markCount = count;
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            super.reset();
+            count = markCount; // Re-reads after a rewind are not new asset bytes
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
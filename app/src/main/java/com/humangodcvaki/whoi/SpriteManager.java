@@ -1,293 +1,719 @@
 package com.humangodcvaki.whoi;
 
 import android.annotation.SuppressLint;
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffColorFilter;
 import android.graphics.Rect;
 import android.os.Build;
+import android.os.Debug;
+import android.os.Trace;
 import android.util.Log;
+import android.util.LruCache;
+import android.util.SparseArray;
 
 import androidx.annotation.RequiresApi;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class SpriteManager {
     private static final String TAG = "SpriteManager";
 
     private Context context;
-    private Map<String, Bitmap> spriteCache;
+    private LruCache<String, Bitmap> spriteCache;
+    private final Map<String, SpriteEntry> spriteCatalog = new HashMap<>();
+
+    // Dense int handles for the draw path: resolve a name once, then index arrays
+    public static final int NO_SPRITE = -1;
+
+    /**
+     * Where decoded sprites live. HARDWARE keeps pixels in graphics memory only
+     * (API 26+, drawn by hardware-accelerated canvases); anything that needs
+     * pixel access goes through getSoftwareSprite().
+     */
+    public enum BitmapMode {
+        SOFTWARE,
+        HARDWARE
+    }
+    private final List<String> handleNames = new ArrayList<>();
+    private Bitmap[] handleBitmaps;
+    // A handle hit touches the LRU once per frame; later hits that frame are counted here
+    private long[] handleTouchFrames;
+    private final AtomicInteger handleHitCount = new AtomicInteger();
+    private volatile long frameNumber = 0;
+    // Bumped under handleLock when a slot's sprite leaves the cache, so a racing
+    // lookup can't write the old bitmap back into the slot
+    private int[] handleGenerations;
+    private final Object handleLock = new Object();
+
+    // Decode tuning: backgrounds are subsampled against the larger screen side,
+    // same-size tiles reuse evicted bitmaps through the pool once no frame draws them
+    private final SpriteBitmapPool bitmapPool = new SpriteBitmapPool();
+    private final int screenSize;
+
+    private final BitmapMode bitmapMode;
+    // Software copies of hardware sprites handed out by getSoftwareSprite() and not yet released
+    private final Set<Bitmap> softwareCopies = Collections.synchronizedSet(
+            Collections.newSetFromMap(new IdentityHashMap<>()));
+
+    // Animation clips by name, e.g. "character_green_walk" or "bee"
+    private final Map<String, SpriteAnimation> animationClips = new ConcurrentHashMap<>();
+
+    private final Set<String> pendingDecodes = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    // Sprites whose decode failed; not retried until clearFailedDecodes() or cleanup()
+    private final Set<String> failedDecodes = Collections.newSetFromMap(new ConcurrentHashMap<>());
     private Paint spritePaint;
 
+    // Draw-path scratch state so drawing a sprite never allocates. Draw calls come
+    // from one render thread at a time, so sharing the scratch rect is safe.
+    private final Rect scratchDestRect = new Rect();
+    private final Paint[] alphaPaints = new Paint[256];
+    private final SparseArray<Paint> tintPaints = new SparseArray<>();
+    private static final int MAX_TINT_PAINTS = 32;
+
+    // Pre-transformed sprites for drawSpriteVariant, sized as a share of the sprite cache
+    public static final int NO_TINT = SpriteVariantCache.NO_TINT;
+    private static final int VARIANT_CACHE_DIVISOR = 4;
+    private final SpriteVariantCache variantCache;
+
     // Enhanced loading state tracking
-    private boolean assetsLoaded = false;
-    private boolean backgroundsLoaded = false;
-    private boolean charactersLoaded = false;
+    private volatile boolean assetsLoaded = false;
+    private volatile boolean backgroundsLoaded = false;
+    private volatile boolean charactersLoaded = false;
     private boolean tilesLoaded = false;
     private boolean enemiesLoaded = false;
 
     // Loading statistics for debugging
     private int totalSpritesLoaded = 0;
+    private int unreferencedTilesSkipped = 0;
+    private final SpriteLoadStats loadStats = new SpriteLoadStats();
+    private static final int SLOWEST_SPRITES_REPORTED = 5;
+    private final Map<String, Integer> categorySpriteCounts = new HashMap<>();
     private long loadingStartTime = 0;
     private long loadingEndTime = 0;
+    private final AtomicLong preloadTime = new AtomicLong(); // Added to by pipeline threads
+
+    // Atlas packing (see packSpriteAtlases in app/build.gradle.kts)
+    private final boolean useAtlases;
+    private final Map<String, BitmapRegionDecoder[]> atlasDecoders = new HashMap<>();
+    private int atlasCategoriesLoaded = 0;
+    private int atlasPagesOpened = 0;
+
+    // Decoded sprites are kept in an LRU cache sized from the app's memory class
+    private static final int CACHE_MEMORY_DIVISOR = 8;
+    private static final int DEFAULT_MEMORY_CLASS_MB = 64;
+    private static final int MIN_CACHE_BYTES = 4 * 1024 * 1024;
+
+    // Clips are derived from sprites named <clip>_a, <clip>_b, ...; these play faster than the default
+    private static final long DEFAULT_CLIP_FRAME_MS = 400;
+    private static final String[] FAST_CLIPS = {"bee", "fly", "saw", "ladybug_walk"};
+    private static final long FAST_CLIP_FRAME_MS = 120;
+
+    // Sprites are listed by the generated manifest (see generateSpriteManifest in app/build.gradle.kts)
+    private static final String SPRITES_FOLDER = "Sprites";
+    private static final String CHARACTER_PREFIX = "character_";
+    private static final String CHARACTER_IDLE_SUFFIX = "_idle";
+    private static final String BACKGROUND_PREFIX = "background_";
+
+    // Shares of the critical characters and backgrounds that must decode for sprite rendering
+    private static final float MIN_CHARACTERS_DECODED = 0.8f;
+    private static final float MIN_BACKGROUNDS_DECODED = 0.7f;
+
+    // Tiles no level names are left out of the catalog; there are far more in the pack than the chapters use
+    private static final boolean SKIP_UNREFERENCED_TILES = true;
+
+    private static final int MAX_TRACE_SECTION_LENGTH = 127; // Trace.beginSection limit
+
+    /** Where a sprite's pixels live: its own PNG, or a region of an atlas page. */
+    private static final class SpriteEntry {
+        final int handle;
+        final String name;
+        final String category;
+        final String filePath;
+        final SpriteAtlas atlas;
+        final SpriteAtlas.Region region;
+        final DecodeProfile profile;
+        final String traceSection; // Built once so tracing a decode does not allocate
+
+        // Full-resolution size, known up front for atlas sprites and after the first decode otherwise
+        volatile int sourceWidth;
+        volatile int sourceHeight;
+
+        SpriteEntry(int handle, String name, String category, String filePath,
+                    SpriteAtlas atlas, SpriteAtlas.Region region) {
+            this.handle = handle;
+            this.name = name;
+            this.category = category;
+            this.filePath = filePath;
+            this.atlas = atlas;
+            this.region = region;
+            this.profile = getDecodeProfile(category);
+            String section = "SpriteDecode " + category + "/" + name;
+            this.traceSection = section.length() > MAX_TRACE_SECTION_LENGTH
+                    ? section.substring(0, MAX_TRACE_SECTION_LENGTH) : section;
+            if (region != null) {
+                this.sourceWidth = region.bounds.width();
+                this.sourceHeight = region.bounds.height();
+            }
+        }
+    }
+
+    /** How sprites of one category are decoded. */
+    private static final class DecodeProfile {
+        final Bitmap.Config config;
+        final boolean sampleToScreen; // Drawn stretched to the view, so may be subsampled
+        final boolean reusable;       // Same-size sprites that can share memory via inBitmap
 
-    // Sprite categories and their file lists
-    private static final String SPRITES_BASE_PATH = "Sprites/";
-
-    // Character sprites (128x128)
-    private static final String[] CHARACTER_COLORS = {"beige", "green", "pink", "purple", "yellow"};
-    private static final String[] CHARACTER_ACTIONS = {
-            "climb_a", "climb_b", "duck", "front", "hit", "idle", "jump", "walk_a", "walk_b"
-    };
-
-    // Background sprites (256x256)
-    private static final String[] BACKGROUND_SPRITES = {
-            "background_clouds", "background_color_desert", "background_color_hills",
-            "background_color_mushrooms", "background_color_trees", "background_fade_desert",
-            "background_fade_hills", "background_fade_mushrooms", "background_fade_trees",
-            "background_solid_cloud", "background_solid_dirt", "background_solid_grass",
-            "background_solid_sand", "background_solid_sky"
-    };
-
-    // Enemy sprites (64x64)
-    private static final String[] ENEMY_SPRITES = {
-            // Barnacle
-            "barnacle_attack_a", "barnacle_attack_b", "barnacle_attack_rest",
-            // Bee
-            "bee_a", "bee_b", "bee_rest",
-            // Block
-            "block_fall", "block_idle", "block_rest",
-            // Fish
-            "fish_blue_rest", "fish_blue_swim_a", "fish_blue_swim_b",
-            "fish_purple_down", "fish_purple_rest", "fish_purple_up",
-            "fish_yellow_rest", "fish_yellow_swim_a", "fish_yellow_swim_b",
-            // Fly
-            "fly_a", "fly_b", "fly_rest",
-            // Frog
-            "frog_idle", "frog_jump", "frog_rest",
-            // Ladybug
-            "ladybug_fly", "ladybug_rest", "ladybug_walk_a", "ladybug_walk_b",
-            // Mouse
-            "mouse_rest", "mouse_walk_a", "mouse_walk_b",
-            // Saw
-            "saw_a", "saw_b", "saw_rest",
-            // Slimes
-            "slime_block_jump", "slime_block_rest", "slime_block_walk_a", "slime_block_walk_b",
-            "slime_fire_flat", "slime_fire_rest", "slime_fire_walk_a", "slime_fire_walk_b",
-            "slime_normal_flat", "slime_normal_rest", "slime_normal_walk_a", "slime_normal_walk_b",
-            "slime_spike_flat", "slime_spike_rest", "slime_spike_walk_a", "slime_spike_walk_b",
-            // Snail
-            "snail_rest", "snail_shell", "snail_walk_a", "snail_walk_b",
-            // Worms
-            "worm_normal_move_a", "worm_normal_move_b", "worm_normal_rest",
-            "worm_ring_move_a", "worm_ring_move_b", "worm_ring_rest"
-    };
-
-    // Tile sprites (64x64) - Main categories
-    private static final String[] TILE_SPRITES = {
-            // Basic blocks
-            "block_blue", "block_coin", "block_coin_active", "block_empty", "block_empty_warning",
-            "block_exclamation", "block_exclamation_active", "block_green", "block_plank",
-            "block_planks", "block_red", "block_spikes", "block_yellow",
-            // Strong blocks
-            "block_strong_coin", "block_strong_coin_active", "block_strong_danger",
-            "block_strong_danger_active", "block_strong_empty", "block_strong_empty_active",
-            "block_strong_exclamation", "block_strong_exclamation_active",
-            // Items
-            "bomb", "bomb_active", "bridge", "bridge_logs", "bush", "cactus", "chain",
-            // Coins
-            "coin_bronze", "coin_bronze_side", "coin_gold", "coin_gold_side",
-            "coin_silver", "coin_silver_side",
-            // Doors
-            "door_closed", "door_closed_top", "door_open", "door_open_top",
-            // Flags
-            "flag_blue_a", "flag_blue_b", "flag_green_a", "flag_green_b", "flag_off",
-            "flag_red_a", "flag_red_b", "flag_yellow_a", "flag_yellow_b",
-            // Gems
-            "gem_blue", "gem_green", "gem_red", "gem_yellow",
-            // Keys
-            "key_blue", "key_green", "key_red", "key_yellow",
-            // Locks
-            "lock_blue", "lock_green", "lock_red", "lock_yellow",
-            // Common terrain blocks
-            "terrain_dirt_block", "terrain_grass_block", "terrain_stone_block", "terrain_sand_block"
-    };
+        DecodeProfile(Bitmap.Config config, boolean sampleToScreen, boolean reusable) {
+            this.config = config;
+            this.sampleToScreen = sampleToScreen;
+            this.reusable = reusable;
+        }
+    }
+
+    // Every background PNG is an opaque palette image, so 16-bit color loses no alpha
+    private static final DecodeProfile BACKGROUND_PROFILE = new DecodeProfile(Bitmap.Config.RGB_565, true, false);
+    private static final DecodeProfile CHARACTER_PROFILE = new DecodeProfile(Bitmap.Config.ARGB_8888, false, false);
+    private static final DecodeProfile TILE_PROFILE = new DecodeProfile(Bitmap.Config.ARGB_8888, false, true);
+
+    private static DecodeProfile getDecodeProfile(String category) {
+        switch (category) {
+            case "backgrounds":
+                return BACKGROUND_PROFILE;
+            case "tiles":
+            case "enemies":
+                return TILE_PROFILE;
+            default:
+                return CHARACTER_PROFILE;
+        }
+    }
 
     public SpriteManager(Context context) {
+        this(context, true, BitmapMode.SOFTWARE);
+    }
+
+    public SpriteManager(Context context, boolean useAtlases) {
+        this(context, useAtlases, BitmapMode.SOFTWARE);
+    }
+
+    public SpriteManager(Context context, boolean useAtlases, BitmapMode bitmapMode) {
         this.context = context;
-        this.spriteCache = new HashMap<>();
+        this.useAtlases = useAtlases;
+        this.bitmapMode = bitmapMode == BitmapMode.HARDWARE && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                ? BitmapMode.HARDWARE : BitmapMode.SOFTWARE;
+        this.screenSize = Math.max(context.getResources().getDisplayMetrics().widthPixels,
+                context.getResources().getDisplayMetrics().heightPixels);
+        this.spriteCache = createSpriteCache(computeCacheSizeBytes(context));
+        this.variantCache = new SpriteVariantCache(this, spriteCache.maxSize() / VARIANT_CACHE_DIVISOR);
         this.spritePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         spritePaint.setFilterBitmap(true);
 
         loadingStartTime = System.currentTimeMillis();
         Log.d(TAG, "Starting SpriteManager initialization...");
 
-        loadAllSprites();
+        Trace.beginSection("SpriteManager.index");
+        try {
+            indexAllSprites();
+        } finally {
+            Trace.endSection();
+        }
+        handleBitmaps = new Bitmap[handleNames.size()];
+        handleTouchFrames = new long[handleNames.size()];
+        Arrays.fill(handleTouchFrames, -1);
+        handleGenerations = new int[handleNames.size()];
+        registerSpriteSequenceClips();
 
         assetsLoaded = backgroundsLoaded && charactersLoaded;
         loadingEndTime = System.currentTimeMillis();
 
         if (assetsLoaded) {
-            Log.i(TAG, String.format("SpriteManager initialization complete in %dms. Loaded %d sprites.",
-                    (loadingEndTime - loadingStartTime), totalSpritesLoaded));
+            Log.i(TAG, String.format("SpriteManager initialization complete in %dms. Indexed %d sprites, cache limit %dKB.",
+                    (loadingEndTime - loadingStartTime), totalSpritesLoaded, spriteCache.maxSize() / 1024));
         } else {
             Log.w(TAG, "Critical assets not loaded, sprites will use fallback rendering");
         }
     }
 
-    private void loadAllSprites() {
-        Log.d(TAG, "Loading individual sprite files...");
+    private static int computeCacheSizeBytes(Context context) {
+        int memoryClassMb = DEFAULT_MEMORY_CLASS_MB;
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager != null) {
+            memoryClassMb = activityManager.getMemoryClass();
+        }
+        return Math.max(MIN_CACHE_BYTES, memoryClassMb * 1024 * 1024 / CACHE_MEMORY_DIVISOR);
+    }
 
-        // Load character sprites (critical)
-        charactersLoaded = loadCharacterSprites();
+    private LruCache<String, Bitmap> createSpriteCache(int maxBytes) {
+        return new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String spriteName, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
 
-        // Load background sprites (critical)
-        backgroundsLoaded = loadBackgroundSprites();
+            @Override
+            protected Bitmap create(String spriteName) {
+                // Called on a cache miss; evicted bitmaps are not recycled since a
+                // frame in flight may still be drawing them
+                return decodeSprite(spriteName);
+            }
 
-        // Load tile sprites (optional but recommended)
-        tilesLoaded = loadTileSprites();
+            @Override
+            protected void entryRemoved(boolean evicted, String spriteName, Bitmap oldValue, Bitmap newValue) {
+                SpriteEntry entry = spriteCatalog.get(spriteName);
+                if (entry != null && handleBitmaps != null) {
+                    synchronized (handleLock) {
+                        handleGenerations[entry.handle]++;
+                        if (handleBitmaps[entry.handle] == oldValue) {
+                            handleBitmaps[entry.handle] = newValue;
+                        }
+                    }
+                }
+                if (evicted && entry != null && entry.profile.reusable) {
+                    bitmapPool.offer(oldValue); // Quarantined until frames in flight are done with it
+                }
+            }
+        };
+    }
 
-        // Load enemy sprites (optional)
-        enemiesLoaded = loadEnemySprites();
+    /**
+     * Turns every run of lettered frames in the catalog (bee_a, bee_b) into a
+     * looping clip named after the shared prefix (bee).
+     */
+    private void registerSpriteSequenceClips() {
+        for (String spriteName : handleNames) {
+            if (!spriteName.endsWith("_a")) {
+                continue;
+            }
 
-        Log.d(TAG, String.format("Sprite loading complete - Characters: %s, Backgrounds: %s, Tiles: %s, Enemies: %s",
-                charactersLoaded ? "✓" : "✗", backgroundsLoaded ? "✓" : "✗",
-                tilesLoaded ? "✓" : "✗", enemiesLoaded ? "✓" : "✗"));
-    }
+            String clipName = spriteName.substring(0, spriteName.length() - 2);
+            List<String> frames = new ArrayList<>();
+            for (char letter = 'a'; letter <= 'z' && spriteCatalog.containsKey(clipName + "_" + letter); letter++) {
+                frames.add(clipName + "_" + letter);
+            }
+            if (frames.size() < 2) {
+                continue;
+            }
 
-    private boolean loadCharacterSprites() {
-        Log.d(TAG, "Loading character sprites...");
-        int loadedCount = 0;
-        int totalCharacterSprites = CHARACTER_COLORS.length * CHARACTER_ACTIONS.length;
+            long frameDuration = Arrays.asList(FAST_CLIPS).contains(clipName) ? FAST_CLIP_FRAME_MS : DEFAULT_CLIP_FRAME_MS;
+            defineClip(clipName, SpriteAnimation.LOOP, frameDuration, frames.toArray(new String[0]));
+        }
+        Log.d(TAG, "Registered " + animationClips.size() + " animation clips");
+    }
 
-        for (String color : CHARACTER_COLORS) {
-            for (String action : CHARACTER_ACTIONS) {
-                String spriteName = "character_" + color + "_" + action;
-                String filePath = SPRITES_BASE_PATH + "Characters/" + spriteName + ".png";
+    /**
+     * Registers a clip from sprite names, replacing any clip with the same name.
+     * Returns null if a frame is not in the catalog.
+     */
+    public SpriteAnimation defineClip(String clipName, int loopMode, long frameDurationMs, String... frameNames) {
+        long[] durations = new long[frameNames.length];
+        Arrays.fill(durations, frameDurationMs);
+        return defineClip(clipName, loopMode, durations, frameNames);
+    }
 
-                if (loadSingleSprite(spriteName, filePath)) {
-                    loadedCount++;
-                }
+    public SpriteAnimation defineClip(String clipName, int loopMode, long[] frameDurationsMs, String... frameNames) {
+        int[] handles = new int[frameNames.length];
+        for (int i = 0; i < frameNames.length; i++) {
+            handles[i] = resolveHandle(frameNames[i]);
+            if (handles[i] == NO_SPRITE) {
+                Log.w(TAG, String.format("Clip %s skipped, missing frame %s", clipName, frameNames[i]));
+                return null;
             }
         }
 
-        Log.d(TAG, String.format("Character sprites loaded: %d/%d", loadedCount, totalCharacterSprites));
-        totalSpritesLoaded += loadedCount;
-        return loadedCount >= (totalCharacterSprites * 0.8f); // Success if 80% loaded
+        SpriteAnimation clip = new SpriteAnimation(clipName, handles, frameDurationsMs, loopMode);
+        animationClips.put(clipName, clip);
+        return clip;
     }
 
-    private boolean loadBackgroundSprites() {
-        Log.d(TAG, "Loading background sprites...");
-        int loadedCount = 0;
+    /** Returns the named clip, or null if it was never defined. Look clips up once, not per frame. */
+    public SpriteAnimation getClip(String clipName) {
+        return clipName != null ? animationClips.get(clipName) : null;
+    }
 
-        for (String spriteName : BACKGROUND_SPRITES) {
-            String filePath = SPRITES_BASE_PATH + "Backgrounds/" + spriteName + ".png";
+    private void indexAllSprites() {
+        Log.d(TAG, useAtlases ? "Indexing sprites from atlases..." : "Indexing individual sprite files...");
 
-            if (loadSingleSprite(spriteName, filePath)) {
-                loadedCount++;
+        SpriteManifest manifest = SpriteManifest.load(context.getAssets());
+        if (manifest == null) {
+            Log.w(TAG, "No sprite manifest packaged, listing sprite folders instead");
+            manifest = SpriteManifest.scan(context.getAssets(), SPRITES_FOLDER);
+        }
+
+        Map<String, List<SpriteManifest.Entry>> entriesByCategory = new LinkedHashMap<>();
+        for (SpriteManifest.Entry entry : manifest.getEntries()) {
+            List<SpriteManifest.Entry> entries = entriesByCategory.get(entry.category);
+            if (entries == null) {
+                entries = new ArrayList<>();
+                entriesByCategory.put(entry.category, entries);
             }
+            entries.add(entry);
         }
 
-        Log.d(TAG, String.format("Background sprites loaded: %d/%d", loadedCount, BACKGROUND_SPRITES.length));
-        totalSpritesLoaded += loadedCount;
-        return loadedCount >= (BACKGROUND_SPRITES.length * 0.7f); // Success if 70% loaded
-    }
+        for (Map.Entry<String, List<SpriteManifest.Entry>> category : entriesByCategory.entrySet()) {
+            int indexedCount = indexCategory(category.getKey(), category.getValue());
+            Log.d(TAG, String.format("%s sprites available: %d/%d",
+                    category.getKey(), indexedCount, category.getValue().size()));
+            categorySpriteCounts.put(category.getKey(), indexedCount);
+            totalSpritesLoaded += indexedCount;
+        }
 
-    private boolean loadEnemySprites() {
-        Log.d(TAG, "Loading enemy sprites...");
-        int loadedCount = 0;
+        // Characters and backgrounds are critical; tiles and enemies optional
+        charactersLoaded = getCategorySpriteCount("characters") > 0;
+        backgroundsLoaded = getCategorySpriteCount("backgrounds") > 0;
+        tilesLoaded = getCategorySpriteCount("tiles") > 0;
+        enemiesLoaded = getCategorySpriteCount("enemies") > 0;
 
-        for (String spriteName : ENEMY_SPRITES) {
-            String filePath = SPRITES_BASE_PATH + "Enemies/" + spriteName + ".png";
+        Log.d(TAG, String.format("Sprite indexing complete - Characters: %s, Backgrounds: %s, Tiles: %s, Enemies: %s, unreferenced tiles skipped: %d",
+                charactersLoaded ? "✓" : "✗", backgroundsLoaded ? "✓" : "✗",
+                tilesLoaded ? "✓" : "✗", enemiesLoaded ? "✓" : "✗", unreferencedTilesSkipped));
+    }
 
-            if (loadSingleSprite(spriteName, filePath)) {
-                loadedCount++;
-            }
+    /**
+     * Records where each sprite of a category can be decoded from without
+     * decoding anything yet. Sprites in the category's atlas are served from
+     * their region; the rest from their individual PNG.
+     */
+    private int indexCategory(String category, List<SpriteManifest.Entry> entries) {
+        SpriteAtlas atlas = useAtlases ? SpriteAtlas.load(context.getAssets(), category) : null;
+        if (atlas != null) {
+            atlasCategoriesLoaded++;
         }
 
-        Log.d(TAG, String.format("Enemy sprites loaded: %d/%d", loadedCount, ENEMY_SPRITES.length));
-        totalSpritesLoaded += loadedCount;
-        return loadedCount > 0; // Any enemy sprites loaded is considered success
+        int indexedCount = 0;
+        for (SpriteManifest.Entry entry : entries) {
+            if (SKIP_UNREFERENCED_TILES && !entry.referenced && "tiles".equals(category)) {
+                unreferencedTilesSkipped++;
+                continue;
+            }
+
+            SpriteAtlas.Region region = atlas != null ? atlas.getRegion(entry.name) : null;
+            addCatalogEntry(entry, atlas, region);
+            indexedCount++;
+        }
+        return indexedCount;
     }
 
-    private boolean loadTileSprites() {
-        Log.d(TAG, "Loading tile sprites...");
-        int loadedCount = 0;
+    private void addCatalogEntry(SpriteManifest.Entry manifestEntry, SpriteAtlas atlas, SpriteAtlas.Region region) {
+        String spriteName = manifestEntry.name;
+        SpriteEntry existing = spriteCatalog.get(spriteName);
+        int handle = existing != null ? existing.handle : handleNames.size();
+        SpriteEntry entry = new SpriteEntry(handle, spriteName, manifestEntry.category, manifestEntry.path, atlas, region);
+        if (region == null && manifestEntry.width > 0) {
+            entry.sourceWidth = manifestEntry.width; // Saves a bounds pass before sampled decodes
+            entry.sourceHeight = manifestEntry.height;
+        }
+        spriteCatalog.put(spriteName, entry);
+        if (existing == null) {
+            handleNames.add(spriteName);
+        }
+    }
 
-        for (String spriteName : TILE_SPRITES) {
-            String filePath = SPRITES_BASE_PATH + "Tiles/" + spriteName + ".png";
+    private Bitmap decodeSprite(String spriteName) {
+        SpriteEntry entry = spriteCatalog.get(spriteName);
+        if (entry == null) {
+            failedDecodes.add(spriteName);
+            return null;
+        }
 
-            if (loadSingleSprite(spriteName, filePath)) {
-                loadedCount++;
+        Trace.beginSection(entry.traceSection);
+        long startTime = System.nanoTime();
+        try {
+            Bitmap bitmap = entry.region != null ? decodeAtlasSprite(entry) : decodeSpriteFile(entry);
+            if (bitmap != null && !bitmap.isRecycled()) {
+                if (bitmapMode == BitmapMode.HARDWARE) {
+                    bitmap = uploadToHardware(bitmap);
+                }
+                loadStats.recordDecode(spriteName, entry.category, System.nanoTime() - startTime,
+                        bitmap.getAllocationByteCount());
+                return bitmap;
             }
+            loadStats.recordFailure(spriteName, entry.category, System.nanoTime() - startTime);
+            failedDecodes.add(spriteName);
+            Log.w(TAG, String.format("Sprite %s is null after decoding, not retrying", spriteName));
+            return null;
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    @SuppressLint("NewApi")
+    static Bitmap uploadToHardware(Bitmap bitmap) {
+        if (bitmap.getConfig() == Bitmap.Config.HARDWARE) {
+            return bitmap;
         }
+        // Region decodes come back in software; move them to graphics memory
+        Bitmap hardwareBitmap = bitmap.copy(Bitmap.Config.HARDWARE, false);
+        if (hardwareBitmap == null) {
+            return bitmap;
+        }
+        bitmap.recycle();
+        return hardwareBitmap;
+    }
 
-        // Also try to load additional terrain sprites dynamically
-        loadedCount += loadTerrainSprites();
+    /**
+     * Builds decode options from the sprite's category profile. Source size must
+     * be known (atlas region or a bounds pass) for sampling and inBitmap reuse.
+     */
+    private BitmapFactory.Options createDecodeOptions(SpriteEntry entry) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = entry.profile.config;
+        options.inSampleSize = 1;
+        boolean hardware = bitmapMode == BitmapMode.HARDWARE;
+        if (hardware && entry.region == null) {
+            options.inPreferredConfig = Bitmap.Config.HARDWARE;
+        }
 
-        Log.d(TAG, String.format("Tile sprites loaded: %d total", loadedCount));
-        totalSpritesLoaded += loadedCount;
-        return loadedCount > 0; // Any tile sprites loaded is considered success
+        if (entry.sourceWidth > 0 && entry.sourceHeight > 0) {
+            if (entry.profile.sampleToScreen) {
+                options.inSampleSize = calculateInSampleSize(entry.sourceWidth, entry.sourceHeight,
+                        screenSize, screenSize);
+            }
+            if (entry.profile.reusable && !hardware) {
+                options.inMutable = true;
+                options.inBitmap = bitmapPool.acquire(entry.sourceWidth / options.inSampleSize,
+                        entry.sourceHeight / options.inSampleSize, entry.profile.config);
+            }
+        }
+        return options;
     }
 
-    private int loadTerrainSprites() {
-        int loadedCount = 0;
-        String[] terrainTypes = {"dirt", "grass", "purple", "sand", "snow", "stone"};
-        String[] terrainVariations = {"block", "cloud", "horizontal", "vertical", "ramp_left", "ramp_right"};
+    /** Largest power-of-two subsampling that still covers the target size. */
+    static int calculateInSampleSize(int sourceWidth, int sourceHeight, int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            return sampleSize;
+        }
+        while (sourceWidth / (sampleSize * 2) >= targetWidth && sourceHeight / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
 
-        for (String type : terrainTypes) {
-            for (String variation : terrainVariations) {
-                String spriteName = "terrain_" + type + "_" + variation;
-                String filePath = SPRITES_BASE_PATH + "Tiles/" + spriteName + ".png";
+    /**
+     * Slices a sprite out of its atlas page. If the page can't be opened or the
+     * region can't be decoded, the sprite is loaded from its own PNG instead.
+     */
+    private Bitmap decodeAtlasSprite(SpriteEntry entry) {
+        BitmapRegionDecoder decoder = getAtlasPageDecoder(entry.atlas, entry.region.page);
+        if (decoder == null) {
+            return decodeSpriteFile(entry);
+        }
 
-                if (loadSingleSprite(spriteName, filePath)) {
-                    loadedCount++;
-                }
+        BitmapFactory.Options options = createDecodeOptions(entry);
+        Bitmap bitmap = null;
+        try {
+            bitmap = decoder.decodeRegion(entry.region.bounds, options);
+        } catch (IllegalArgumentException e) {
+            if (options.inBitmap != null) {
+                // The pooled bitmap could not be reused; decode into a fresh one
+                options.inBitmap = null;
+                bitmap = decodeRegionOrNull(decoder, entry, options);
+            } else {
+                Log.e(TAG, String.format("Error decoding sprite %s from atlas: %s", entry.name, e.getMessage()));
             }
+        } catch (Exception e) {
+            Log.e(TAG, String.format("Error decoding sprite %s from atlas: %s", entry.name, e.getMessage()));
         }
+        return bitmap != null ? bitmap : decodeSpriteFile(entry);
+    }
 
-        return loadedCount;
+    private Bitmap decodeRegionOrNull(BitmapRegionDecoder decoder, SpriteEntry entry, BitmapFactory.Options options) {
+        try {
+            return decoder.decodeRegion(entry.region.bounds, options);
+        } catch (Exception e) {
+            Log.e(TAG, String.format("Error decoding sprite %s from atlas: %s", entry.name, e.getMessage()));
+            return null;
+        }
     }
 
-    private boolean loadSingleSprite(String spriteName, String filePath) {
+    private synchronized BitmapRegionDecoder getAtlasPageDecoder(SpriteAtlas atlas, int page) {
+        BitmapRegionDecoder[] decoders = atlasDecoders.get(atlas.getCategory());
+        if (decoders == null) {
+            decoders = new BitmapRegionDecoder[atlas.getPageCount()];
+            atlasDecoders.put(atlas.getCategory(), decoders);
+        }
+
+        if (decoders[page] == null) {
+            String pagePath = atlas.getPagePath(page);
+            Trace.beginSection("SpriteAtlasPageOpen");
+            try (SpriteLoadStats.CountingInputStream stream =
+                         new SpriteLoadStats.CountingInputStream(context.getAssets().open(pagePath))) {
+                decoders[page] = BitmapRegionDecoder.newInstance(stream, false);
+                atlasPagesOpened++;
+                loadStats.recordAssetBytes(null, atlas.getCategory(), stream.getCount());
+            } catch (IOException e) {
+                Log.w(TAG, String.format("Failed to open atlas page %s: %s", pagePath, e.getMessage()));
+            } finally {
+                Trace.endSection();
+            }
+        }
+        return decoders[page];
+    }
+
+    private Bitmap decodeSpriteFile(SpriteEntry entry) {
         try {
-            InputStream stream = context.getAssets().open(filePath);
-            Bitmap bitmap = BitmapFactory.decodeStream(stream);
-            stream.close();
+            if (entry.sourceWidth == 0 && entry.profile.sampleToScreen) {
+                readSourceSize(entry);
+            }
 
-            if (bitmap != null && !bitmap.isRecycled()) {
-                spriteCache.put(spriteName, bitmap);
-                return true;
-            } else {
-                Log.w(TAG, String.format("Sprite %s is null after loading from %s", spriteName, filePath));
+            BitmapFactory.Options options = createDecodeOptions(entry);
+            Bitmap bitmap;
+            try (SpriteLoadStats.CountingInputStream stream =
+                         new SpriteLoadStats.CountingInputStream(context.getAssets().open(entry.filePath))) {
+                bitmap = BitmapFactory.decodeStream(stream, null, options);
+                loadStats.recordAssetBytes(entry.name, entry.category, stream.getCount());
+            }
+            if (bitmap != null && entry.sourceWidth == 0) {
+                entry.sourceWidth = bitmap.getWidth() * options.inSampleSize;
+                entry.sourceHeight = bitmap.getHeight() * options.inSampleSize;
             }
+            return bitmap;
         } catch (IOException e) {
             // Silently fail for optional sprites, only log for critical ones
-            if (spriteName.contains("character_green") || spriteName.contains("character_beige") ||
-                    spriteName.contains("background_solid_sky")) {
+            if (entry.name.contains("character_green") || entry.name.contains("character_beige") ||
+                    entry.name.contains("background_solid_sky")) {
                 Log.w(TAG, String.format("Failed to load critical sprite %s from %s: %s",
-                        spriteName, filePath, e.getMessage()));
+                        entry.name, entry.filePath, e.getMessage()));
             }
         } catch (Exception e) {
-            Log.e(TAG, String.format("Error loading sprite %s: %s", spriteName, e.getMessage()));
+            Log.e(TAG, String.format("Error loading sprite %s: %s", entry.name, e.getMessage()));
+        }
+        return null;
+    }
+
+    private void readSourceSize(SpriteEntry entry) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream stream = context.getAssets().open(entry.filePath)) {
+            BitmapFactory.decodeStream(stream, null, bounds);
+        }
+        entry.sourceWidth = Math.max(0, bounds.outWidth);
+        entry.sourceHeight = Math.max(0, bounds.outHeight);
+    }
+
+    /**
+     * Decodes a chapter's working set up front so its first frames hit the
+     * cache. Returns how many of the requested sprites are now resident.
+     */
+    public int preload(String... spriteNames) {
+        if (!assetsLoaded || spriteNames == null) {
+            return 0;
+        }
+
+        long startTime = System.currentTimeMillis();
+        int residentCount = 0;
+        for (String spriteName : spriteNames) {
+            if (getSprite(spriteName) != null) {
+                residentCount++;
+            }
         }
+        preloadTime.addAndGet(System.currentTimeMillis() - startTime);
 
-        return false;
+        Log.d(TAG, String.format("Preloaded %d/%d sprites in %dms",
+                residentCount, spriteNames.length, System.currentTimeMillis() - startTime));
+        return residentCount;
+    }
+
+    /**
+     * Decodes the given sprites on the SpriteDecodePipeline, critical ones first.
+     * Until a sprite's task has run, getSprite returns null for it instead of
+     * decoding on the calling (usually UI) thread, so callers draw their fallback.
+     */
+    public void preloadAsync(String[] criticalSprites, String[] optionalSprites,
+                             SpriteDecodePipeline.Listener listener) {
+        SpriteDecodePipeline.decode(this, criticalSprites, optionalSprites, listener);
+    }
+
+    /**
+     * Marks sprites as queued so getSprite skips them until decoded. Sprites
+     * already in the cache are left alone and keep drawing.
+     */
+    void markPending(String[] spriteNames) {
+        Set<String> resident = spriteCache.snapshot().keySet();
+        for (String spriteName : spriteNames) {
+            if (spriteName != null && spriteCatalog.containsKey(spriteName) && !resident.contains(spriteName)) {
+                pendingDecodes.add(spriteName);
+            }
+        }
+    }
+
+    boolean decodePending(String spriteName) {
+        pendingDecodes.remove(spriteName);
+        return getSprite(spriteName) != null;
+    }
+
+    /**
+     * Called once the pipeline has attempted every critical sprite. Indexing
+     * only shows the manifest lists characters and backgrounds; this checks
+     * enough of them actually decoded, and falls back to fallback rendering
+     * if not.
+     */
+    void checkCriticalDecodes(String[] criticalSprites) {
+        int characters = 0;
+        int charactersDecoded = 0;
+        int backgrounds = 0;
+        int backgroundsDecoded = 0;
+        for (String spriteName : criticalSprites) {
+            if (spriteName == null || spriteName.isEmpty()) {
+                continue;
+            }
+            boolean decoded = spriteCatalog.containsKey(spriteName) && !failedDecodes.contains(spriteName);
+            if (spriteName.startsWith(CHARACTER_PREFIX)) {
+                characters++;
+                charactersDecoded += decoded ? 1 : 0;
+            } else if (spriteName.startsWith(BACKGROUND_PREFIX)) {
+                backgrounds++;
+                backgroundsDecoded += decoded ? 1 : 0;
+            }
+        }
+
+        charactersLoaded &= charactersDecoded >= characters * MIN_CHARACTERS_DECODED;
+        backgroundsLoaded &= backgroundsDecoded >= backgrounds * MIN_BACKGROUNDS_DECODED;
+        assetsLoaded = backgroundsLoaded && charactersLoaded;
+        Log.d(TAG, String.format("Critical sprites decoded - Characters: %d/%d, Backgrounds: %d/%d",
+                charactersDecoded, characters, backgroundsDecoded, backgrounds));
+        if (!assetsLoaded) {
+            Log.w(TAG, "Too few critical sprites decoded, sprites will use fallback rendering");
+        }
+    }
+
+    void recordPreloadTime(long elapsedMs) {
+        preloadTime.addAndGet(elapsedMs);
     }
 
     public Bitmap getSprite(String spriteName) {
         if (!assetsLoaded || spriteName == null || spriteName.isEmpty()) {
             return null;
         }
+        if (pendingDecodes.contains(spriteName)) {
+            return null; // Queued on the decode pipeline
+        }
+        if (failedDecodes.contains(spriteName)) {
+            return null; // Failed before; create() returning null isn't cached by the LRU
+        }
 
+        // Decodes on first use through the cache's create()
         Bitmap sprite = spriteCache.get(spriteName);
         if (sprite != null && !sprite.isRecycled()) {
             return sprite;
@@ -300,25 +726,224 @@ public class SpriteManager {
         return null;
     }
 
+    /** Lets sprites that failed to decode be tried again, e.g. after the sprite system is refreshed. */
+    public void clearFailedDecodes() {
+        failedDecodes.clear();
+    }
+
+    /** Call once per drawn frame; lets evicted tile bitmaps be reused once no frame can draw them. */
+    public void onFrameDrawn() {
+        frameNumber++;
+        bitmapPool.onFrameDrawn();
+    }
+
+    /** Brackets use of a sprite outside a frame, e.g. building a variant on the decode pipeline. */
+    void beginOffFrameUse() {
+        bitmapPool.beginOffFrameUse();
+    }
+
+    void endOffFrameUse() {
+        bitmapPool.endOffFrameUse();
+    }
+
+    /** Returns the handle for a sprite name, or NO_SPRITE if it is not in the catalog. */
+    public int resolveHandle(String spriteName) {
+        if (spriteName == null) {
+            return NO_SPRITE;
+        }
+        SpriteEntry entry = spriteCatalog.get(spriteName);
+        return entry != null ? entry.handle : NO_SPRITE;
+    }
+
+    public String getSpriteName(int handle) {
+        return handle >= 0 && handle < handleNames.size() ? handleNames.get(handle) : null;
+    }
+
+    /**
+     * Handle lookup is an array read once the sprite is decoded. The first use
+     * of a handle in a frame still goes through the name cache, so sprites
+     * drawn every frame stay recent in the LRU.
+     */
+    public Bitmap getSprite(int handle) {
+        if (!assetsLoaded || handleBitmaps == null || handle < 0 || handle >= handleBitmaps.length) {
+            return null;
+        }
+
+        long frame = frameNumber;
+        Bitmap sprite = handleBitmaps[handle];
+        if (sprite != null && !sprite.isRecycled() && handleTouchFrames[handle] == frame) {
+            handleHitCount.incrementAndGet();
+            return sprite;
+        }
+
+        int generation;
+        synchronized (handleLock) {
+            generation = handleGenerations[handle];
+        }
+        sprite = getSprite(handleNames.get(handle));
+        synchronized (handleLock) {
+            // Skipped if the sprite left the cache meanwhile; the next lookup fills the slot
+            if (handleGenerations[handle] == generation) {
+                handleBitmaps[handle] = sprite;
+            }
+        }
+        if (sprite != null) {
+            handleTouchFrames[handle] = frame;
+        }
+        return sprite;
+    }
+
+    /**
+     * Returns a sprite whose pixels can be read or drawn into a software Canvas.
+     * In HARDWARE mode this is a new ARGB_8888 copy; otherwise the sprite itself.
+     * Either way, pass it to releaseSoftwareSprite() once whatever needed it is built.
+     */
+    @SuppressLint("NewApi")
+    public Bitmap getSoftwareSprite(String spriteName) {
+        Bitmap sprite = getSprite(spriteName);
+        if (sprite == null || sprite.getConfig() != Bitmap.Config.HARDWARE) {
+            return sprite;
+        }
+
+        Bitmap copy = sprite.copy(Bitmap.Config.ARGB_8888, false);
+        if (copy == null) {
+            Log.w(TAG, "Could not copy hardware sprite to software: " + spriteName);
+            return null;
+        }
+        softwareCopies.add(copy);
+        return copy;
+    }
+
+    public Bitmap getSoftwareSprite(int handle) {
+        return getSoftwareSprite(getSpriteName(handle));
+    }
+
+    /** Frees a copy made by getSoftwareSprite(); cached sprites it returned are left alone. */
+    public void releaseSoftwareSprite(Bitmap softwareSprite) {
+        if (softwareSprite != null && softwareCopies.remove(softwareSprite)) {
+            softwareSprite.recycle();
+        }
+    }
+
+    public BitmapMode getBitmapMode() {
+        return bitmapMode;
+    }
+
     public void drawSprite(Canvas canvas, String spriteName, float x, float y, float scale) {
         if (!assetsLoaded || canvas == null) {
             return;
         }
 
-        Bitmap sprite = getSprite(spriteName);
+        drawScaledBitmap(canvas, getSprite(spriteName), x, y, scale);
+    }
+
+    public void drawSprite(Canvas canvas, int handle, float x, float y, float scale) {
+        if (!assetsLoaded || canvas == null) {
+            return;
+        }
+
+        drawScaledBitmap(canvas, getSprite(handle), x, y, scale);
+    }
+
+    private void drawScaledBitmap(Canvas canvas, Bitmap sprite, float x, float y, float scale) {
+        drawScaledBitmap(canvas, sprite, x, y, scale, spritePaint);
+    }
+
+    private void drawScaledBitmap(Canvas canvas, Bitmap sprite, float x, float y, float scale, Paint paint) {
         if (sprite != null && !sprite.isRecycled()) {
             try {
-                Rect destRect = new Rect(
+                scratchDestRect.set(
                         (int) x,
                         (int) y,
                         (int) (x + sprite.getWidth() * scale),
                         (int) (y + sprite.getHeight() * scale)
                 );
-                canvas.drawBitmap(sprite, null, destRect, spritePaint);
+                canvas.drawBitmap(sprite, null, scratchDestRect, paint);
             } catch (Exception e) {
-                Log.e(TAG, "Error drawing sprite: " + spriteName, e);
+                Log.e(TAG, "Error drawing sprite", e);
+            }
+        }
+    }
+
+    /**
+     * The scale drawSpriteVariant actually draws at: variants are built at
+     * 1/8 steps. Snap first and position the sprite with the result, so the
+     * variant is drawn at its own size.
+     */
+    public static float snapVariantScale(float scale) {
+        return SpriteVariantCache.bucketScale(scale);
+    }
+
+    /**
+     * Draws a flipped and/or tinted sprite, scaled by snapVariantScale(scale),
+     * with its top-left at (x, y). Once the pre-transformed variant is built
+     * this is a single unscaled drawBitmap; until then the sprite is
+     * transformed on the fly, to the same pixel bounds, and the variant is
+     * built on the decode pipeline.
+     */
+    public void drawSpriteVariant(Canvas canvas, int handle, float x, float y, float scale,
+                                  boolean flipX, boolean flipY, int tintColor) {
+        if (!assetsLoaded || canvas == null) {
+            return;
+        }
+
+        Bitmap sprite = getSprite(handle);
+        if (sprite == null || sprite.isRecycled()) {
+            return;
+        }
+
+        int left = (int) x;
+        int top = (int) y;
+        Bitmap variant = variantCache.get(handle, scale, flipX, flipY, tintColor);
+        if (variant != null) {
+            canvas.drawBitmap(variant, left, top, spritePaint);
+            return;
+        }
+
+        // The size SpriteVariantCache builds the variant at, so switching to it doesn't pop
+        float snappedScale = snapVariantScale(scale);
+        scratchDestRect.set(left, top,
+                left + Math.max(1, Math.round(sprite.getWidth() * snappedScale)),
+                top + Math.max(1, Math.round(sprite.getHeight() * snappedScale)));
+        Paint paint = tintColor != NO_TINT ? getTintPaint(tintColor) : spritePaint;
+        try {
+            if (flipX || flipY) {
+                canvas.save();
+                canvas.scale(flipX ? -1 : 1, flipY ? -1 : 1, scratchDestRect.exactCenterX(), scratchDestRect.exactCenterY());
+                canvas.drawBitmap(sprite, null, scratchDestRect, paint);
+                canvas.restore();
+            } else {
+                canvas.drawBitmap(sprite, null, scratchDestRect, paint);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error drawing sprite", e);
+        }
+    }
+
+    /** Shared paint for an alpha value, created on first use. */
+    private Paint getAlphaPaint(int alpha) {
+        int key = Math.max(0, Math.min(255, alpha));
+        Paint alphaPaint = alphaPaints[key];
+        if (alphaPaint == null) {
+            alphaPaint = new Paint(spritePaint);
+            alphaPaint.setAlpha(key);
+            alphaPaints[key] = alphaPaint;
+        }
+        return alphaPaint;
+    }
+
+    /** Shared multiply-tint paint for a color; the cache is reset if a caller cycles through many colors. */
+    private Paint getTintPaint(int tintColor) {
+        Paint tintPaint = tintPaints.get(tintColor);
+        if (tintPaint == null) {
+            if (tintPaints.size() >= MAX_TINT_PAINTS) {
+                tintPaints.clear();
             }
+            tintPaint = new Paint(spritePaint);
+            tintPaint.setColorFilter(new PorterDuffColorFilter(tintColor, PorterDuff.Mode.MULTIPLY));
+            tintPaints.put(tintColor, tintPaint);
         }
+        return tintPaint;
     }
 
     public void drawSprite(Canvas canvas, String spriteName, float x, float y) {
@@ -330,7 +955,18 @@ public class SpriteManager {
             return;
         }
 
-        Bitmap sprite = getSprite(spriteName);
+        drawFlippedBitmap(canvas, getSprite(spriteName), x, y, flipX, flipY);
+    }
+
+    public void drawSpriteFlipped(Canvas canvas, int handle, float x, float y, boolean flipX, boolean flipY) {
+        if (!assetsLoaded || canvas == null) {
+            return;
+        }
+
+        drawFlippedBitmap(canvas, getSprite(handle), x, y, flipX, flipY);
+    }
+
+    private void drawFlippedBitmap(Canvas canvas, Bitmap sprite, float x, float y, boolean flipX, boolean flipY) {
         if (sprite == null || sprite.isRecycled()) return;
 
         try {
@@ -341,7 +977,7 @@ public class SpriteManager {
             canvas.drawBitmap(sprite, 0, 0, spritePaint);
             canvas.restore();
         } catch (Exception e) {
-            Log.e(TAG, "Error drawing flipped sprite: " + spriteName, e);
+            Log.e(TAG, "Error drawing flipped sprite", e);
         }
     }
 
@@ -401,7 +1037,7 @@ public class SpriteManager {
     }
 
     public boolean hasSprite(String spriteName) {
-        return assetsLoaded && spriteCache.containsKey(spriteName);
+        return assetsLoaded && spriteCatalog.containsKey(spriteName);
     }
 
     public int getTotalSpritesLoaded() {
@@ -409,7 +1045,44 @@ public class SpriteManager {
     }
 
     public long getLoadingTime() {
-        return loadingEndTime - loadingStartTime;
+        return (loadingEndTime - loadingStartTime) + preloadTime.get();
+    }
+
+    public boolean isUsingAtlases() {
+        return atlasCategoriesLoaded > 0;
+    }
+
+    public int getAtlasPagesOpened() {
+        return atlasPagesOpened;
+    }
+
+    /** Cache hits, including repeat handle hits within a frame that skip the LRU. */
+    public int getCacheHitCount() {
+        return spriteCache.hitCount() + handleHitCount.get();
+    }
+
+    public int getCacheMissCount() {
+        return spriteCache.missCount();
+    }
+
+    public int getCacheEvictionCount() {
+        return spriteCache.evictionCount();
+    }
+
+    /** Sprite variants still building on the decode pipeline; drawSpriteVariant draws those the slow way. */
+    public int getPendingVariantBuilds() {
+        return variantCache.getPendingBuildCount();
+    }
+
+    /** Decode telemetry since this manager was created. */
+    public SpriteLoadStats getLoadStats() {
+        return loadStats;
+    }
+
+    /** Sprites indexed for a manifest category such as "tiles". */
+    public int getCategorySpriteCount(String category) {
+        Integer count = categorySpriteCounts.get(category);
+        return count != null ? count : 0;
     }
 
     // Get loading status for different sprite categories
@@ -418,9 +1091,17 @@ public class SpriteManager {
     public boolean areTilesLoaded() { return tilesLoaded; }
     public boolean areEnemiesLoaded() { return enemiesLoaded; }
 
-    // Get alternative character sprites for variety
+    // Get alternative character sprites for variety: every color with an idle frame
     public String[] getAvailableCharacterColors() {
-        return CHARACTER_COLORS.clone();
+        List<String> colors = new ArrayList<>();
+        for (String spriteName : handleNames) {
+            if (spriteName.startsWith(CHARACTER_PREFIX) && spriteName.endsWith(CHARACTER_IDLE_SUFFIX)) {
+                colors.add(spriteName.substring(CHARACTER_PREFIX.length(),
+                        spriteName.length() - CHARACTER_IDLE_SUFFIX.length()));
+            }
+        }
+        Collections.sort(colors);
+        return colors.toArray(new String[0]);
     }
 
     public String[] getAvailableBackgrounds() {
@@ -436,32 +1117,66 @@ public class SpriteManager {
         };
     }
 
-    // New method to get all loaded sprite names
+    // Names of the sprites currently decoded in the cache
     public String[] getLoadedSpriteNames() {
-        return spriteCache.keySet().toArray(new String[0]);
+        return spriteCache.snapshot().keySet().toArray(new String[0]);
     }
 
     // Method to get sprites by category
     @SuppressLint("NewApi")
     @RequiresApi(api = Build.VERSION_CODES.N)
     public String[] getSpritesByCategory(String category) {
-        return spriteCache.keySet().stream()
+        return spriteCatalog.keySet().stream()
                 .filter(name -> name.startsWith(category + "_"))
                 .toArray(String[]::new);
     }
 
+    /**
+     * Shrinks the decoded-sprite cache under memory pressure while the sprites
+     * are still in use. Dropped sprites are decoded again on their next use.
+     */
+    public void trimMemory(int level) {
+        int sizeBefore = spriteCache.size();
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            spriteCache.trimToSize(spriteCache.maxSize() / 4);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            spriteCache.trimToSize(spriteCache.maxSize() / 2);
+        }
+        bitmapPool.clear(); // Trimmed tiles went to the pool; give the memory back once nothing draws them
+        variantCache.clear(false);
+        Log.d(TAG, String.format("Trimmed sprite cache for level %d: %dKB -> %dKB",
+                level, sizeBefore / 1024, spriteCache.size() / 1024));
+    }
+
     public void cleanup() {
         try {
             Log.d(TAG, "Starting SpriteManager cleanup...");
 
             // Clean up all cached sprites
-            for (Map.Entry<String, Bitmap> entry : spriteCache.entrySet()) {
-                Bitmap bitmap = entry.getValue();
+            for (Bitmap bitmap : spriteCache.snapshot().values()) {
                 if (bitmap != null && !bitmap.isRecycled()) {
                     bitmap.recycle();
                 }
             }
-            spriteCache.clear();
+            spriteCache.evictAll();
+            failedDecodes.clear();
+            bitmapPool.clear();
+            softwareCopies.clear();
+            variantCache.clear(true);
+            if (handleBitmaps != null) {
+                Arrays.fill(handleBitmaps, null);
+            }
+
+            synchronized (this) {
+                for (BitmapRegionDecoder[] decoders : atlasDecoders.values()) {
+                    for (BitmapRegionDecoder decoder : decoders) {
+                        if (decoder != null && !decoder.isRecycled()) {
+                            decoder.recycle();
+                        }
+                    }
+                }
+                atlasDecoders.clear();
+            }
 
             assetsLoaded = false;
             backgroundsLoaded = false;
@@ -475,25 +1190,58 @@ public class SpriteManager {
         }
     }
 
+    /** Java heap bytes held by decoded sprites right now; hardware sprites live in graphics memory. */
+    @SuppressLint("NewApi")
+    public long getSpriteHeapBytes() {
+        long bytes = 0;
+        for (Bitmap bitmap : spriteCache.snapshot().values()) {
+            if (bitmap.getConfig() != Bitmap.Config.HARDWARE) {
+                bytes += bitmap.getAllocationByteCount();
+            }
+        }
+        return bytes;
+    }
+
+    /** What the same decoded sprites would take at full size in ARGB_8888 (the BitmapFactory default). */
+    public long getDefaultDecodeHeapBytes() {
+        long bytes = 0;
+        for (String spriteName : spriteCache.snapshot().keySet()) {
+            SpriteEntry entry = spriteCatalog.get(spriteName);
+            if (entry != null) {
+                bytes += (long) entry.sourceWidth * entry.sourceHeight * 4;
+            }
+        }
+        return bytes;
+    }
+
     // Diagnostic method for debugging
     public void printLoadingReport() {
         Log.i(TAG, "=== SpriteManager Loading Report ===");
         Log.i(TAG, "Assets Loaded: " + assetsLoaded);
         Log.i(TAG, "Loading Time: " + getLoadingTime() + "ms");
+        Log.i(TAG, "Bitmap Mode: " + bitmapMode);
+        Log.i(TAG, "Sprite Source: " + (isUsingAtlases()
+                ? "atlases (" + atlasCategoriesLoaded + " categories, " + atlasPagesOpened + " pages opened)"
+                : "individual files"));
         Log.i(TAG, "Total Sprites: " + totalSpritesLoaded);
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-            Log.i(TAG, "Backgrounds Loaded: " + backgroundsLoaded + " (" + getSpritesByCategory("background").length + " sprites)");
-        }
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-            Log.i(TAG, "Characters Loaded: " + charactersLoaded + " (" + getSpritesByCategory("character").length + " sprites)");
-        }
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-            Log.i(TAG, "Tiles Loaded: " + tilesLoaded + " (" + (getSpritesByCategory("terrain").length + getSpritesByCategory("block").length + getSpritesByCategory("coin").length) + " sprites)");
-        }
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-            Log.i(TAG, "Enemies Loaded: " + enemiesLoaded + " (" + (getSpritesByCategory("slime").length + getSpritesByCategory("fish").length + getSpritesByCategory("mouse").length) + " sprites)");
-        }
-        Log.i(TAG, "Total Cached Sprites: " + spriteCache.size());
+        Log.i(TAG, "Backgrounds Loaded: " + backgroundsLoaded + " (" + getCategorySpriteCount("backgrounds") + " sprites)");
+        Log.i(TAG, "Characters Loaded: " + charactersLoaded + " (" + getCategorySpriteCount("characters") + " sprites)");
+        Log.i(TAG, "Tiles Loaded: " + tilesLoaded + " (" + getCategorySpriteCount("tiles") + " sprites, "
+                + unreferencedTilesSkipped + " unreferenced skipped)");
+        Log.i(TAG, "Enemies Loaded: " + enemiesLoaded + " (" + getCategorySpriteCount("enemies") + " sprites)");
+        Log.i(TAG, "Total Cached Sprites: " + spriteCache.snapshot().size()
+                + " (" + spriteCache.size() / 1024 + "KB of " + spriteCache.maxSize() / 1024 + "KB)");
+        Log.i(TAG, String.format("Cache Hits: %d, Misses: %d, Evictions: %d",
+                getCacheHitCount(), spriteCache.missCount(), spriteCache.evictionCount()));
+        Log.i(TAG, String.format("Sprite Heap: %dKB (default decode: %dKB), inBitmap reuses: %d",
+                getSpriteHeapBytes() / 1024, getDefaultDecodeHeapBytes() / 1024, bitmapPool.getReuseCount()));
+        Runtime runtime = Runtime.getRuntime();
+        Log.i(TAG, String.format("Java Heap: %dKB used, GCs: %s, blocking GC time: %sms",
+                (runtime.totalMemory() - runtime.freeMemory()) / 1024,
+                Debug.getRuntimeStat("art.gc.gc-count"), Debug.getRuntimeStat("art.gc.blocking-gc-time")));
+        Log.i(TAG, String.format("Sprite Variants: %d (%dKB), %d built",
+                variantCache.size(), variantCache.getCachedBytes() / 1024, variantCache.getBuildCount()));
+        loadStats.log(SLOWEST_SPRITES_REPORTED);
         Log.i(TAG, "====================================");
     }
     // Add these methods to your SpriteManager.java class
@@ -521,8 +1269,8 @@ public class SpriteManager {
         Bitmap sprite = getSprite(spriteName);
         if (sprite != null && !sprite.isRecycled()) {
             try {
-                Rect destRect = new Rect((int)x, (int)y, (int)(x + width), (int)(y + height));
-                canvas.drawBitmap(sprite, null, destRect, spritePaint);
+                scratchDestRect.set((int)x, (int)y, (int)(x + width), (int)(y + height));
+                canvas.drawBitmap(sprite, null, scratchDestRect, spritePaint);
             } catch (Exception e) {
                 Log.e(TAG, "Error drawing sprite with dimensions: " + spriteName, e);
             }
@@ -535,23 +1283,15 @@ public class SpriteManager {
             return;
         }
 
-        Bitmap sprite = getSprite(spriteName);
-        if (sprite == null || sprite.isRecycled()) return;
+        drawScaledBitmap(canvas, getSprite(spriteName), x, y, scale, getAlphaPaint(alpha));
+    }
 
-        try {
-            Paint alphaPaint = new Paint(spritePaint);
-            alphaPaint.setAlpha(alpha);
-
-            Rect destRect = new Rect(
-                    (int) x,
-                    (int) y,
-                    (int) (x + sprite.getWidth() * scale),
-                    (int) (y + sprite.getHeight() * scale)
-            );
-            canvas.drawBitmap(sprite, null, destRect, alphaPaint);
-        } catch (Exception e) {
-            Log.e(TAG, "Error drawing sprite with alpha: " + spriteName, e);
+    public void drawSpriteWithAlpha(Canvas canvas, int handle, float x, float y, float scale, int alpha) {
+        if (!assetsLoaded || canvas == null) {
+            return;
         }
+
+        drawScaledBitmap(canvas, getSprite(handle), x, y, scale, getAlphaPaint(alpha));
     }
 
     // Tinted sprite drawing
@@ -560,23 +1300,15 @@ public class SpriteManager {
             return;
         }
 
-        Bitmap sprite = getSprite(spriteName);
-        if (sprite == null || sprite.isRecycled()) return;
+        drawScaledBitmap(canvas, getSprite(spriteName), x, y, scale, getTintPaint(tintColor));
+    }
 
-        try {
-            Paint tintPaint = new Paint(spritePaint);
-            tintPaint.setColorFilter(new android.graphics.PorterDuffColorFilter(tintColor, android.graphics.PorterDuff.Mode.MULTIPLY));
-
-            Rect destRect = new Rect(
-                    (int) x,
-                    (int) y,
-                    (int) (x + sprite.getWidth() * scale),
-                    (int) (y + sprite.getHeight() * scale)
-            );
-            canvas.drawBitmap(sprite, null, destRect, tintPaint);
-        } catch (Exception e) {
-            Log.e(TAG, "Error drawing tinted sprite: " + spriteName, e);
+    public void drawSpriteWithTint(Canvas canvas, int handle, float x, float y, float scale, int tintColor) {
+        if (!assetsLoaded || canvas == null) {
+            return;
         }
+
+        drawScaledBitmap(canvas, getSprite(handle), x, y, scale, getTintPaint(tintColor));
     }
 
 }
\ No newline at end of file
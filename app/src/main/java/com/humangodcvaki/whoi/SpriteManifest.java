@@ -0,0 +1,104 @@
+package com.humangodcvaki.whoi;
+
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Every sprite in assets/Sprites with its category, asset path and size,
+ * generated at build time by the generateSpriteManifest Gradle task into
+ * assets/Manifest/sprites.manifest.
+ *
+ * Manifest format (one sprite per line, space separated):
+ *   <category> <name> <assetPath> <width> <height> <referenced 0|1>
+ */
+public class SpriteManifest {
+    private static final String TAG = "SpriteManifest";
+
+    public static final String MANIFEST_PATH = "Manifest/sprites.manifest";
+
+    public static final class Entry {
+        public final String category;
+        public final String name;
+        public final String path;
+        public final int width;
+        public final int height;
+        public final boolean referenced; // Named by at least one level source
+
+        Entry(String category, String name, String path, int width, int height, boolean referenced) {
+            this.category = category;
+            this.name = name;
+            this.path = path;
+            this.width = width;
+            this.height = height;
+            this.referenced = referenced;
+        }
+    }
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    private SpriteManifest() {
+    }
+
+    /** Reads the manifest, or returns null when the app was built without one. */
+    public static SpriteManifest load(AssetManager assets) {
+        SpriteManifest manifest = new SpriteManifest();
+        try (InputStream stream = assets.open(MANIFEST_PATH);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(stream))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) continue;
+
+                String[] parts = line.split(" ");
+                if (parts.length == 6) {
+                    manifest.entries.add(new Entry(parts[0], parts[1], parts[2],
+                            Integer.parseInt(parts[3]), Integer.parseInt(parts[4]), "1".equals(parts[5])));
+                } else {
+                    Log.w(TAG, "Skipping malformed manifest line: " + line);
+                }
+            }
+        } catch (IOException e) {
+            return null;
+        } catch (NumberFormatException e) {
+            Log.e(TAG, "Corrupt sprite manifest", e);
+            return null;
+        }
+
+        Log.d(TAG, "Sprite manifest lists " + manifest.entries.size() + " sprites");
+        return manifest;
+    }
+
+    /**
+     * Builds the same listing from the asset folders when no manifest was
+     * packaged. Sizes are unknown (0) and every sprite counts as referenced.
+     */
+    public static SpriteManifest scan(AssetManager assets, String spritesPath) {
+        SpriteManifest manifest = new SpriteManifest();
+        try {
+            String[] folders = assets.list(spritesPath);
+            for (String folder : folders != null ? folders : new String[0]) {
+                String[] files = assets.list(spritesPath + "/" + folder);
+                for (String file : files != null ? files : new String[0]) {
+                    if (file.endsWith(".png")) {
+                        manifest.entries.add(new Entry(folder.toLowerCase(), file.substring(0, file.length() - 4),
+                                spritesPath + "/" + folder + "/" + file, 0, 0, true));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to list sprite folders", e);
+        }
+        return manifest;
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+}
@@ -0,0 +1,158 @@
+package com.humangodcvaki.whoi;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Application-scoped owner of the shared SpriteManager. Game activities acquire
+ * it when they start and release it when they finish, so decoded sprites stay
+ * resident across back-to-back matches. The sprites are only dropped when
+ * nobody has held them for IDLE_TIMEOUT_MS or the system reports memory pressure.
+ *
+ * A shared manager whose assets failed to load is replaced on the next
+ * acquire(). Games still holding it keep using it; it is retired with their
+ * count and cleaned up when the last of them releases it.
+ */
+public final class SpriteRegistry implements ComponentCallbacks2 {
+    private static final String TAG = "SpriteRegistry";
+
+    private static final long IDLE_TIMEOUT_MS = 60_000; // Keep sprites between matches for a minute
+
+    private static SpriteRegistry instance;
+
+    private final Context appContext;
+    private final Handler mainHandler;
+    private final Runnable idleEviction = this::evictIfUnused;
+
+    private SpriteManager spriteManager;
+    private int refCount = 0;
+    private final Map<SpriteManager, Integer> retiredRefCounts = new IdentityHashMap<>();
+    private SpriteManager.BitmapMode bitmapMode = SpriteManager.BitmapMode.SOFTWARE;
+
+    public static synchronized SpriteRegistry getInstance(Context context) {
+        if (instance == null) {
+            instance = new SpriteRegistry(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private SpriteRegistry(Context appContext) {
+        this.appContext = appContext;
+        this.mainHandler = new Handler(Looper.getMainLooper());
+        appContext.registerComponentCallbacks(this);
+    }
+
+    /**
+     * Selects how sprites are stored. Takes effect on the next acquire() once no
+     * game holds the current sprites, since those are already decoded.
+     */
+    public synchronized void setBitmapMode(SpriteManager.BitmapMode mode) {
+        if (mode != null) {
+            bitmapMode = mode;
+        }
+    }
+
+    /** Returns the shared SpriteManager, creating it if it was evicted. Pair with release(). */
+    public synchronized SpriteManager acquire() {
+        mainHandler.removeCallbacks(idleEviction);
+
+        if (spriteManager != null && refCount == 0 && spriteManager.getBitmapMode() != bitmapMode) {
+            Log.d(TAG, "Bitmap mode changed to " + bitmapMode + ", dropping resident sprites");
+            spriteManager.cleanup();
+            spriteManager = null;
+        }
+
+        if (spriteManager != null && !spriteManager.areAssetsLoaded()) {
+            retire(spriteManager, refCount);
+            spriteManager = null;
+            refCount = 0;
+        }
+
+        if (spriteManager == null) {
+            spriteManager = new SpriteManager(appContext, true, bitmapMode);
+            Log.d(TAG, "Created shared SpriteManager");
+        } else {
+            Log.d(TAG, "Reusing resident sprites (" + spriteManager.getLoadedSpriteNames().length + " decoded)");
+        }
+
+        refCount++;
+        return spriteManager;
+    }
+
+    public synchronized void release(SpriteManager manager) {
+        Integer retiredCount = manager != null ? retiredRefCounts.get(manager) : null;
+        if (retiredCount != null) {
+            retire(manager, retiredCount - 1);
+            return;
+        }
+        if (manager == null || manager != spriteManager || refCount == 0) {
+            return;
+        }
+
+        refCount--;
+        if (refCount == 0) {
+            mainHandler.postDelayed(idleEviction, IDLE_TIMEOUT_MS);
+        }
+    }
+
+    /** Cleans up a replaced manager once nobody holds it, otherwise waits for its holders' releases. */
+    private void retire(SpriteManager manager, int holders) {
+        if (holders > 0) {
+            retiredRefCounts.put(manager, holders);
+            Log.d(TAG, String.format("Replacing shared SpriteManager, %d holders still using the old one", holders));
+        } else {
+            retiredRefCounts.remove(manager);
+            Log.d(TAG, "Cleaning up replaced SpriteManager");
+            manager.cleanup();
+        }
+    }
+
+    public synchronized int getRefCount() {
+        return refCount;
+    }
+
+    private synchronized void evictIfUnused() {
+        if (refCount > 0 || spriteManager == null) {
+            return;
+        }
+
+        Log.d(TAG, "Evicting shared sprites");
+        spriteManager.cleanup();
+        spriteManager = null;
+    }
+
+    @Override
+    public synchronized void onTrimMemory(int level) {
+        if (spriteManager == null) {
+            return;
+        }
+
+        if (refCount == 0 && level >= TRIM_MEMORY_BACKGROUND) {
+            // Nobody is drawing and the process may be killed next
+            mainHandler.removeCallbacks(idleEviction);
+            evictIfUnused();
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW && level != TRIM_MEMORY_UI_HIDDEN) {
+            // Still in use, so shrink the cache instead of dropping everything
+            spriteManager.trimMemory(level);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+        // Sprites do not depend on configuration
+    }
+}
@@ -0,0 +1,183 @@
+package com.humangodcvaki.whoi;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffColorFilter;
+import android.util.Log;
+import android.util.LongSparseArray;
+
+/**
+ * Pre-transformed copies of sprites (scaled, flipped, tinted) so the draw path
+ * is one unscaled drawBitmap. Variants are keyed by a packed long so a lookup
+ * never boxes, and are built on the sprite decode pipeline: the first request
+ * for a variant misses and the caller draws the slow way until it is ready.
+ * When the byte budget is exceeded the least recently drawn variants go first.
+ */
+class SpriteVariantCache {
+    private static final String TAG = "SpriteVariantCache";
+
+    static final int NO_TINT = 0;
+
+    // Scales are rounded to 1/8 steps so 1.5 and 1.49 share a variant
+    private static final int SCALE_BUCKETS_PER_UNIT = 8;
+    private static final int MAX_SCALE_BUCKET = (1 << 10) - 1;
+    private static final int MAX_HANDLE = (1 << 20) - 1;
+
+    private final SpriteManager spriteManager;
+    private final int maxBytes;
+    private final LongSparseArray<Variant> variants = new LongSparseArray<>();
+    private final LongSparseArray<Boolean> pendingBuilds = new LongSparseArray<>();
+    private long cachedBytes = 0;
+    private long useCount = 0; // Stamped on a variant each time it is drawn
+    private int buildCount = 0;
+
+    private static final class Variant {
+        final Bitmap bitmap;
+        long lastUsed;
+
+        Variant(Bitmap bitmap, long lastUsed) {
+            this.bitmap = bitmap;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    SpriteVariantCache(SpriteManager spriteManager, int maxBytes) {
+        this.spriteManager = spriteManager;
+        this.maxBytes = maxBytes;
+    }
+
+    /** Packs handle (20 bits), scale bucket (10), flips (2) and tint (32) into one key. */
+    static long key(int handle, float scale, boolean flipX, boolean flipY, int tintColor) {
+        long bucket = Math.max(1, Math.min(MAX_SCALE_BUCKET, Math.round(scale * SCALE_BUCKETS_PER_UNIT)));
+        return ((long) (handle & MAX_HANDLE) << 44)
+                | (bucket << 34)
+                | (flipX ? 1L << 33 : 0)
+                | (flipY ? 1L << 32 : 0)
+                | (tintColor & 0xFFFFFFFFL);
+    }
+
+    static float bucketScale(float scale) {
+        return Math.max(1, Math.min(MAX_SCALE_BUCKET, Math.round(scale * SCALE_BUCKETS_PER_UNIT)))
+                / (float) SCALE_BUCKETS_PER_UNIT;
+    }
+
+    /** Returns the variant if it is built; otherwise queues it and returns null. */
+    Bitmap get(int handle, float scale, boolean flipX, boolean flipY, int tintColor) {
+        if (handle < 0 || handle > MAX_HANDLE) {
+            return null;
+        }
+
+        long key = key(handle, scale, flipX, flipY, tintColor);
+        synchronized (this) {
+            Variant variant = variants.get(key);
+            if (variant != null && !variant.bitmap.isRecycled()) {
+                variant.lastUsed = ++useCount;
+                return variant.bitmap;
+            }
+            if (pendingBuilds.get(key) != null) {
+                return null;
+            }
+            pendingBuilds.put(key, Boolean.TRUE);
+        }
+
+        float bucketScale = bucketScale(scale);
+        SpriteDecodePipeline.submit(SpriteDecodePipeline.PRIORITY_OPTIONAL,
+                () -> build(key, handle, bucketScale, flipX, flipY, tintColor));
+        return null;
+    }
+
+    private void build(long key, int handle, float scale, boolean flipX, boolean flipY, int tintColor) {
+        Bitmap variant = null;
+        Bitmap source = null;
+        spriteManager.beginOffFrameUse(); // Keeps the source out of the reuse pool while we read it
+        try {
+            // Hardware sprites cannot be drawn into a software Canvas
+            source = spriteManager.getSoftwareSprite(handle);
+            if (source != null && !source.isRecycled()) {
+                variant = render(source, scale, flipX, flipY, tintColor);
+                if (spriteManager.getBitmapMode() == SpriteManager.BitmapMode.HARDWARE) {
+                    variant = SpriteManager.uploadToHardware(variant);
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error building sprite variant for " + spriteManager.getSpriteName(handle), e);
+        } finally {
+            spriteManager.releaseSoftwareSprite(source);
+            spriteManager.endOffFrameUse();
+        }
+
+        synchronized (this) {
+            pendingBuilds.remove(key);
+            if (variant == null) {
+                return;
+            }
+            int bytes = variant.getAllocationByteCount();
+            while (cachedBytes + bytes > maxBytes && variants.size() > 0) {
+                evictLeastRecentlyUsed();
+            }
+            variants.put(key, new Variant(variant, ++useCount));
+            cachedBytes += bytes;
+            buildCount++;
+        }
+    }
+
+    /** Not recycled; a frame in flight may still be drawing it. Scans, but runs on the pipeline, not per frame. */
+    private void evictLeastRecentlyUsed() {
+        int oldest = 0;
+        for (int i = 1; i < variants.size(); i++) {
+            if (variants.valueAt(i).lastUsed < variants.valueAt(oldest).lastUsed) {
+                oldest = i;
+            }
+        }
+        cachedBytes -= variants.valueAt(oldest).bitmap.getAllocationByteCount();
+        variants.removeAt(oldest);
+    }
+
+    private static Bitmap render(Bitmap source, float scale, boolean flipX, boolean flipY, int tintColor) {
+        int width = Math.max(1, Math.round(source.getWidth() * scale));
+        int height = Math.max(1, Math.round(source.getHeight() * scale));
+        Bitmap variant = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+
+        Matrix matrix = new Matrix();
+        matrix.setScale(flipX ? -scale : scale, flipY ? -scale : scale);
+        matrix.postTranslate(flipX ? width : 0, flipY ? height : 0);
+
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+        if (tintColor != NO_TINT) {
+            paint.setColorFilter(new PorterDuffColorFilter(tintColor, PorterDuff.Mode.MULTIPLY));
+        }
+        new Canvas(variant).drawBitmap(source, matrix, paint);
+        return variant;
+    }
+
+    /** Drops all variants; recycle only when no frame can still be drawing them. */
+    synchronized void clear(boolean recycle) {
+        if (recycle) {
+            for (int i = 0; i < variants.size(); i++) {
+                variants.valueAt(i).bitmap.recycle();
+            }
+        }
+        variants.clear();
+        cachedBytes = 0;
+    }
+
+    synchronized int size() {
+        return variants.size();
+    }
+
+    synchronized long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    synchronized int getBuildCount() {
+        return buildCount;
+    }
+
+    /** Variants queued on the pipeline and not yet built (or given up on). */
+    synchronized int getPendingBuildCount() {
+        return pendingBuilds.size();
+    }
+}
@@ -551,9 +551,10 @@ public class StartLoadingActivity extends AppCompatActivity {
 
         try {
             chapterSelected = true;
-            // Select random chapter (1-5 for example)
+            // Select a random chapter among the compiled levels
             Random random = new Random();
-            selectedChapter = random.nextInt(1) + 1; // For now, only chapter 1
+            int chapterCount = Math.max(1, LevelFile.getChapterCount(getAssets()));
+            selectedChapter = random.nextInt(chapterCount) + 1;
 
             Map<String, Object> chapterData = new HashMap<>();
             chapterData.put("selectedChapter", selectedChapter);
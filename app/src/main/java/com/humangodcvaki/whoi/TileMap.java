@@ -0,0 +1,175 @@
+package com.humangodcvaki.whoi;
+
+import java.util.Arrays;
+
+/**
+ * A grid of sprite handles (SpriteManager.NO_SPRITE for empty cells), split
+ * into square chunks of CHUNK_SIZE tiles. Each chunk carries a version that
+ * setTile bumps, so TileMapRenderer knows which cached chunk bitmaps are stale.
+ *
+ * Chunk storage is allocated on first access; with a ChunkLoader (see
+ * LevelFile) that is also when the chunk's tiles are read, so a long level
+ * only costs memory and I/O for the chunks something has looked at. The
+ * render thread never loads: it asks for chunks ahead of the camera with
+ * requestChunks(), which reads them on the SpriteDecodePipeline, and draws
+ * only chunks that isChunkLoaded(). Collision likewise reads getLoadedTile().
+ */
+public class TileMap {
+    public static final int CHUNK_SIZE = 8; // Tiles per chunk side
+
+    /** Fills a chunk's tiles (CHUNK_SIZE x CHUNK_SIZE, row-major, pre-filled with NO_SPRITE). */
+    public interface ChunkLoader {
+        void loadChunk(int chunkColumn, int chunkRow, int[] tiles);
+    }
+
+    private final int columns;
+    private final int rows;
+    private final int chunkColumns;
+    private final int chunkRows;
+    private final int[][] chunkTiles;
+    private final int[] chunkVersions;
+    private final boolean[] chunkRequested;
+    private final ChunkLoader loader;
+
+    public TileMap(int columns, int rows) {
+        this(columns, rows, null);
+    }
+
+    public TileMap(int columns, int rows, ChunkLoader loader) {
+        if (columns <= 0 || rows <= 0) {
+            throw new IllegalArgumentException("Tile map must have at least one tile: " + columns + "x" + rows);
+        }
+        this.columns = columns;
+        this.rows = rows;
+        this.chunkColumns = (columns + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        this.chunkRows = (rows + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        this.chunkTiles = new int[chunkColumns * chunkRows][];
+        this.chunkVersions = new int[chunkColumns * chunkRows];
+        this.chunkRequested = new boolean[chunkColumns * chunkRows];
+        this.loader = loader;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getChunkColumns() {
+        return chunkColumns;
+    }
+
+    public int getChunkRows() {
+        return chunkRows;
+    }
+
+    // Read by the render thread and written by the UI and decode threads. The
+    // loader runs outside the lock so isChunkLoaded() never waits on I/O; if two
+    // threads load the same chunk, the first one published wins.
+    private int[] chunk(int chunkColumn, int chunkRow) {
+        int index = chunkRow * chunkColumns + chunkColumn;
+        synchronized (this) {
+            if (chunkTiles[index] != null) {
+                return chunkTiles[index];
+            }
+        }
+
+        int[] tiles = new int[CHUNK_SIZE * CHUNK_SIZE];
+        Arrays.fill(tiles, SpriteManager.NO_SPRITE);
+        if (loader != null) {
+            loader.loadChunk(chunkColumn, chunkRow, tiles);
+        }
+        synchronized (this) {
+            if (chunkTiles[index] == null) {
+                chunkTiles[index] = tiles;
+            }
+            return chunkTiles[index];
+        }
+    }
+
+    public synchronized boolean isChunkLoaded(int chunkColumn, int chunkRow) {
+        return chunkTiles[chunkRow * chunkColumns + chunkColumn] != null;
+    }
+
+    /**
+     * Queues the chunks in the given range (clamped to the map) that are not
+     * loaded yet for loading on the SpriteDecodePipeline. Each chunk is queued
+     * at most once; the call itself never does I/O.
+     */
+    public void requestChunks(int firstColumn, int lastColumn, int firstRow, int lastRow) {
+        for (int chunkRow = Math.max(0, firstRow); chunkRow <= Math.min(chunkRows - 1, lastRow); chunkRow++) {
+            for (int chunkColumn = Math.max(0, firstColumn); chunkColumn <= Math.min(chunkColumns - 1, lastColumn); chunkColumn++) {
+                int index = chunkRow * chunkColumns + chunkColumn;
+                synchronized (this) {
+                    if (chunkTiles[index] != null || chunkRequested[index]) {
+                        continue;
+                    }
+                    chunkRequested[index] = true;
+                }
+                final int column = chunkColumn;
+                final int row = chunkRow;
+                SpriteDecodePipeline.submit(SpriteDecodePipeline.PRIORITY_CRITICAL, () -> chunk(column, row));
+            }
+        }
+    }
+
+    public int getTile(int column, int row) {
+        if (column < 0 || column >= columns || row < 0 || row >= rows) {
+            return SpriteManager.NO_SPRITE;
+        }
+        int[] tiles = chunk(column / CHUNK_SIZE, row / CHUNK_SIZE);
+        return tiles[(row % CHUNK_SIZE) * CHUNK_SIZE + column % CHUNK_SIZE];
+    }
+
+    /**
+     * Like getTile(), but never loads: tiles in a chunk that hasn't arrived yet
+     * read as NO_SPRITE. For callers that must not wait on I/O, e.g. collision.
+     */
+    public int getLoadedTile(int column, int row) {
+        if (column < 0 || column >= columns || row < 0 || row >= rows) {
+            return SpriteManager.NO_SPRITE;
+        }
+        int[] tiles;
+        synchronized (this) {
+            tiles = chunkTiles[(row / CHUNK_SIZE) * chunkColumns + column / CHUNK_SIZE];
+        }
+        return tiles != null ? tiles[(row % CHUNK_SIZE) * CHUNK_SIZE + column % CHUNK_SIZE] : SpriteManager.NO_SPRITE;
+    }
+
+    public void setTile(int column, int row, int handle) {
+        if (column < 0 || column >= columns || row < 0 || row >= rows) {
+            return;
+        }
+        int[] tiles = chunk(column / CHUNK_SIZE, row / CHUNK_SIZE);
+        int index = (row % CHUNK_SIZE) * CHUNK_SIZE + column % CHUNK_SIZE;
+        if (tiles[index] != handle) {
+            tiles[index] = handle;
+            synchronized (this) {
+                chunkVersions[(row / CHUNK_SIZE) * chunkColumns + column / CHUNK_SIZE]++;
+            }
+        }
+    }
+
+    public void fillRow(int row, int handle) {
+        for (int column = 0; column < columns; column++) {
+            setTile(column, row, handle);
+        }
+    }
+
+    /** Changes whenever a tile inside the chunk changes. */
+    public synchronized int getChunkVersion(int chunkColumn, int chunkRow) {
+        return chunkVersions[chunkRow * chunkColumns + chunkColumn];
+    }
+
+    /** True if every tile of the chunk is empty, so it needs no bitmap. */
+    public boolean isChunkEmpty(int chunkColumn, int chunkRow) {
+        for (int tile : chunk(chunkColumn, chunkRow)) {
+            if (tile != SpriteManager.NO_SPRITE) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,327 @@
+package com.humangodcvaki.whoi;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Draws a TileMap as pre-rendered chunk bitmaps. Each chunk's tiles are drawn
+ * once into its own bitmap; a frame then draws one bitmap per visible chunk,
+ * and chunks outside the viewport are skipped. Chunks more than one chunk away
+ * from the viewport are released so a long level doesn't keep every chunk.
+ * Every chunk bitmap is a full chunk in size (edge chunks leave the rest
+ * clear), so released bitmaps go to a small free list, capped at the kept
+ * chunk count, and are erased and reused instead of allocated while scrolling.
+ * Tile data is requested PREFETCH_MARGIN_CHUNKS ahead of the viewport and
+ * loaded off this thread; a chunk whose tiles haven't arrived is skipped.
+ * Chunks are rendered on the SpriteDecodePipeline, since fetching their tiles
+ * may decode PNGs or, in HARDWARE mode, copy them back from the GPU; a stale
+ * chunk keeps drawing its old bitmap until the new one is collected.
+ *
+ * Not thread-safe; GameRenderer calls it from inside its synchronized draw.
+ * Pipeline threads only touch their ChunkBuild and the completed queue.
+ */
+class TileMapRenderer {
+    private static final String TAG = "TileMapRenderer";
+
+    // Builds queued per frame, so a fast scroll doesn't flood the pipeline ahead of sprite decodes
+    private static final int MAX_CHUNK_BUILDS_PER_FRAME = 2;
+    private static final int KEEP_MARGIN_CHUNKS = 1;
+    private static final int PREFETCH_MARGIN_CHUNKS = 2;
+
+    /** One chunk render on the pipeline; bitmap goes out as a free bitmap to reuse and comes back rendered. */
+    private static final class ChunkBuild {
+        final TileMap tileMap;
+        final SpriteManager spriteManager;
+        final int index;
+        final int chunkColumn;
+        final int chunkRow;
+        final int version;
+        final int generation;
+        final int invalidation;
+        final float tilePixelSize;
+        Bitmap bitmap;
+
+        ChunkBuild(TileMap tileMap, SpriteManager spriteManager, int index, int chunkColumn, int chunkRow,
+                   int version, int generation, int invalidation, float tilePixelSize, Bitmap bitmap) {
+            this.tileMap = tileMap;
+            this.spriteManager = spriteManager;
+            this.index = index;
+            this.chunkColumn = chunkColumn;
+            this.chunkRow = chunkRow;
+            this.version = version;
+            this.generation = generation;
+            this.invalidation = invalidation;
+            this.tilePixelSize = tilePixelSize;
+            this.bitmap = bitmap;
+        }
+    }
+
+    private final ConcurrentLinkedQueue<ChunkBuild> completedBuilds = new ConcurrentLinkedQueue<>();
+
+    private TileMap tileMap;
+    private SpriteManager spriteManager;
+    private Bitmap[] chunkBitmaps;
+    private int chunkBitmapCount;
+    private final ArrayDeque<Bitmap> freeChunkBitmaps = new ArrayDeque<>();
+    private int keptChunkCount; // Viewport plus KEEP_MARGIN_CHUNKS, as of the last frame
+    private int[] builtVersions;
+    private boolean[] built;
+    private boolean[] building;
+    private int generation; // Bumped when chunk bitmaps are dropped; older builds are discarded
+    private int invalidations; // Bumped by invalidate(); older builds are shown but rebuilt
+    private float tilePixelSize;
+
+    void setTileMap(TileMap tileMap, SpriteManager spriteManager) {
+        release();
+        this.tileMap = tileMap;
+        this.spriteManager = spriteManager;
+        if (tileMap != null) {
+            int chunkCount = tileMap.getChunkColumns() * tileMap.getChunkRows();
+            chunkBitmaps = new Bitmap[chunkCount];
+            builtVersions = new int[chunkCount];
+            built = new boolean[chunkCount];
+            building = new boolean[chunkCount];
+        }
+    }
+
+    boolean hasTileMap() {
+        return tileMap != null && spriteManager != null;
+    }
+
+    /**
+     * Draws the chunks overlapping the viewport. viewLeft/viewTop are the world
+     * position (in pixels) of the canvas origin; tiles are tilePixelSize square.
+     */
+    void draw(Canvas canvas, float viewLeft, float viewTop, int viewWidth, int viewHeight, float tilePixelSize) {
+        if (!hasTileMap() || tilePixelSize <= 0) {
+            return;
+        }
+        if (tilePixelSize != this.tilePixelSize) {
+            recycleChunks(); // Resized; every chunk has to be rendered at the new size
+            this.tilePixelSize = tilePixelSize;
+        }
+        collectBuilds();
+
+        float chunkPixelSize = TileMap.CHUNK_SIZE * tilePixelSize;
+        int firstColumn = Math.max(0, (int) Math.floor(viewLeft / chunkPixelSize));
+        int lastColumn = Math.min(tileMap.getChunkColumns() - 1, (int) Math.floor((viewLeft + viewWidth) / chunkPixelSize));
+        int firstRow = Math.max(0, (int) Math.floor(viewTop / chunkPixelSize));
+        int lastRow = Math.min(tileMap.getChunkRows() - 1, (int) Math.floor((viewTop + viewHeight) / chunkPixelSize));
+
+        tileMap.requestChunks(firstColumn - PREFETCH_MARGIN_CHUNKS, lastColumn + PREFETCH_MARGIN_CHUNKS,
+                firstRow - PREFETCH_MARGIN_CHUNKS, lastRow + PREFETCH_MARGIN_CHUNKS);
+
+        // Release first, so chunks scrolling in can reuse the bitmaps of those scrolling out
+        keptChunkCount = (lastColumn - firstColumn + 1 + 2 * KEEP_MARGIN_CHUNKS)
+                * (lastRow - firstRow + 1 + 2 * KEEP_MARGIN_CHUNKS);
+        releaseChunksOutside(firstColumn - KEEP_MARGIN_CHUNKS, lastColumn + KEEP_MARGIN_CHUNKS,
+                firstRow - KEEP_MARGIN_CHUNKS, lastRow + KEEP_MARGIN_CHUNKS);
+
+        int builds = 0;
+        for (int chunkRow = firstRow; chunkRow <= lastRow; chunkRow++) {
+            for (int chunkColumn = firstColumn; chunkColumn <= lastColumn; chunkColumn++) {
+                int index = chunkRow * tileMap.getChunkColumns() + chunkColumn;
+                if (!tileMap.isChunkLoaded(chunkColumn, chunkRow)) {
+                    continue; // Still being read; drawn once it arrives
+                }
+                if (!isChunkCurrent(index, chunkColumn, chunkRow) && !building[index]
+                        && builds < MAX_CHUNK_BUILDS_PER_FRAME) {
+                    buildChunk(index, chunkColumn, chunkRow);
+                    builds++;
+                }
+
+                Bitmap chunk = chunkBitmaps[index];
+                if (chunk != null) {
+                    canvas.drawBitmap(chunk, chunkColumn * chunkPixelSize - viewLeft,
+                            chunkRow * chunkPixelSize - viewTop, null);
+                }
+            }
+        }
+    }
+
+    private boolean isChunkCurrent(int index, int chunkColumn, int chunkRow) {
+        return built[index] && builtVersions[index] == tileMap.getChunkVersion(chunkColumn, chunkRow);
+    }
+
+    /** Queues the chunk's render; empty chunks are settled here without a bitmap. */
+    private void buildChunk(int index, int chunkColumn, int chunkRow) {
+        int version = tileMap.getChunkVersion(chunkColumn, chunkRow);
+        if (tileMap.isChunkEmpty(chunkColumn, chunkRow)) {
+            releaseChunk(index);
+            built[index] = true;
+            builtVersions[index] = version;
+            return;
+        }
+
+        building[index] = true;
+        ChunkBuild build = new ChunkBuild(tileMap, spriteManager, index, chunkColumn, chunkRow,
+                version, generation, invalidations, tilePixelSize, freeChunkBitmaps.poll());
+        SpriteDecodePipeline.submit(SpriteDecodePipeline.PRIORITY_CRITICAL, () -> {
+            try {
+                renderChunk(build);
+            } finally {
+                completedBuilds.add(build);
+            }
+        });
+    }
+
+    /** Swaps in chunks rendered since the last frame; the bitmaps they replace go to the free list. */
+    private void collectBuilds() {
+        ChunkBuild build;
+        while ((build = completedBuilds.poll()) != null) {
+            if (build.generation != generation) {
+                if (build.bitmap != null) {
+                    build.bitmap.recycle(); // Rendered for a size or map we no longer draw
+                }
+                continue;
+            }
+            building[build.index] = false;
+            if (build.bitmap == null) {
+                continue; // Failed; retried on a later frame
+            }
+            releaseChunk(build.index);
+            chunkBitmaps[build.index] = build.bitmap;
+            chunkBitmapCount++;
+            builtVersions[build.index] = build.version;
+            built[build.index] = build.invalidation == invalidations;
+        }
+    }
+
+    /** Runs on the pipeline; leaves build.bitmap null if the chunk could not be rendered. */
+    private static void renderChunk(ChunkBuild build) {
+        TileMap tileMap = build.tileMap;
+        float tilePixelSize = build.tilePixelSize;
+        Bitmap chunk = build.bitmap;
+        build.bitmap = null;
+        if (chunk == null) {
+            int size = (int) Math.ceil(TileMap.CHUNK_SIZE * tilePixelSize);
+            try {
+                chunk = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+            } catch (OutOfMemoryError e) {
+                Log.w(TAG, "No memory for tile chunk " + build.chunkColumn + "," + build.chunkRow);
+                return;
+            }
+        } else {
+            chunk.eraseColor(0);
+        }
+
+        // Edge chunks only cover the tiles the map actually has
+        int firstTileColumn = build.chunkColumn * TileMap.CHUNK_SIZE;
+        int firstTileRow = build.chunkRow * TileMap.CHUNK_SIZE;
+        int tileColumns = Math.min(TileMap.CHUNK_SIZE, tileMap.getColumns() - firstTileColumn);
+        int tileRows = Math.min(TileMap.CHUNK_SIZE, tileMap.getRows() - firstTileRow);
+
+        // Chunk bitmaps are software canvases, so tiles must be software bitmaps; one per handle
+        SpriteManager spriteManager = build.spriteManager;
+        int[] tileHandles = new int[TileMap.CHUNK_SIZE * TileMap.CHUNK_SIZE];
+        Bitmap[] tiles = new Bitmap[tileHandles.length];
+        int tileCount = 0;
+        Paint tilePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        RectF tileRect = new RectF();
+        Canvas chunkCanvas = new Canvas(chunk);
+        spriteManager.beginOffFrameUse(); // Keeps tiles out of the reuse pool while we read them
+        try {
+            for (int row = 0; row < tileRows; row++) {
+                for (int column = 0; column < tileColumns; column++) {
+                    int handle = tileMap.getTile(firstTileColumn + column, firstTileRow + row);
+                    if (handle == SpriteManager.NO_SPRITE) {
+                        continue;
+                    }
+                    Bitmap tile = null;
+                    for (int i = 0; i < tileCount; i++) {
+                        if (tileHandles[i] == handle) {
+                            tile = tiles[i];
+                            break;
+                        }
+                    }
+                    if (tile == null) {
+                        tile = spriteManager.getSoftwareSprite(handle);
+                        tileHandles[tileCount] = handle;
+                        tiles[tileCount++] = tile;
+                    }
+                    if (tile == null || tile.isRecycled()) {
+                        continue;
+                    }
+                    tileRect.set(column * tilePixelSize, row * tilePixelSize,
+                            (column + 1) * tilePixelSize, (row + 1) * tilePixelSize);
+                    chunkCanvas.drawBitmap(tile, null, tileRect, tilePaint);
+                }
+            }
+        } finally {
+            for (int i = 0; i < tileCount; i++) {
+                spriteManager.releaseSoftwareSprite(tiles[i]);
+            }
+            spriteManager.endOffFrameUse();
+        }
+        build.bitmap = chunk;
+    }
+
+    private void releaseChunksOutside(int firstColumn, int lastColumn, int firstRow, int lastRow) {
+        for (int index = 0; index < chunkBitmaps.length; index++) {
+            int chunkColumn = index % tileMap.getChunkColumns();
+            int chunkRow = index / tileMap.getChunkColumns();
+            if (chunkColumn < firstColumn || chunkColumn > lastColumn || chunkRow < firstRow || chunkRow > lastRow) {
+                if (chunkBitmaps[index] != null) {
+                    releaseChunk(index);
+                    built[index] = false;
+                }
+            }
+        }
+    }
+
+    /** Moves a chunk's bitmap to the free list, or recycles it if that already covers the kept chunks. */
+    private void releaseChunk(int index) {
+        Bitmap chunk = chunkBitmaps[index];
+        if (chunk == null) {
+            return;
+        }
+        chunkBitmaps[index] = null;
+        chunkBitmapCount--;
+        if (chunkBitmapCount + freeChunkBitmaps.size() < keptChunkCount) {
+            freeChunkBitmaps.add(chunk);
+        } else {
+            chunk.recycle();
+        }
+    }
+
+    private void recycleChunks() {
+        if (chunkBitmaps == null) {
+            return;
+        }
+        for (int index = 0; index < chunkBitmaps.length; index++) {
+            if (chunkBitmaps[index] != null) {
+                chunkBitmaps[index].recycle();
+                chunkBitmaps[index] = null;
+            }
+            built[index] = false;
+            building[index] = false;
+        }
+        chunkBitmapCount = 0;
+        generation++; // Builds still on the pipeline are for the old size or map
+        for (Bitmap chunk : freeChunkBitmaps) {
+            chunk.recycle();
+        }
+        freeChunkBitmaps.clear();
+    }
+
+    /** Marks every chunk stale, e.g. once tile sprites finished decoding. */
+    void invalidate() {
+        if (built != null) {
+            Arrays.fill(built, false);
+        }
+        invalidations++;
+    }
+
+    void release() {
+        recycleChunks();
+        collectBuilds(); // Recycles finished builds; ones still running are dropped by the next draw
+        tilePixelSize = 0;
+    }
+}
@@ -0,0 +1,149 @@
+package com.humangodcvaki.whoi;
+
+import java.util.Arrays;
+
+/**
+ * Decides how often each entity in an EntityStore is updated, by its distance
+ * from the camera's view (in tiles):
+ *
+ * - TIER_VISIBLE: in view, or within VISIBLE_MARGIN of it; updated every step.
+ * - TIER_OFFSCREEN: within WAKE_DISTANCE of the view; updated every
+ *   OFFSCREEN_INTERVAL steps with the time it missed, so it keeps pace at a
+ *   fraction of the cost. Ids are staggered so these updates spread over steps.
+ * - TIER_ASLEEP: further away; not updated at all until the view comes within
+ *   WAKE_DISTANCE, when it carries on from where it stopped.
+ *
+ * Tiers are reassigned every step, which is a few comparisons per entity.
+ * Per-tier entity and update counts are kept for profiling. Allocates only
+ * when the store has grown past the scheduler's arrays.
+ */
+public class UpdateScheduler {
+    public static final int TIER_VISIBLE = 0;
+    public static final int TIER_OFFSCREEN = 1;
+    public static final int TIER_ASLEEP = 2;
+    private static final int TIER_COUNT = 3;
+    private static final String[] TIER_NAMES = {"visible", "offscreen", "asleep"};
+
+    public static final float VISIBLE_MARGIN = 1f;   // Tiles, so entities walking in are already animated
+    public static final float WAKE_DISTANCE = 16f;   // Tiles beyond the view
+    public static final int OFFSCREEN_INTERVAL = 4;  // Steps between updates
+
+    private final EntityStore entities;
+    private float viewLeft;
+    private float viewTop;
+    private float viewRight;
+    private float viewBottom;
+    private boolean hasView = false;
+
+    private int[] tiers = new int[0];
+    private float[] pendingSeconds = new float[0]; // Time since an off-screen entity's last update
+    private long stepCount = 0;
+
+    private final int[] entityCounts = new int[TIER_COUNT];  // In the last step
+    private final long[] updateCounts = new long[TIER_COUNT]; // Since the last resetCounts()
+    private long countedSteps = 0;
+
+    public UpdateScheduler(EntityStore entities) {
+        this.entities = entities;
+    }
+
+    /** The camera's view, in tiles. Until this is called everything is updated every step. */
+    public void setView(float left, float top, float right, float bottom) {
+        viewLeft = left;
+        viewTop = top;
+        viewRight = right;
+        viewBottom = bottom;
+        hasView = true;
+    }
+
+    /** Updates the entities due this step, by dt seconds plus any time they missed. */
+    public void update(float dt) {
+        int limit = entities.getIdLimit();
+        if (tiers.length < limit) {
+            tiers = Arrays.copyOf(tiers, Math.max(limit, tiers.length * 2));
+            pendingSeconds = Arrays.copyOf(pendingSeconds, tiers.length);
+        }
+        Arrays.fill(entityCounts, 0);
+        countedSteps++;
+        stepCount++;
+
+        for (int id = 0; id < limit; id++) {
+            if (!entities.isAlive(id)) {
+                pendingSeconds[id] = 0f; // The id may be reused by a new entity
+                continue;
+            }
+            int tier = classify(entities.getX(id), entities.getY(id));
+            tiers[id] = tier;
+            entityCounts[tier]++;
+
+            switch (tier) {
+                case TIER_VISIBLE:
+                    entities.update(id, pendingSeconds[id] + dt);
+                    pendingSeconds[id] = 0f;
+                    updateCounts[TIER_VISIBLE]++;
+                    break;
+                case TIER_OFFSCREEN:
+                    pendingSeconds[id] += dt;
+                    if ((stepCount + id) % OFFSCREEN_INTERVAL == 0) {
+                        entities.update(id, pendingSeconds[id]);
+                        pendingSeconds[id] = 0f;
+                        updateCounts[TIER_OFFSCREEN]++;
+                    }
+                    break;
+                default:
+                    pendingSeconds[id] = 0f; // Asleep; time passing isn't caught up on waking
+                    break;
+            }
+        }
+    }
+
+    private int classify(float x, float y) {
+        if (!hasView) {
+            return TIER_VISIBLE;
+        }
+        float distanceX = Math.max(0, Math.max(viewLeft - x, x - viewRight));
+        float distanceY = Math.max(0, Math.max(viewTop - y, y - viewBottom));
+        float distance = Math.max(distanceX, distanceY);
+        if (distance <= VISIBLE_MARGIN) {
+            return TIER_VISIBLE;
+        }
+        return distance <= WAKE_DISTANCE ? TIER_OFFSCREEN : TIER_ASLEEP;
+    }
+
+    /** The entity's tier in the last step. */
+    public int getTier(int id) {
+        return tiers[id];
+    }
+
+    /** Live entities in a tier in the last step. */
+    public int getEntityCount(int tier) {
+        return entityCounts[tier];
+    }
+
+    /** EntityStore updates made for a tier since the last resetCounts(). */
+    public long getUpdateCount(int tier) {
+        return updateCounts[tier];
+    }
+
+    /** Steps since the last resetCounts(). */
+    public long getCountedSteps() {
+        return countedSteps;
+    }
+
+    public void resetCounts() {
+        Arrays.fill(updateCounts, 0);
+        countedSteps = 0;
+    }
+
+    /** e.g. "visible 3 (180 updates), offscreen 5 (75 updates), asleep 12 (0 updates) over 60 steps" */
+    public String describeCounts() {
+        StringBuilder text = new StringBuilder();
+        for (int tier = 0; tier < TIER_COUNT; tier++) {
+            if (tier > 0) {
+                text.append(", ");
+            }
+            text.append(String.format("%s %d (%d updates)", TIER_NAMES[tier], entityCounts[tier], updateCounts[tier]));
+        }
+        return text.append(String.format(" over %d steps", countedSteps)).toString();
+    }
+}
@@ -0,0 +1,150 @@
+package com.humangodcvaki.whoi;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local tests for CollisionWorld's swept tile movement and body grid.
+ */
+public class CollisionWorldTest {
+    private static final float DELTA = 1e-4f;
+
+    // 20x10 level: floor on row 8, a one-tile-thick platform on row 4 over
+    // columns 5-7 and a wall in column 12 from row 5 down
+    private static final String[] LEVEL = {
+            "....................",
+            "....................",
+            "....................",
+            "....................",
+            ".....###............",
+            "............#.......",
+            "............#.......",
+            "............#.......",
+            "####################",
+            "####################",
+    };
+
+    private CollisionWorld world;
+    private final CollisionWorld.MoveResult result = new CollisionWorld.MoveResult();
+
+    @Before
+    public void setUp() {
+        world = new CollisionWorld(20, 10, (column, row) -> LEVEL[row].charAt(column) == '#');
+    }
+
+    @Test
+    public void fall_landsOnFloor() {
+        world.move(2.5f, 6f, 0.8f, 1.6f, 0, 2.5f, result);
+        assertTrue(result.landed);
+        assertEquals(8f, result.y, DELTA);
+        assertTrue(world.isOnGround(result.x, result.y, 0.8f));
+    }
+
+    @Test
+    public void fastFall_doesNotTunnelThroughThinPlatform() {
+        // Far more than a tile in one move, starting above the platform
+        world.move(6f, 2f, 0.8f, 1.6f, 0, 5f, result);
+        assertTrue(result.landed);
+        assertEquals(4f, result.y, DELTA);
+    }
+
+    @Test
+    public void jump_stopsAtCeiling() {
+        // Head at 5.4 under the platform's bottom edge at 5
+        world.move(6f, 7f, 0.8f, 1.6f, 0, -3f, result);
+        assertTrue(result.hitCeiling);
+        assertEquals(6.6f, result.y, DELTA);
+    }
+
+    @Test
+    public void walk_stopsAtWall() {
+        world.move(10f, 8f, 0.8f, 1.6f, 5f, 0, result);
+        assertTrue(result.hitWall);
+        assertEquals(11.6f, result.x, DELTA);
+
+        // Already touching it, so no further
+        world.move(result.x, result.y, 0.8f, 1.6f, 0.5f, 0, result);
+        assertTrue(result.hitWall);
+        assertEquals(11.6f, result.x, DELTA);
+    }
+
+    @Test
+    public void walk_alongFloorIsNotBlocked() {
+        world.move(2f, 8f, 0.8f, 1.6f, 3f, 0, result);
+        assertFalse(result.hitWall);
+        assertEquals(5f, result.x, DELTA);
+        assertEquals(8f, result.y, DELTA);
+    }
+
+    @Test
+    public void levelEdges_areSolid() {
+        world.move(1f, 8f, 0.8f, 1.6f, -5f, 0, result);
+        assertTrue(result.hitWall);
+        assertEquals(0.4f, result.x, DELTA);
+        assertTrue(world.isSolid(-1, 3));
+        assertTrue(world.isSolid(20, 3));
+        assertFalse("Open above the level", world.isSolid(3, -2));
+    }
+
+    @Test
+    public void query_findsOverlappingBodiesOnly() {
+        int coin = world.addBody(CollisionWorld.KIND_COLLECTIBLE, 7, 3f, 8f, 0.6f, 0.6f);
+        world.addBody(CollisionWorld.KIND_ENEMY, 1, 9f, 8f, 0.9f, 0.6f);
+
+        int[] out = new int[4];
+        assertEquals(1, world.query(2.6f, 6.4f, 3.4f, 8f, out));
+        assertEquals(coin, out[0]);
+        assertEquals(CollisionWorld.KIND_COLLECTIBLE, world.getKind(coin));
+        assertEquals(7, world.getTag(coin));
+
+        assertEquals(0, world.query(4f, 6f, 8f, 8f, out));
+    }
+
+    @Test
+    public void moveBody_followsAcrossCells() {
+        int enemy = world.addBody(CollisionWorld.KIND_ENEMY, 0, 1f, 8f, 0.9f, 0.6f);
+        world.moveBody(enemy, 17f, 8f);
+
+        int[] out = new int[4];
+        assertEquals(0, world.query(0f, 6f, 3f, 8f, out));
+        assertEquals(1, world.query(16f, 6f, 18f, 8f, out));
+        assertEquals(enemy, out[0]);
+    }
+
+    @Test
+    public void removeBody_freesIdForReuse() {
+        int first = world.addBody(CollisionWorld.KIND_COLLECTIBLE, 0, 3f, 8f, 0.6f, 0.6f);
+        world.removeBody(first);
+        assertEquals(0, world.getBodyCount());
+        assertEquals(0, world.query(2f, 6f, 4f, 8f, new int[4]));
+
+        int second = world.addBody(CollisionWorld.KIND_COLLECTIBLE, 0, 5f, 8f, 0.6f, 0.6f);
+        assertEquals(first, second);
+    }
+
+    @Test
+    public void addBody_growsPastInitialCapacity() {
+        CollisionWorld small = new CollisionWorld(20, 10, null, 2);
+        for (int i = 0; i < 50; i++) {
+            small.addBody(CollisionWorld.KIND_COLLECTIBLE, i, (i % 20) + 0.5f, 8f, 0.6f, 0.6f);
+        }
+        assertEquals(50, small.getBodyCount());
+        assertEquals(3, small.query(4f, 6f, 5f, 8.5f, new int[8])); // Columns 4.5 at i = 4, 24, 44
+    }
+
+    @Test
+    public void queryCost_dependsOnNearbyBodiesNotLevelSize() {
+        CollisionWorld wide = new CollisionWorld(4000, 10, null, 4096);
+        for (int i = 0; i < 4000; i++) {
+            wide.addBody(CollisionWorld.KIND_COLLECTIBLE, i, i + 0.5f, 8f, 0.6f, 0.6f);
+        }
+
+        int[] out = new int[16];
+        assertEquals(1, wide.query(2000.2f, 7f, 2000.8f, 8f, out));
+        // Three grid columns of CELL_SIZE bodies each at most, out of 4000
+        assertTrue("Tested " + wide.getLastQueryTests() + " bodies",
+                wide.getLastQueryTests() <= 3 * CollisionWorld.CELL_SIZE);
+    }
+}
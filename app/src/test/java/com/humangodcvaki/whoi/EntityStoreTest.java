@@ -0,0 +1,155 @@
+package com.humangodcvaki.whoi;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local tests for EntityStore's recycling, patrols and render copies.
+ */
+public class EntityStoreTest {
+    private static final float STEP = 1f / 60f;
+    private static final float DELTA = 1e-4f;
+
+    private CollisionWorld world;
+    private EntityStore entities;
+    private int slime;
+    private int coin;
+
+    @Before
+    public void setUp() {
+        world = new CollisionWorld(20, 10, (column, row) -> row >= 8);
+        entities = new EntityStore(4, world);
+        slime = entities.registerAppearance("slime_normal_rest");
+        coin = entities.registerAppearance("coin_gold");
+    }
+
+    private int spawnCoin(float x) {
+        return entities.spawn(EntityStore.TYPE_COLLECTIBLE, coin, x, 8f, 0f, x, x,
+                CollisionWorld.KIND_COLLECTIBLE, 0.6f, 0.6f);
+    }
+
+    private int spawnSlime(float x, float velocityX) {
+        return entities.spawn(EntityStore.TYPE_ENEMY, slime, x, 8f, velocityX, x - 2f, x + 2f,
+                CollisionWorld.KIND_ENEMY, 0.9f, 0.6f);
+    }
+
+    @Test
+    public void registerAppearance_returnsSameIndexForSameName() {
+        assertEquals(slime, entities.registerAppearance("slime_normal_rest"));
+        assertEquals(2, entities.getAppearanceCount());
+        assertEquals("coin_gold", entities.getAppearanceName(coin));
+    }
+
+    @Test
+    public void spawn_addsBodyTaggedWithId() {
+        int id = spawnCoin(3f);
+        int body = entities.getBody(id);
+        assertNotEquals(EntityStore.NO_BODY, body);
+        assertEquals(CollisionWorld.KIND_COLLECTIBLE, world.getKind(body));
+        assertEquals(id, world.getTag(body));
+    }
+
+    @Test
+    public void despawn_recyclesIdAndRemovesBody() {
+        int first = spawnCoin(3f);
+        spawnCoin(5f);
+        entities.despawn(first);
+        assertFalse(entities.isAlive(first));
+        assertEquals(1, entities.getCount());
+        assertEquals(1, world.getBodyCount());
+
+        int reused = spawnSlime(7f, 1f);
+        assertEquals(first, reused);
+        assertEquals(EntityStore.TYPE_ENEMY, entities.getType(reused));
+        assertEquals(2, entities.getIdLimit());
+    }
+
+    @Test
+    public void detachBody_leavesWorldAlone() {
+        int id = spawnCoin(3f);
+        world.removeBody(entities.getBody(id)); // As GameSimulation does on collecting
+        entities.detachBody(id);
+        entities.despawn(id);
+        assertEquals(0, world.getBodyCount());
+        assertEquals(0, entities.getCount());
+    }
+
+    @Test
+    public void update_patrolsBetweenBoundsAndMovesBody() {
+        int id = spawnSlime(10f, -1f);
+        for (int i = 0; i < 60 * 3; i++) {
+            entities.update(STEP);
+        }
+        // Two seconds to the left bound, then one back
+        assertEquals(9f, entities.getX(id), 0.05f);
+        assertTrue(entities.getVelocityX(id) > 0);
+        assertEquals(3f, entities.getAnimationTime(id), 0.01f);
+
+        int[] out = new int[4];
+        assertEquals(1, world.query(8.6f, 7f, 9.4f, 8f, out));
+        assertEquals(entities.getBody(id), out[0]);
+    }
+
+    @Test
+    public void update_leavesStillEntitiesInPlace() {
+        int id = spawnCoin(4f);
+        entities.update(1f);
+        assertEquals(4f, entities.getX(id), DELTA);
+        assertEquals(1f, entities.getAnimationTime(id), DELTA);
+    }
+
+    @Test
+    public void spawn_growsPastInitialCapacity() {
+        for (int i = 0; i < 100; i++) {
+            spawnCoin((i % 18) + 1f);
+        }
+        assertEquals(100, entities.getCount());
+        assertEquals(100, world.getBodyCount());
+    }
+
+    @Test
+    public void copyFrom_copiesEntitiesWithoutBodies() {
+        int a = spawnSlime(10f, 1f);
+        int b = spawnCoin(4f);
+        entities.update(0.5f);
+        entities.despawn(b);
+
+        EntityStore copy = new EntityStore(1);
+        copy.copyFrom(entities);
+        assertEquals(1, copy.getCount());
+        assertEquals(entities.getIdLimit(), copy.getIdLimit());
+        assertTrue(copy.isAlive(a));
+        assertFalse(copy.isAlive(b));
+        assertEquals(10.5f, copy.getX(a), DELTA);
+        assertEquals(EntityStore.NO_BODY, copy.getBody(a));
+        assertEquals("slime_normal_rest", copy.getAppearanceName(copy.getAppearance(a)));
+
+        // Shrinking the source clears the copy's stale ids
+        entities.despawn(a);
+        copy.copyFrom(new EntityStore(1));
+        assertEquals(0, copy.getIdLimit());
+        assertFalse(copy.isAlive(a));
+    }
+
+    @Test
+    public void update_keepsHundredsOfEntitiesOnPatrol() {
+        EntityStore many = new EntityStore(1024, new CollisionWorld(400, 10, null, 1024));
+        int appearance = many.registerAppearance("slime_normal_rest");
+        for (int i = 0; i < 1000; i++) {
+            float x = 2f + (i % 396);
+            many.spawn(EntityStore.TYPE_ENEMY, appearance, x, 8f, 1f, x - 2f, x + 2f,
+                    CollisionWorld.KIND_ENEMY, 0.9f, 0.6f);
+        }
+
+        for (int i = 0; i < 6000; i++) {
+            many.update(STEP);
+        }
+        for (int id = 0; id < 1000; id++) {
+            float spawnX = 2f + (id % 396);
+            assertTrue(many.getX(id) >= spawnX - 2f && many.getX(id) <= spawnX + 2f);
+            assertEquals(100f, many.getAnimationTime(id), 0.1f);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.humangodcvaki.whoi;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local tests for GameSimulation, stepping it at the game loop's fixed rate.
+ */
+public class GameSimulationTest {
+    private static final float STEP = 1f / 60f;
+    private static final int COLUMNS = 60;
+    private static final float GROUND_Y = 8f;
+    private static final float DELTA = 1e-4f;
+
+    private GameSimulation simulation;
+    private GameSimulation.Input input;
+
+    @Before
+    public void setUp() {
+        simulation = new GameSimulation(COLUMNS, GROUND_Y, 57f, GROUND_Y);
+        simulation.reset(2f, GROUND_Y);
+        input = new GameSimulation.Input();
+    }
+
+    private void run(int steps) {
+        for (int i = 0; i < steps; i++) {
+            simulation.step(STEP, input);
+        }
+    }
+
+    @Test
+    public void idle_doesNotMove() {
+        assertFalse(simulation.step(STEP, input));
+        assertEquals(2f, simulation.getState().playerX, DELTA);
+        assertEquals(GROUND_Y, simulation.getState().playerY, DELTA);
+    }
+
+    @Test
+    public void walking_coversPlayerSpeedPerSecond() {
+        input.right = true;
+        run(60);
+        assertEquals(2f + GameSimulation.PLAYER_SPEED, simulation.getState().playerX, 0.01f);
+
+        input.right = false;
+        input.left = true;
+        run(60);
+        assertEquals(2f, simulation.getState().playerX, 0.01f);
+    }
+
+    @Test
+    public void walking_staysInsideLevel() {
+        input.left = true;
+        run(120);
+        assertEquals(GameSimulation.EDGE_MARGIN, simulation.getState().playerX, DELTA);
+        assertFalse(simulation.step(STEP, input));
+
+        input.left = false;
+        input.right = true;
+        run(60 * 30);
+        assertEquals(COLUMNS - 1 - GameSimulation.EDGE_MARGIN, simulation.getState().playerX, DELTA);
+    }
+
+    @Test
+    public void jump_risesAndLands() {
+        input.jump = true;
+        assertTrue(simulation.step(STEP, input));
+        assertFalse("Jump request is consumed", input.jump);
+        assertTrue(simulation.getState().jumping);
+
+        float highest = GROUND_Y;
+        for (int i = 0; i < 120 && simulation.getState().jumping; i++) {
+            simulation.step(STEP, input);
+            highest = Math.min(highest, simulation.getState().playerY);
+        }
+
+        // Peak is v^2 / 2g above the ground, give or take one step's travel
+        float expectedPeak = GameSimulation.JUMP_VELOCITY * GameSimulation.JUMP_VELOCITY / (2 * GameSimulation.GRAVITY);
+        assertEquals(GROUND_Y - expectedPeak, highest, 0.15f);
+        assertFalse(simulation.getState().jumping);
+        assertEquals(GROUND_Y, simulation.getState().playerY, DELTA);
+        assertEquals(0f, simulation.getState().velocityY, DELTA);
+    }
+
+    @Test
+    public void jump_ignoredInTheAir() {
+        input.jump = true;
+        run(5);
+        float velocity = simulation.getState().velocityY;
+
+        input.jump = true;
+        simulation.step(STEP, input);
+        assertFalse(input.jump);
+        assertEquals(velocity + GameSimulation.GRAVITY * STEP, simulation.getState().velocityY, DELTA);
+    }
+
+    @Test
+    public void objective_reachedNearGoalAndLatched() {
+        input.right = true;
+        run(60 * 15);
+        assertFalse(simulation.getState().objectiveReached);
+
+        run(60 * 5);
+        assertTrue(simulation.getState().objectiveReached);
+
+        input.right = false;
+        input.left = true;
+        run(60 * 5);
+        assertTrue("Stays reached after walking away", simulation.getState().objectiveReached);
+    }
+
+    @Test
+    public void collectible_collectedOnceAndRemoved() {
+        CollisionWorld world = simulation.getWorld();
+        world.addBody(CollisionWorld.KIND_COLLECTIBLE, 3, 4f, GROUND_Y,
+                GameSimulation.COLLECTIBLE_SIZE, GameSimulation.COLLECTIBLE_SIZE);
+        int[] collected = new int[1];
+        int[] collectedTag = {-1};
+        simulation.setListener(new GameSimulation.Listener() {
+            @Override
+            public void onCollect(int bodyId, int tag) {
+                collected[0]++;
+                collectedTag[0] = tag;
+            }
+
+            @Override
+            public void onEnemyContact(int bodyId, int tag) {
+                fail("No enemies here");
+            }
+        });
+
+        input.right = true;
+        run(120);
+        assertEquals(1, collected[0]);
+        assertEquals(3, collectedTag[0]);
+        assertEquals("Only the objective is left", 1, world.getBodyCount());
+    }
+
+    @Test
+    public void enemy_contactReportedOncePerTouch() {
+        simulation.getWorld().addBody(CollisionWorld.KIND_ENEMY, 0, 4f, GROUND_Y,
+                GameSimulation.ENEMY_WIDTH, GameSimulation.ENEMY_HEIGHT);
+        int[] contacts = new int[1];
+        simulation.setListener(new GameSimulation.Listener() {
+            @Override
+            public void onCollect(int bodyId, int tag) {
+            }
+
+            @Override
+            public void onEnemyContact(int bodyId, int tag) {
+                contacts[0]++;
+            }
+        });
+
+        // Walk through the enemy, then back through it
+        input.right = true;
+        run(90);
+        assertEquals(1, contacts[0]);
+        assertFalse(simulation.getState().touchingEnemy);
+
+        input.right = false;
+        input.left = true;
+        run(90);
+        assertEquals(2, contacts[0]);
+    }
+
+    @Test
+    public void walkingOffLedge_fallsAndLands() {
+        // Ground on row 8 for columns 0-4, then a pit down to row 9
+        CollisionWorld world = new CollisionWorld(20, 10,
+                (column, row) -> row == 9 || (row == 8 && column < 5));
+        GameSimulation ledge = new GameSimulation(world);
+        ledge.reset(3f, GROUND_Y);
+        assertFalse(ledge.getState().jumping);
+
+        input.right = true;
+        for (int i = 0; i < 60; i++) {
+            ledge.step(STEP, input);
+        }
+        assertFalse(ledge.getState().jumping);
+        assertEquals(9f, ledge.getState().playerY, DELTA);
+    }
+
+    @Test
+    public void sameInputs_sameState() {
+        GameSimulation other = new GameSimulation(COLUMNS, GROUND_Y, 57f, GROUND_Y);
+        other.reset(2f, GROUND_Y);
+        GameSimulation.Input otherInput = new GameSimulation.Input();
+
+        for (int i = 0; i < 10_000; i++) {
+            boolean right = (i / 90) % 3 != 0;
+            boolean left = !right && i % 2 == 0;
+            boolean jump = i % 47 == 0;
+            input.right = otherInput.right = right;
+            input.left = otherInput.left = left;
+            input.jump = otherInput.jump = jump;
+            simulation.step(STEP, input);
+            other.step(STEP, otherInput);
+        }
+
+        GameSimulation.State a = simulation.getState();
+        GameSimulation.State b = other.getState();
+        assertEquals(Float.floatToIntBits(a.playerX), Float.floatToIntBits(b.playerX));
+        assertEquals(Float.floatToIntBits(a.playerY), Float.floatToIntBits(b.playerY));
+        assertEquals(Float.floatToIntBits(a.velocityY), Float.floatToIntBits(b.velocityY));
+        assertEquals(a.jumping, b.jumping);
+        assertEquals(a.objectiveReached, b.objectiveReached);
+    }
+
+    @Test
+    public void step_longRunsStayInWorldAndRepeat() {
+        int ticks = 100_000;
+        GameSimulation.State start = new GameSimulation.State();
+        start.copyFrom(simulation.getState());
+
+        stepBackAndForth(ticks);
+        GameSimulation.State first = new GameSimulation.State();
+        first.copyFrom(simulation.getState());
+        assertTrue(first.playerX >= 0f && first.playerX <= COLUMNS);
+        assertTrue(first.playerY <= GROUND_Y + DELTA);
+
+        // Same inputs from the same start, same result
+        simulation.reset(start.playerX, start.playerY);
+        input = new GameSimulation.Input();
+        stepBackAndForth(ticks);
+        assertEquals(first.playerX, simulation.getState().playerX, 0f);
+        assertEquals(first.playerY, simulation.getState().playerY, 0f);
+    }
+
+    private void stepBackAndForth(int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            input.right = (i / 600) % 2 == 0;
+            input.left = !input.right;
+            input.jump = i % 60 == 0;
+            simulation.step(STEP, input);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.humangodcvaki.whoi;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local tests for ParticleSystem's recycling and budget; drawing needs a device.
+ */
+public class ParticleSystemTest {
+    private static final float STEP = 1f / 60f;
+    private static final long PERIOD = 16_666_667L; // 60 Hz refresh
+
+    private ParticleSystem particles;
+
+    @Before
+    public void setUp() {
+        particles = new ParticleSystem();
+    }
+
+    @Test
+    public void update_removesExpiredParticles() {
+        particles.emit(0f, 0f, 0f, 0f, 0.5f, 0.1f, 0f, 0xFFFFFFFF);
+        particles.emit(0f, 0f, 0f, 0f, 1.5f, 0.1f, 0f, 0xFFFFFFFF);
+        particles.emit(0f, 0f, 0f, 0f, 0.5f, 0.1f, 0f, 0xFFFFFFFF);
+
+        for (int i = 0; i < 60; i++) {
+            particles.update(STEP);
+        }
+        assertEquals(1, particles.getCount());
+
+        for (int i = 0; i < 60; i++) {
+            particles.update(STEP);
+        }
+        assertEquals(0, particles.getCount());
+    }
+
+    @Test
+    public void emit_stopsAtBudget() {
+        int emitted = particles.burst(5f, 5f, ParticleSystem.CAPACITY + 10, 2f, 1f, 0.1f, 0f, 0xFFFFFFFF);
+        assertEquals(ParticleSystem.CAPACITY, emitted);
+        assertEquals(ParticleSystem.CAPACITY, particles.getCount());
+        assertFalse(particles.emit(0f, 0f, 0f, 0f, 1f, 0.1f, 0f, 0xFFFFFFFF));
+        assertTrue(particles.getDroppedCount() > 0);
+
+        // Expired slots are reused
+        for (int i = 0; i < 120; i++) {
+            particles.update(STEP);
+        }
+        assertEquals(0, particles.getCount());
+        assertTrue(particles.emit(0f, 0f, 0f, 0f, 1f, 0.1f, 0f, 0xFFFFFFFF));
+    }
+
+    @Test
+    public void adaptBudget_shrinksOnSlowFramesAndRecovers() {
+        for (int i = 0; i < 100; i++) {
+            particles.adaptBudget(PERIOD * 3, PERIOD);
+        }
+        assertEquals(ParticleSystem.MIN_BUDGET, particles.getBudget());
+        assertEquals(ParticleSystem.MIN_BUDGET,
+                particles.burst(0f, 0f, 100, 2f, 1f, 0.1f, 0f, 0xFFFFFFFF));
+
+        // Frames between the thresholds leave it alone
+        particles.adaptBudget(PERIOD * 13 / 10, PERIOD);
+        assertEquals(ParticleSystem.MIN_BUDGET, particles.getBudget());
+
+        for (int i = 0; i < 1000; i++) {
+            particles.adaptBudget(PERIOD, PERIOD);
+        }
+        assertEquals(ParticleSystem.CAPACITY, particles.getBudget());
+    }
+
+    @Test
+    public void adaptBudget_ignoresASingleSlowFrame() {
+        for (int i = 0; i < 10; i++) {
+            particles.adaptBudget(PERIOD * 3, PERIOD);
+            particles.adaptBudget(PERIOD, PERIOD);
+        }
+        assertEquals(ParticleSystem.CAPACITY, particles.getBudget());
+
+        for (int i = 0; i < ParticleSystem.SLOW_FRAMES_TO_SHRINK; i++) {
+            particles.adaptBudget(PERIOD * 3, PERIOD);
+        }
+        assertEquals(ParticleSystem.CAPACITY * 3 / 4, particles.getBudget());
+    }
+
+    @Test
+    public void adaptBudget_cullsParticlesOverTheNewBudget() {
+        particles.burst(0f, 0f, ParticleSystem.CAPACITY, 2f, 1f, 0.1f, 0f, 0xFFFFFFFF);
+        assertEquals(ParticleSystem.CAPACITY, particles.getCount());
+
+        for (int i = 0; i < ParticleSystem.SLOW_FRAMES_TO_SHRINK; i++) {
+            particles.adaptBudget(PERIOD * 3, PERIOD);
+        }
+        assertEquals(particles.getBudget(), particles.getCount());
+    }
+
+    @Test
+    public void gravity_pullsParticlesDown() {
+        particles.emit(0f, 0f, 0f, 0f, 10f, 0.1f, 10f, 0xFFFFFFFF);
+        particles.emit(0f, 0f, 0f, 0f, 10f, 0.1f, -10f, 0xFFFFFFFF);
+        particles.update(0.5f);
+        assertEquals(2, particles.getCount());
+        // Semi-implicit Euler: one step of 0.5s at 10 tiles/s^2 moves 2.5 tiles
+        assertEquals(2.5f, particles.getY(0), 1e-4f);
+        assertEquals(-2.5f, particles.getY(1), 1e-4f);
+    }
+
+    @Test
+    public void sameEffects_samePositions() {
+        ParticleSystem other = new ParticleSystem();
+        particles.burst(3f, 4f, 20, 5f, 1f, 0.1f, 6f, 0xFFFFFFFF);
+        other.burst(3f, 4f, 20, 5f, 1f, 0.1f, 6f, 0xFFFFFFFF);
+        particles.update(0.3f);
+        other.update(0.3f);
+        for (int i = 0; i < particles.getCount(); i++) {
+            assertEquals(particles.getX(i), other.getX(i), 0f);
+            assertEquals(particles.getY(i), other.getY(i), 0f);
+        }
+    }
+}
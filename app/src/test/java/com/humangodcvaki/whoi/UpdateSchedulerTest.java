@@ -0,0 +1,129 @@
+package com.humangodcvaki.whoi;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local tests for UpdateScheduler's tiers, with the view over columns 0-20.
+ */
+public class UpdateSchedulerTest {
+    private static final float STEP = 1f / 60f;
+    private static final float DELTA = 1e-4f;
+
+    private EntityStore entities;
+    private UpdateScheduler scheduler;
+    private int appearance;
+
+    @Before
+    public void setUp() {
+        entities = new EntityStore(8);
+        appearance = entities.registerAppearance("coin_gold");
+        scheduler = new UpdateScheduler(entities);
+        scheduler.setView(0f, 0f, 20f, 10f);
+    }
+
+    private int spawnAt(float x) {
+        return entities.spawn(EntityStore.TYPE_COLLECTIBLE, appearance, x, 8f, 0f, x, x,
+                CollisionWorld.KIND_COLLECTIBLE, 0.6f, 0.6f);
+    }
+
+    private void run(int steps) {
+        for (int i = 0; i < steps; i++) {
+            scheduler.update(STEP);
+        }
+    }
+
+    @Test
+    public void tiers_followDistanceFromView() {
+        int visible = spawnAt(10f);
+        int edge = spawnAt(20f + UpdateScheduler.VISIBLE_MARGIN);
+        int offscreen = spawnAt(30f);
+        int asleep = spawnAt(20f + UpdateScheduler.WAKE_DISTANCE + 1f);
+        scheduler.update(STEP);
+
+        assertEquals(UpdateScheduler.TIER_VISIBLE, scheduler.getTier(visible));
+        assertEquals(UpdateScheduler.TIER_VISIBLE, scheduler.getTier(edge));
+        assertEquals(UpdateScheduler.TIER_OFFSCREEN, scheduler.getTier(offscreen));
+        assertEquals(UpdateScheduler.TIER_ASLEEP, scheduler.getTier(asleep));
+        assertEquals(2, scheduler.getEntityCount(UpdateScheduler.TIER_VISIBLE));
+        assertEquals(1, scheduler.getEntityCount(UpdateScheduler.TIER_OFFSCREEN));
+        assertEquals(1, scheduler.getEntityCount(UpdateScheduler.TIER_ASLEEP));
+    }
+
+    @Test
+    public void offscreen_updatedLessOftenButKeepsPace() {
+        int visible = spawnAt(10f);
+        int offscreen = spawnAt(30f);
+        run(60);
+
+        assertEquals(60, scheduler.getUpdateCount(UpdateScheduler.TIER_VISIBLE));
+        assertEquals(60 / UpdateScheduler.OFFSCREEN_INTERVAL, scheduler.getUpdateCount(UpdateScheduler.TIER_OFFSCREEN));
+        assertEquals(1f, entities.getAnimationTime(visible), DELTA);
+        // Behind by at most the steps since its last update
+        assertEquals(1f, entities.getAnimationTime(offscreen), UpdateScheduler.OFFSCREEN_INTERVAL * STEP);
+    }
+
+    @Test
+    public void asleep_frozenUntilViewApproaches() {
+        int far = spawnAt(50f);
+        run(60);
+        assertEquals(0f, entities.getAnimationTime(far), DELTA);
+        assertEquals(0, scheduler.getUpdateCount(UpdateScheduler.TIER_ASLEEP));
+
+        scheduler.setView(40f, 0f, 60f, 10f);
+        run(60);
+        assertEquals(UpdateScheduler.TIER_VISIBLE, scheduler.getTier(far));
+        assertEquals("Sleep time isn't caught up", 1f, entities.getAnimationTime(far), DELTA);
+    }
+
+    @Test
+    public void comingOnScreen_catchesUpMissedTime() {
+        int id = spawnAt(30f);
+        run(3); // Off screen, and not yet due an update
+        scheduler.setView(20f, 0f, 40f, 10f);
+        scheduler.update(STEP);
+        assertEquals(4 * STEP, entities.getAnimationTime(id), DELTA);
+    }
+
+    @Test
+    public void noView_updatesEverything() {
+        UpdateScheduler unset = new UpdateScheduler(entities);
+        int far = spawnAt(500f);
+        unset.update(STEP);
+        assertEquals(UpdateScheduler.TIER_VISIBLE, unset.getTier(far));
+        assertEquals(STEP, entities.getAnimationTime(far), DELTA);
+    }
+
+    @Test
+    public void resetCounts_clearsUpdatesOnly() {
+        spawnAt(10f);
+        run(10);
+        scheduler.resetCounts();
+        assertEquals(0, scheduler.getUpdateCount(UpdateScheduler.TIER_VISIBLE));
+        assertEquals(0, scheduler.getCountedSteps());
+        assertEquals(1, scheduler.getEntityCount(UpdateScheduler.TIER_VISIBLE));
+    }
+
+    @Test
+    public void wideLevel_updatesOnlyNearbyEntities() {
+        EntityStore many = new EntityStore(1000);
+        int coin = many.registerAppearance("coin_gold");
+        for (int i = 0; i < 1000; i++) {
+            many.spawn(EntityStore.TYPE_ENEMY, coin, i + 0.5f, 8f, 1f, i, i + 1f,
+                    CollisionWorld.KIND_ENEMY, 0.9f, 0.6f);
+        }
+        UpdateScheduler wide = new UpdateScheduler(many);
+        wide.setView(480f, 0f, 500f, 10f);
+        for (int i = 0; i < 60; i++) {
+            wide.update(STEP);
+        }
+
+        // 20 visible columns plus the margin, and 16 off-screen columns each side
+        assertEquals(22, wide.getEntityCount(UpdateScheduler.TIER_VISIBLE));
+        assertEquals(30, wide.getEntityCount(UpdateScheduler.TIER_OFFSCREEN));
+        long updates = wide.getUpdateCount(UpdateScheduler.TIER_VISIBLE) + wide.getUpdateCount(UpdateScheduler.TIER_OFFSCREEN);
+        assertTrue(updates + " updates", updates < 60 * 1000 / 10);
+    }
+}